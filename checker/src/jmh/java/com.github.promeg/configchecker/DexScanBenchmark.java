@@ -0,0 +1,67 @@
+package com.github.promeg.configchecker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The dex engine's scan of already mapped dex files: prefiltering the class
+ * definitions and decoding the annotated fields.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DexScanBenchmark {
+    @Param({"1000", "20000", "200000"})
+    public int classCount;
+
+    @Param({"0.001", "0.05"})
+    public double density;
+
+    private Fixtures fixtures;
+    private List<DexFile> dexFiles;
+    private DexScanner scanner;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        fixtures = Fixtures.generate(classCount, density, 1, true);
+        dexFiles = new ArrayList<DexFile>();
+        for (File file : fixtures.dexFiles) {
+            dexFiles.add(DexFile.open(file));
+        }
+        scanner = new DexScanner();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixtures.delete();
+    }
+
+    @Benchmark
+    public void findAnnotatedClasses(Blackhole blackhole) throws IOException {
+        for (DexFile dexFile : dexFiles) {
+            blackhole.consume(scanner.findAnnotatedClasses(dexFile));
+        }
+    }
+
+    @Benchmark
+    public void scan(Blackhole blackhole) throws IOException {
+        for (DexFile dexFile : dexFiles) {
+            blackhole.consume(scanner.scan(dexFile));
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.github.promeg.configchecker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A whole check of a generated apk, as run from the command line, with the
+ * output discarded. The soot engine needs -Dbenchmark.androidJar={path to
+ * android.jar} and -p engine=soot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EndToEndBenchmark {
+    @Param({"dex"})
+    public String engine;
+
+    @Param({"1000", "20000", "200000"})
+    public int classCount;
+
+    @Param({"0.01"})
+    public double density;
+
+    @Param({"1", "4"})
+    public int dexCount;
+
+    private Fixtures fixtures;
+    private String[] args;
+    private PrintStream discard;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        fixtures = Fixtures.generate(classCount, density, dexCount, true);
+        String androidJar = System.getProperty("benchmark.androidJar");
+        if (Main.ENGINE_SOOT.equals(engine) && androidJar == null) {
+            throw new IllegalStateException("The soot engine needs -Dbenchmark.androidJar");
+        }
+        args = new String[] {"--engine=" + engine, "--androidjar=" + androidJar,
+                "--flavor=" + FixtureGenerator.FLAVOR, "--buildType=" + FixtureGenerator.BUILD_TYPE,
+                fixtures.apk.getPath()};
+        discard = new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixtures.delete();
+    }
+
+    @Benchmark
+    public int check() {
+        int exitCode = new Main(discard, discard).run(args);
+        if (exitCode != BatchChecker.EXIT_OK) {
+            throw new IllegalStateException("Check of the fixture failed with exit code " + exitCode);
+        }
+        return exitCode;
+    }
+}
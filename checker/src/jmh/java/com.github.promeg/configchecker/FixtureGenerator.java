@@ -0,0 +1,210 @@
+package com.github.promeg.configchecker;
+
+import org.jf.dexlib2.AccessFlags;
+import org.jf.dexlib2.AnnotationVisibility;
+import org.jf.dexlib2.DexFileFactory;
+import org.jf.dexlib2.Opcodes;
+import org.jf.dexlib2.iface.ClassDef;
+import org.jf.dexlib2.iface.value.EncodedValue;
+import org.jf.dexlib2.immutable.ImmutableAnnotation;
+import org.jf.dexlib2.immutable.ImmutableAnnotationElement;
+import org.jf.dexlib2.immutable.ImmutableClassDef;
+import org.jf.dexlib2.immutable.ImmutableDexFile;
+import org.jf.dexlib2.immutable.ImmutableField;
+import org.jf.dexlib2.immutable.value.ImmutableBooleanEncodedValue;
+import org.jf.dexlib2.immutable.value.ImmutableDoubleEncodedValue;
+import org.jf.dexlib2.immutable.value.ImmutableFloatEncodedValue;
+import org.jf.dexlib2.immutable.value.ImmutableIntEncodedValue;
+import org.jf.dexlib2.immutable.value.ImmutableLongEncodedValue;
+import org.jf.dexlib2.immutable.value.ImmutableStringEncodedValue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Builds synthetic dex files and apks for the benchmarks.
+ *
+ * Every class gets a few plain static fields. A share of them, the density,
+ * also gets a static field annotated for production:release and dev:debug,
+ * cycling through all value types; the production:release constraints
+ * always pass, so an end-to-end check of that variant succeeds. Classes are
+ * spread over the requested number of dex files, more if one dex would pass
+ * the 64k field reference limit.
+ *
+ * Usage: FixtureGenerator {out dir} {class count} {density} {dex count}
+ */
+final class FixtureGenerator {
+    static final String FLAVOR = "production";
+    static final String BUILD_TYPE = "release";
+
+    private static final int PLAIN_FIELDS = 3;
+    private static final int MAX_FIELDS_PER_DEX = 60000;
+    private static final int STATIC_FINAL = AccessFlags.PUBLIC.getValue() | AccessFlags.STATIC.getValue()
+            | AccessFlags.FINAL.getValue();
+    private static final Set<ImmutableAnnotation> NO_ANNOTATIONS = Collections.emptySet();
+    private static final String[] VALUE_TYPES = {"Boolean", "Int", "Long", "Float", "Double", "String"};
+
+    private final int classCount;
+    private final double density;
+    private final int dexCount;
+
+    FixtureGenerator(int classCount, double density, int dexCount) {
+        this.classCount = classCount;
+        this.density = density;
+        this.dexCount = Math.max(dexCount, (classCount * (PLAIN_FIELDS + 1) + MAX_FIELDS_PER_DEX - 1)
+                / MAX_FIELDS_PER_DEX);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 4) {
+            System.err.println("Usage: FixtureGenerator {out dir} {class count} {density} {dex count}");
+            System.exit(2);
+        }
+        File dir = new File(args[0]);
+        FixtureGenerator generator = new FixtureGenerator(Integer.parseInt(args[1]), Double.parseDouble(args[2]),
+                Integer.parseInt(args[3]));
+        List<File> dexFiles = generator.writeDexFiles(dir);
+        File apk = generator.writeApk(new File(dir, "fixture.apk"), dexFiles, true);
+        System.out.println("Wrote " + dexFiles + " and " + apk);
+    }
+
+    int getDexCount() {
+        return dexCount;
+    }
+
+    /**
+     * @return the number of annotated fields in the fixture
+     */
+    int getAnnotatedFieldCount() {
+        int count = 0;
+        for (int i = 0; i < classCount; i++) {
+            if (isAnnotated(i)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Writes classes.dex, classes2.dex, ... into dir.
+     */
+    List<File> writeDexFiles(File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create '" + dir + "'");
+        }
+        List<File> files = new ArrayList<File>(dexCount);
+        int perDex = (classCount + dexCount - 1) / dexCount;
+        for (int dex = 0; dex < dexCount; dex++) {
+            List<ClassDef> classes = new ArrayList<ClassDef>(perDex);
+            for (int i = dex * perDex; i < Math.min(classCount, (dex + 1) * perDex); i++) {
+                classes.add(classDef(i));
+            }
+            File file = new File(dir, dex == 0 ? "classes.dex" : "classes" + (dex + 1) + ".dex");
+            DexFileFactory.writeDexFile(file.getPath(), new ImmutableDexFile(Opcodes.getDefault(), classes));
+            files.add(file);
+        }
+        return files;
+    }
+
+    /**
+     * Packs the dex files into an apk, deflated like a release build or stored.
+     */
+    File writeApk(File apk, List<File> dexFiles, boolean deflate) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(apk));
+        try {
+            zip.setLevel(deflate ? 9 : 0);
+            byte[] buffer = new byte[64 * 1024];
+            for (File dexFile : dexFiles) {
+                zip.putNextEntry(new ZipEntry(dexFile.getName()));
+                InputStream in = new FileInputStream(dexFile);
+                try {
+                    int count;
+                    while ((count = in.read(buffer)) > 0) {
+                        zip.write(buffer, 0, count);
+                    }
+                } finally {
+                    in.close();
+                }
+                zip.closeEntry();
+            }
+        } finally {
+            zip.close();
+        }
+        return apk;
+    }
+
+    private boolean isAnnotated(int classIndex) {
+        // spread annotated classes evenly instead of bunching them at the start
+        return density > 0 && Math.floor((classIndex + 1) * density) > Math.floor(classIndex * density);
+    }
+
+    private ClassDef classDef(int classIndex) {
+        String type = "Lcom/example/gen/p" + (classIndex % 100) + "/C" + classIndex + ";";
+        List<ImmutableField> fields = new ArrayList<ImmutableField>(PLAIN_FIELDS + 1);
+        for (int i = 0; i < PLAIN_FIELDS; i++) {
+            fields.add(new ImmutableField(type, "F" + i, "I", STATIC_FINAL,
+                    new ImmutableIntEncodedValue(classIndex + i), NO_ANNOTATIONS));
+        }
+        if (isAnnotated(classIndex)) {
+            fields.add(annotatedField(type, classIndex));
+        }
+        return new ImmutableClassDef(type, AccessFlags.PUBLIC.getValue(), "Ljava/lang/Object;", null, null, null,
+                fields, null);
+    }
+
+    private static ImmutableField annotatedField(String type, int classIndex) {
+        String valueType = VALUE_TYPES[classIndex % VALUE_TYPES.length];
+        EncodedValue value;
+        EncodedValue other;
+        String descriptor;
+        if ("Boolean".equals(valueType)) {
+            descriptor = "Z";
+            value = ImmutableBooleanEncodedValue.forBoolean(classIndex % 2 == 0);
+            other = ImmutableBooleanEncodedValue.forBoolean(classIndex % 2 != 0);
+        } else if ("Int".equals(valueType)) {
+            descriptor = "I";
+            value = new ImmutableIntEncodedValue(classIndex);
+            other = new ImmutableIntEncodedValue(-classIndex);
+        } else if ("Long".equals(valueType)) {
+            descriptor = "J";
+            value = new ImmutableLongEncodedValue(classIndex * 1000000007L);
+            other = new ImmutableLongEncodedValue(0L);
+        } else if ("Float".equals(valueType)) {
+            descriptor = "F";
+            value = new ImmutableFloatEncodedValue(classIndex / 8f);
+            other = new ImmutableFloatEncodedValue(-1f);
+        } else if ("Double".equals(valueType)) {
+            descriptor = "D";
+            value = new ImmutableDoubleEncodedValue(classIndex / 3.0);
+            other = new ImmutableDoubleEncodedValue(-1.0);
+        } else {
+            descriptor = "Ljava/lang/String;";
+            value = new ImmutableStringEncodedValue("https://example.com/" + classIndex);
+            other = new ImmutableStringEncodedValue("https://dev.example.com/");
+        }
+        Set<ImmutableAnnotation> annotations = new HashSet<ImmutableAnnotation>(Arrays.asList(
+                enforce(valueType, value, FLAVOR, BUILD_TYPE), enforce(valueType, other, "dev", "debug")));
+        return new ImmutableField(type, "CONFIG_" + valueType.toUpperCase(), descriptor, STATIC_FINAL, value,
+                annotations);
+    }
+
+    private static ImmutableAnnotation enforce(String valueType, EncodedValue value, String flavor, String buildType) {
+        List<ImmutableAnnotationElement> elements = new ArrayList<ImmutableAnnotationElement>(3);
+        elements.add(new ImmutableAnnotationElement("buildType", new ImmutableStringEncodedValue(buildType)));
+        elements.add(new ImmutableAnnotationElement("flavor", new ImmutableStringEncodedValue(flavor)));
+        elements.add(new ImmutableAnnotationElement("value", value));
+        return new ImmutableAnnotation(AnnotationVisibility.BUILD,
+                "Lcom/github/promeg/configchecker/Enforce" + valueType + "Value;", elements);
+    }
+}
@@ -0,0 +1,41 @@
+package com.github.promeg.configchecker;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A generated fixture in a temp dir: its dex files and an apk of them.
+ */
+final class Fixtures {
+    final File dir;
+    final List<File> dexFiles;
+    final File apk;
+
+    private Fixtures(File dir, List<File> dexFiles, File apk) {
+        this.dir = dir;
+        this.dexFiles = dexFiles;
+        this.apk = apk;
+    }
+
+    static Fixtures generate(int classCount, double density, int dexCount, boolean deflate) throws IOException {
+        File dir = File.createTempFile("checker-fixture", "");
+        if (!dir.delete() || !dir.mkdirs()) {
+            throw new IOException("Unable to create '" + dir + "'");
+        }
+        FixtureGenerator generator = new FixtureGenerator(classCount, density, dexCount);
+        List<File> dexFiles = generator.writeDexFiles(dir);
+        File apk = generator.writeApk(new File(dir, "fixture.apk"), dexFiles, deflate);
+        return new Fixtures(dir, dexFiles, apk);
+    }
+
+    void delete() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+}
@@ -0,0 +1,96 @@
+package com.github.promeg.configchecker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+import soot.BooleanType;
+import soot.DoubleType;
+import soot.FloatType;
+import soot.IntType;
+import soot.LongType;
+import soot.Modifier;
+import soot.RefType;
+import soot.SootField;
+import soot.Type;
+import soot.tagkit.AnnotationBooleanElem;
+import soot.tagkit.AnnotationDoubleElem;
+import soot.tagkit.AnnotationElem;
+import soot.tagkit.AnnotationFloatElem;
+import soot.tagkit.AnnotationIntElem;
+import soot.tagkit.AnnotationLongElem;
+import soot.tagkit.AnnotationStringElem;
+import soot.tagkit.AnnotationTag;
+import soot.tagkit.DoubleConstantValueTag;
+import soot.tagkit.FloatConstantValueTag;
+import soot.tagkit.IntegerConstantValueTag;
+import soot.tagkit.LongConstantValueTag;
+import soot.tagkit.StringConstantValueTag;
+import soot.tagkit.Tag;
+
+/**
+ * The soot engine's per field work: reading the constant value tag of a
+ * field and the elements of its enforcer annotation, for every value type.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ValueExtractionBenchmark {
+    private SootField[] fields;
+    private AnnotationTag[] annotations;
+
+    @Setup
+    public void setUp() {
+        fields = new SootField[] {
+                field(BooleanType.v(), new IntegerConstantValueTag(1)),
+                field(IntType.v(), new IntegerConstantValueTag(42)),
+                field(LongType.v(), new LongConstantValueTag(1L << 40)),
+                field(FloatType.v(), new FloatConstantValueTag(0.5f)),
+                field(DoubleType.v(), new DoubleConstantValueTag(3.14159)),
+                field(RefType.v("java.lang.String"), new StringConstantValueTag("https://example.com/")),
+        };
+        annotations = new AnnotationTag[] {
+                annotation(ValueType.BOOLEAN, new AnnotationBooleanElem(true, 'Z', "value")),
+                annotation(ValueType.INT, new AnnotationIntElem(42, 'I', "value")),
+                annotation(ValueType.LONG, new AnnotationLongElem(1L << 40, 'J', "value")),
+                annotation(ValueType.FLOAT, new AnnotationFloatElem(0.5f, 'F', "value")),
+                annotation(ValueType.DOUBLE, new AnnotationDoubleElem(3.14159, 'D', "value")),
+                annotation(ValueType.STRING, new AnnotationStringElem("https://example.com/", 's', "value")),
+        };
+    }
+
+    @Benchmark
+    public void extactRealValue(Blackhole blackhole) {
+        for (SootField field : fields) {
+            blackhole.consume(DexChecker.extactRealValue(field));
+        }
+    }
+
+    @Benchmark
+    public void extactEnforceValue(Blackhole blackhole) {
+        for (AnnotationTag annotation : annotations) {
+            blackhole.consume(DexChecker.extactEnforceValue(annotation));
+        }
+    }
+
+    private static SootField field(Type type, Tag constantValue) {
+        SootField field = new SootField("VALUE", type, Modifier.PUBLIC | Modifier.STATIC | Modifier.FINAL);
+        field.addTag(constantValue);
+        return field;
+    }
+
+    private static AnnotationTag annotation(ValueType type, AnnotationElem value) {
+        AnnotationTag tag = new AnnotationTag(type.getAnnotationDescriptor(), 3);
+        tag.addElem(new AnnotationStringElem(FixtureGenerator.FLAVOR, 's', "flavor"));
+        tag.addElem(new AnnotationStringElem(FixtureGenerator.BUILD_TYPE, 's', "buildType"));
+        tag.addElem(value);
+        return tag;
+    }
+}
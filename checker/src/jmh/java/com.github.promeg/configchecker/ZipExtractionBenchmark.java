@@ -0,0 +1,73 @@
+package com.github.promeg.configchecker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Getting the dex files out of an apk: the soot engine's extraction to temp
+ * files in {@link Main#openInputFiles}, and the dex engine's in place reads
+ * through {@link ApkReader}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ZipExtractionBenchmark {
+    @Param({"20000", "200000"})
+    public int classCount;
+
+    @Param({"1", "4"})
+    public int dexCount;
+
+    @Param({"true", "false"})
+    public boolean deflate;
+
+    private Fixtures fixtures;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        fixtures = Fixtures.generate(classCount, 0.01, dexCount, deflate);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixtures.delete();
+    }
+
+    @Benchmark
+    public void openInputFiles(Blackhole blackhole) throws IOException {
+        List<String> dexFiles = new Main().openInputFiles(fixtures.apk.getPath());
+        blackhole.consume(dexFiles);
+        for (String dexFile : dexFiles) {
+            new File(dexFile).delete();
+        }
+    }
+
+    @Benchmark
+    public void apkReader(Blackhole blackhole) throws IOException {
+        ApkReader reader = ApkReader.open(fixtures.apk);
+        try {
+            for (DexSource source : reader.getDexSources()) {
+                ByteBuffer buffer = source.load();
+                blackhole.consume(buffer.get(buffer.limit() - 1));
+                source.release(buffer);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+}
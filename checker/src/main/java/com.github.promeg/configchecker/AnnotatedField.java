@@ -0,0 +1,48 @@
+package com.github.promeg.configchecker;
+
+import java.util.List;
+
+/**
+ * A field carrying one or more Enforce*Value annotations, together with the
+ * value it really holds in the dex.
+ */
+final class AnnotatedField {
+    private final String className;
+    private final String fieldName;
+    private final RealValueHolder realValue;
+    private final List<EnforceValueHolder> enforceValues;
+
+    AnnotatedField(String className, String fieldName, RealValueHolder realValue,
+                   List<EnforceValueHolder> enforceValues) {
+        this.className = className;
+        this.fieldName = fieldName;
+        this.realValue = realValue;
+        this.enforceValues = enforceValues;
+    }
+
+    String getClassName() {
+        return className;
+    }
+
+    String getFieldName() {
+        return fieldName;
+    }
+
+    /**
+     * @return declaring class and field name, in the form the checker reports it
+     */
+    String getName() {
+        return className + "." + fieldName;
+    }
+
+    /**
+     * @return the real value, or null if the field has no constant value
+     */
+    RealValueHolder getRealValue() {
+        return realValue;
+    }
+
+    List<EnforceValueHolder> getEnforceValues() {
+        return enforceValues;
+    }
+}
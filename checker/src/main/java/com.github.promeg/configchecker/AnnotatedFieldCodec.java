@@ -0,0 +1,167 @@
+package com.github.promeg.configchecker;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary form of a list of {@link AnnotatedField}s, for storing scan results.
+ *
+ * Values are written as a one byte tag followed by the value; strings as a
+ * length-prefixed UTF-8 byte array, with -1 for null.
+ */
+final class AnnotatedFieldCodec {
+    private static final int TAG_NULL = 0;
+    private static final int TAG_BOOLEAN = 1;
+    private static final int TAG_INT = 2;
+    private static final int TAG_LONG = 3;
+    private static final int TAG_FLOAT = 4;
+    private static final int TAG_DOUBLE = 5;
+    private static final int TAG_STRING = 6;
+
+    private AnnotatedFieldCodec() {
+    }
+
+    static void write(DataOutput out, List<AnnotatedField> fields) throws IOException {
+        out.writeInt(fields.size());
+        for (AnnotatedField field : fields) {
+            writeField(out, field);
+        }
+    }
+
+    static List<AnnotatedField> read(DataInput in) throws IOException {
+        int count = in.readInt();
+        checkCount(count);
+        List<AnnotatedField> fields = new ArrayList<AnnotatedField>(count);
+        for (int i = 0; i < count; i++) {
+            fields.add(readField(in));
+        }
+        return fields;
+    }
+
+    /**
+     * Writes the class and field name, then the real value and the enforce values.
+     */
+    static void writeField(DataOutput out, AnnotatedField field) throws IOException {
+        writeString(out, field.getClassName());
+        writeString(out, field.getFieldName());
+        writeValue(out, field.getRealValue());
+        List<EnforceValueHolder> enforceValues = field.getEnforceValues();
+        out.writeInt(enforceValues.size());
+        for (EnforceValueHolder enforceValue : enforceValues) {
+            writeValue(out, enforceValue);
+            writeString(out, enforceValue.getFlavor());
+            writeString(out, enforceValue.getBuildType());
+        }
+    }
+
+    static AnnotatedField readField(DataInput in) throws IOException {
+        String className = readString(in);
+        String fieldName = readString(in);
+        RealValueHolder realValue = readRealValue(in);
+        int enforceCount = in.readInt();
+        checkCount(enforceCount);
+        List<EnforceValueHolder> enforceValues = new ArrayList<EnforceValueHolder>(enforceCount);
+        for (int j = 0; j < enforceCount; j++) {
+            RealValueHolder value = readRealValue(in);
+            String flavor = readString(in);
+            String buildType = readString(in);
+            if (value == null) {
+                throw new IOException("Missing enforce value for " + className + "." + fieldName);
+            }
+            enforceValues.add(new EnforceValueHolder(value.type, value.bits, value.string, flavor, buildType));
+        }
+        return new AnnotatedField(className, fieldName, realValue, enforceValues);
+    }
+
+    static void writeValue(DataOutput out, TypedValue value) throws IOException {
+        if (value == null) {
+            out.writeByte(TAG_NULL);
+            return;
+        }
+        switch (value.getType()) {
+            case BOOLEAN:
+                out.writeByte(TAG_BOOLEAN);
+                out.writeBoolean(value.getBoolean());
+                break;
+            case INT:
+                out.writeByte(TAG_INT);
+                out.writeInt(value.getInt());
+                break;
+            case LONG:
+                out.writeByte(TAG_LONG);
+                out.writeLong(value.getLong());
+                break;
+            case FLOAT:
+                out.writeByte(TAG_FLOAT);
+                out.writeFloat(value.getFloat());
+                break;
+            case DOUBLE:
+                out.writeByte(TAG_DOUBLE);
+                out.writeDouble(value.getDouble());
+                break;
+            default:
+                out.writeByte(TAG_STRING);
+                writeString(out, value.getString());
+                break;
+        }
+    }
+
+    /**
+     * Reads a value written by {@link #writeValue} into a real value holder.
+     *
+     * @return null for a null value
+     */
+    static RealValueHolder readRealValue(DataInput in) throws IOException {
+        int tag = in.readByte();
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_BOOLEAN:
+                return RealValueHolder.ofBoolean(in.readBoolean());
+            case TAG_INT:
+                return RealValueHolder.ofInt(in.readInt());
+            case TAG_LONG:
+                return RealValueHolder.ofLong(in.readLong());
+            case TAG_FLOAT:
+                return RealValueHolder.ofFloat(in.readFloat());
+            case TAG_DOUBLE:
+                return RealValueHolder.ofDouble(in.readDouble());
+            case TAG_STRING:
+                String value = readString(in);
+                return value != null ? RealValueHolder.ofString(value) : null;
+            default:
+                throw new IOException("Unknown value tag " + tag);
+        }
+    }
+
+    static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length == -1) {
+            return null;
+        }
+        checkCount(length);
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    static void checkCount(int count) throws IOException {
+        // guards against allocating garbage sizes from a corrupt file
+        if (count < 0 || count > (1 << 28)) {
+            throw new IOException("Corrupt length " + count);
+        }
+    }
+}
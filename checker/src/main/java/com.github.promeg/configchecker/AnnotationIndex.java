@@ -0,0 +1,153 @@
+package com.github.promeg.configchecker;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The Enforce*Value annotations {@link EnforceValueProcessor} recorded at
+ * compile time, read from the index resources of an apk. With an index the
+ * dex engine still scans every class for annotated fields, but also checks
+ * the listed fields whose annotations were stripped, with the expected
+ * values of the index, and reports listed fields that are gone from the dex
+ * files. The index has the original names; for an obfuscated apk,
+ * {@link MappingIndex#obfuscate} gives the names to look the fields up by.
+ */
+final class AnnotationIndex {
+    /** Class descriptor to field name to the values enforced on it, in index order. */
+    private final Map<String, Map<String, List<EnforceValueHolder>>> classes =
+            new LinkedHashMap<String, Map<String, List<EnforceValueHolder>>>();
+    private int fieldCount;
+
+    /**
+     * @return the merged indexes of the apk, or null if it has none
+     */
+    static AnnotationIndex read(ApkReader apkReader) throws IOException {
+        return read(apkReader, "");
+    }
+
+    /**
+     * @param root where the java resources are, "" in an apk or
+     *             {@link AppBundle#resourceDir} in an app bundle
+     */
+    static AnnotationIndex read(ApkReader apkReader, String root) throws IOException {
+        List<byte[]> indexes = apkReader.readEntries(root + EnforceValueProcessor.INDEX_DIR,
+                EnforceValueProcessor.INDEX_SUFFIX);
+        if (indexes.isEmpty()) {
+            return null;
+        }
+        AnnotationIndex index = new AnnotationIndex();
+        for (byte[] bytes : indexes) {
+            index.add(bytes);
+        }
+        return index;
+    }
+
+    void add(byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (in.readInt() != EnforceValueProcessor.MAGIC) {
+            throw new IOException("Not an Enforce*Value index");
+        }
+        int version = in.readUnsignedShort();
+        if (version != EnforceValueProcessor.VERSION) {
+            throw new IOException("Unsupported Enforce*Value index version " + version);
+        }
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String classDescriptor = in.readUTF();
+            String fieldName = in.readUTF();
+            byte type = in.readByte();
+            ValueType valueType;
+            long bits = 0;
+            String string = null;
+            switch (type) {
+                case EnforceValueProcessor.TYPE_BOOLEAN:
+                    valueType = ValueType.BOOLEAN;
+                    bits = TypedValue.bitsOf(in.readBoolean());
+                    break;
+                case EnforceValueProcessor.TYPE_INT:
+                    valueType = ValueType.INT;
+                    bits = in.readInt();
+                    break;
+                case EnforceValueProcessor.TYPE_LONG:
+                    valueType = ValueType.LONG;
+                    bits = in.readLong();
+                    break;
+                case EnforceValueProcessor.TYPE_FLOAT:
+                    valueType = ValueType.FLOAT;
+                    bits = TypedValue.bitsOf(in.readFloat());
+                    break;
+                case EnforceValueProcessor.TYPE_DOUBLE:
+                    valueType = ValueType.DOUBLE;
+                    bits = TypedValue.bitsOf(in.readDouble());
+                    break;
+                case EnforceValueProcessor.TYPE_STRING:
+                    valueType = ValueType.STRING;
+                    string = in.readUTF();
+                    break;
+                default:
+                    throw new IOException("Unknown value type " + type + " in Enforce*Value index");
+            }
+            String flavor = in.readUTF();
+            String buildType = in.readUTF();
+            add(classDescriptor, fieldName, new EnforceValueHolder(valueType, bits, string, flavor, buildType));
+        }
+    }
+
+    void add(String classDescriptor, String fieldName, EnforceValueHolder enforceValue) {
+        Map<String, List<EnforceValueHolder>> fields = classes.get(classDescriptor);
+        if (fields == null) {
+            fields = new LinkedHashMap<String, List<EnforceValueHolder>>();
+            classes.put(classDescriptor, fields);
+        }
+        List<EnforceValueHolder> enforceValues = fields.get(fieldName);
+        if (enforceValues == null) {
+            enforceValues = new ArrayList<EnforceValueHolder>(1);
+            fields.put(fieldName, enforceValues);
+            fieldCount++;
+        }
+        enforceValues.add(enforceValue);
+    }
+
+    Set<String> getClassDescriptors() {
+        return Collections.unmodifiableSet(classes.keySet());
+    }
+
+    /**
+     * @return field name to the values enforced on it, or null if the class is not listed
+     */
+    Map<String, List<EnforceValueHolder>> getFields(String classDescriptor) {
+        return classes.get(classDescriptor);
+    }
+
+    int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * @param found the fields the dex files still have
+     * @return every listed field not among found, with a null real value
+     */
+    List<AnnotatedField> findMissing(List<AnnotatedField> found) {
+        Map<String, AnnotatedField> foundByName = new LinkedHashMap<String, AnnotatedField>();
+        for (AnnotatedField field : found) {
+            foundByName.put(field.getName(), field);
+        }
+        List<AnnotatedField> missing = new ArrayList<AnnotatedField>();
+        for (Map.Entry<String, Map<String, List<EnforceValueHolder>>> entry : classes.entrySet()) {
+            String className = DexScanner.toClassName(entry.getKey());
+            for (Map.Entry<String, List<EnforceValueHolder>> field : entry.getValue().entrySet()) {
+                if (!foundByName.containsKey(className + "." + field.getKey())) {
+                    missing.add(new AnnotatedField(className, field.getKey(), null, field.getValue()));
+                }
+            }
+        }
+        return missing;
+    }
+}
@@ -0,0 +1,468 @@
+package com.github.promeg.configchecker;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the dex entries of an apk without extracting them to disk.
+ *
+ * The zip central directory is parsed directly to learn each entry's
+ * compression method and local header offset, from the zip64 records where
+ * the archive has them. Stored entries are then mapped
+ * straight out of the apk with {@link FileChannel#map}; deflated entries are
+ * inflated into a buffer from the {@link DirectBufferPool}.
+ */
+final class ApkReader implements Closeable {
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int EOCD_SIZE = 22;
+    private static final int MAX_COMMENT_SIZE = 0xffff;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int ZIP64_EOCD_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_EOCD_SIZE = 56;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    /** A size or offset that did not fit, and is in the zip64 extra field instead. */
+    private static final long ZIP64_MAGIC = 0xffffffffL;
+
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+
+    private static final int INFLATE_CHUNK = 64 * 1024;
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final List<Entry> entries;
+
+    private ApkReader(File file, RandomAccessFile raf, List<Entry> entries) {
+        this.file = file;
+        this.raf = raf;
+        this.channel = raf.getChannel();
+        this.entries = entries;
+    }
+
+    /**
+     * @return a reader for the apk, or null if the file is not a zip archive
+     * @throws java.io.FileNotFoundException if the file does not exist
+     */
+    static ApkReader open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        boolean success = false;
+        try {
+            List<Entry> entries = readCentralDirectory(raf.getChannel());
+            if (entries == null) {
+                return null;
+            }
+            success = true;
+            return new ApkReader(file, raf, entries);
+        } finally {
+            if (!success) {
+                raf.close();
+            }
+        }
+    }
+
+    /**
+     * @return the entries whose name matches "classes.*\.dex", in archive order
+     */
+    List<DexSource> getDexSources() {
+        return getDexSources("");
+    }
+
+    /**
+     * @param dir "" for the top level, or a directory such as "feature/dex/" of an app bundle
+     * @return the entries of dir whose name matches "classes.*\.dex", in archive order
+     */
+    List<DexSource> getDexSources(String dir) {
+        List<DexSource> sources = new ArrayList<DexSource>();
+        for (Entry entry : entries) {
+            if (entry.name.startsWith(dir) && isDexEntry(entry.name.substring(dir.length()))) {
+                sources.add(new EntrySource(entry));
+            }
+        }
+        return sources;
+    }
+
+    /**
+     * @return the names of all entries, in archive order
+     */
+    List<String> getEntryNames() {
+        List<String> names = new ArrayList<String>(entries.size());
+        for (Entry entry : entries) {
+            names.add(entry.name);
+        }
+        return names;
+    }
+
+    /**
+     * Copies an entry to a file, such as a split apk out of an apk set.
+     *
+     * @return false if there is no entry of that name
+     */
+    boolean extract(String name, File target) throws IOException {
+        for (Entry entry : entries) {
+            if (!entry.name.equals(name)) {
+                continue;
+            }
+            ByteBuffer buffer = load(entry);
+            try {
+                FileOutputStream out = new FileOutputStream(target);
+                try {
+                    FileChannel targetChannel = out.getChannel();
+                    while (buffer.hasRemaining()) {
+                        targetChannel.write(buffer);
+                    }
+                } finally {
+                    out.close();
+                }
+            } finally {
+                if (entry.method == METHOD_DEFLATED) {
+                    DirectBufferPool.shared().release(buffer);
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reads small entries, such as the annotation indexes, fully into memory.
+     *
+     * @return the content of every entry named {prefix}*{suffix}, in archive order
+     */
+    List<byte[]> readEntries(String prefix, String suffix) throws IOException {
+        List<byte[]> contents = new ArrayList<byte[]>();
+        for (Entry entry : entries) {
+            if (entry.name.startsWith(prefix) && entry.name.endsWith(suffix)) {
+                ByteBuffer buffer = load(entry);
+                try {
+                    byte[] content = new byte[buffer.remaining()];
+                    buffer.get(content);
+                    contents.add(content);
+                } finally {
+                    if (entry.method == METHOD_DEFLATED) {
+                        DirectBufferPool.shared().release(buffer);
+                    }
+                }
+            }
+        }
+        return contents;
+    }
+
+    /**
+     * Same as matching "classes.*\.dex", without running a regex per entry.
+     */
+    static boolean isDexEntry(String name) {
+        return name.startsWith("classes") && name.endsWith(".dex") && name.indexOf('/') < 0;
+    }
+
+    public void close() throws IOException {
+        raf.close();
+    }
+
+    /**
+     * @return every entry of the central directory, or null if there is none
+     */
+    private static List<Entry> readCentralDirectory(FileChannel channel) throws IOException {
+        long fileSize = channel.size();
+        if (fileSize < EOCD_SIZE) {
+            return null;
+        }
+        int tailSize = (int) Math.min(fileSize, EOCD_SIZE + MAX_COMMENT_SIZE);
+        ByteBuffer tail = read(channel, fileSize - tailSize, tailSize);
+        int eocd = -1;
+        for (int i = tailSize - EOCD_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == EOCD_SIGNATURE) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd < 0) {
+            return null;
+        }
+
+        long entryCount = tail.getShort(eocd + 10) & 0xffff;
+        long centralDirSize = tail.getInt(eocd + 12) & 0xffffffffL;
+        long centralDirOffset = tail.getInt(eocd + 16) & 0xffffffffL;
+        long eocdOffset = fileSize - tailSize + eocd;
+        ByteBuffer zip64Eocd = readZip64Eocd(channel, eocdOffset);
+        if (zip64Eocd != null) {
+            entryCount = zip64Eocd.getLong(32);
+            centralDirSize = zip64Eocd.getLong(40);
+            centralDirOffset = zip64Eocd.getLong(48);
+        }
+        if (centralDirOffset < 0 || centralDirSize < 0 || centralDirOffset + centralDirSize > eocdOffset) {
+            throw new ZipException("Central directory out of range");
+        }
+        if (centralDirSize > Integer.MAX_VALUE) {
+            throw new ZipException("Central directory too large");
+        }
+        if (entryCount < 0 || entryCount > centralDirSize / CENTRAL_HEADER_SIZE) {
+            throw new ZipException("Bad central directory entry count " + entryCount);
+        }
+
+        ByteBuffer dir = read(channel, centralDirOffset, (int) centralDirSize);
+        List<Entry> entries = new ArrayList<Entry>((int) entryCount);
+        int pos = 0;
+        for (int i = 0; i < entryCount; i++) {
+            if (pos + CENTRAL_HEADER_SIZE > dir.limit() || dir.getInt(pos) != CENTRAL_HEADER_SIGNATURE) {
+                throw new ZipException("Bad central directory entry " + i);
+            }
+            int method = dir.getShort(pos + 10) & 0xffff;
+            long compressedSize = dir.getInt(pos + 20) & 0xffffffffL;
+            long size = dir.getInt(pos + 24) & 0xffffffffL;
+            int nameLength = dir.getShort(pos + 28) & 0xffff;
+            int extraLength = dir.getShort(pos + 30) & 0xffff;
+            int commentLength = dir.getShort(pos + 32) & 0xffff;
+            long localHeaderOffset = dir.getInt(pos + 42) & 0xffffffffL;
+            byte[] nameBytes = new byte[nameLength];
+            dir.position(pos + CENTRAL_HEADER_SIZE);
+            dir.get(nameBytes);
+            String name = new String(nameBytes, "UTF-8");
+            if (size == ZIP64_MAGIC || compressedSize == ZIP64_MAGIC || localHeaderOffset == ZIP64_MAGIC) {
+                // the zip64 extra field holds, in this order, only the values that did not fit
+                int field = findExtraField(dir, pos + CENTRAL_HEADER_SIZE + nameLength, extraLength, ZIP64_EXTRA_ID);
+                if (field < 0) {
+                    throw new ZipException("Missing zip64 extra field for " + name);
+                }
+                int end = field + 4 + (dir.getShort(field + 2) & 0xffff);
+                int value = field + 4;
+                if (size == ZIP64_MAGIC) {
+                    size = readZip64Value(dir, value, end, name);
+                    value += 8;
+                }
+                if (compressedSize == ZIP64_MAGIC) {
+                    compressedSize = readZip64Value(dir, value, end, name);
+                    value += 8;
+                }
+                if (localHeaderOffset == ZIP64_MAGIC) {
+                    localHeaderOffset = readZip64Value(dir, value, end, name);
+                }
+            }
+            entries.add(new Entry(name, method, compressedSize, size, localHeaderOffset));
+            pos += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    /**
+     * @param eocdOffset the file offset of the end of central directory record
+     * @return the zip64 end of central directory record, or null if the archive has none
+     */
+    private static ByteBuffer readZip64Eocd(FileChannel channel, long eocdOffset) throws IOException {
+        if (eocdOffset < ZIP64_LOCATOR_SIZE) {
+            return null;
+        }
+        // the zip64 end of central directory locator is right before the end of central directory record
+        ByteBuffer locator = read(channel, eocdOffset - ZIP64_LOCATOR_SIZE, ZIP64_LOCATOR_SIZE);
+        if (locator.getInt(0) != ZIP64_LOCATOR_SIGNATURE) {
+            return null;
+        }
+        long zip64EocdOffset = locator.getLong(8);
+        if (zip64EocdOffset < 0 || zip64EocdOffset > eocdOffset - ZIP64_LOCATOR_SIZE - ZIP64_EOCD_SIZE) {
+            throw new ZipException("Zip64 end of central directory out of range");
+        }
+        ByteBuffer zip64Eocd = read(channel, zip64EocdOffset, ZIP64_EOCD_SIZE);
+        if (zip64Eocd.getInt(0) != ZIP64_EOCD_SIGNATURE) {
+            throw new ZipException("Bad zip64 end of central directory");
+        }
+        return zip64Eocd;
+    }
+
+    /**
+     * @return the offset in dir of the extra field with that header id, or -1 if there is none
+     */
+    private static int findExtraField(ByteBuffer dir, int start, int length, int headerId) throws ZipException {
+        int end = start + length;
+        if (end > dir.limit()) {
+            throw new ZipException("Central directory entry out of range");
+        }
+        int pos = start;
+        while (pos + 4 <= end) {
+            if ((dir.getShort(pos) & 0xffff) == headerId) {
+                return pos;
+            }
+            pos += 4 + (dir.getShort(pos + 2) & 0xffff);
+        }
+        return -1;
+    }
+
+    private static long readZip64Value(ByteBuffer dir, int offset, int end, String name) throws ZipException {
+        long value = offset + 8 <= Math.min(end, dir.limit()) ? dir.getLong(offset) : -1;
+        if (value < 0) {
+            throw new ZipException("Bad zip64 extra field for " + name);
+        }
+        return value;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long offset, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * @return the file offset of the entry's data, past its local header
+     */
+    private long dataOffset(Entry entry) throws IOException {
+        ByteBuffer header = read(channel, entry.localHeaderOffset, LOCAL_HEADER_SIZE);
+        if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException("Bad local header for " + entry.name);
+        }
+        int nameLength = header.getShort(26) & 0xffff;
+        int extraLength = header.getShort(28) & 0xffff;
+        return entry.localHeaderOffset + LOCAL_HEADER_SIZE + nameLength + extraLength;
+    }
+
+    private ByteBuffer load(Entry entry) throws IOException {
+        if (entry.size > Integer.MAX_VALUE) {
+            throw new ZipException(entry.name + " is too large");
+        }
+        long dataOffset = dataOffset(entry);
+        if (entry.method == METHOD_STORED) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, dataOffset, entry.size);
+        } else if (entry.method == METHOD_DEFLATED) {
+            return inflate(entry, channel.map(FileChannel.MapMode.READ_ONLY, dataOffset, entry.compressedSize));
+        }
+        throw new ZipException("Unsupported compression method " + entry.method + " for " + entry.name);
+    }
+
+    /**
+     * Maps or inflates only the first bytes of an entry.
+     */
+    private ByteBuffer loadHeader(Entry entry, int size) throws IOException {
+        int headerSize = (int) Math.min(size, entry.size);
+        long dataOffset = dataOffset(entry);
+        if (entry.method == METHOD_STORED) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, dataOffset, headerSize);
+        } else if (entry.method != METHOD_DEFLATED) {
+            throw new ZipException("Unsupported compression method " + entry.method + " for " + entry.name);
+        }
+        ByteBuffer compressed = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset, entry.compressedSize);
+        byte[] input = new byte[Math.min(INFLATE_CHUNK, Math.max(1, compressed.remaining()))];
+        byte[] header = new byte[headerSize];
+        int count = 0;
+        Inflater inflater = new Inflater(true);
+        try {
+            while (count < headerSize && !inflater.finished()) {
+                if (inflater.needsInput()) {
+                    if (!compressed.hasRemaining()) {
+                        throw new EOFException("Unexpected end of " + entry.name);
+                    }
+                    int length = Math.min(input.length, compressed.remaining());
+                    compressed.get(input, 0, length);
+                    inflater.setInput(input, 0, length);
+                }
+                count += inflater.inflate(header, count, headerSize - count);
+            }
+        } catch (DataFormatException e) {
+            throw (IOException) new ZipException("Corrupt " + entry.name + ": " + e.getMessage()).initCause(e);
+        } finally {
+            inflater.end();
+        }
+        return ByteBuffer.wrap(header, 0, count).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private ByteBuffer inflate(Entry entry, ByteBuffer compressed) throws IOException {
+        ByteBuffer target = DirectBufferPool.shared().acquire((int) entry.size);
+        Inflater inflater = new Inflater(true);
+        byte[] input = new byte[INFLATE_CHUNK];
+        byte[] output = new byte[INFLATE_CHUNK];
+        boolean paddingFed = false;
+        try {
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    if (compressed.hasRemaining()) {
+                        int count = Math.min(input.length, compressed.remaining());
+                        compressed.get(input, 0, count);
+                        inflater.setInput(input, 0, count);
+                    } else if (!paddingFed) {
+                        // raw inflate may need one extra byte to see the end of the stream
+                        paddingFed = true;
+                        inflater.setInput(new byte[1]);
+                    } else {
+                        throw new EOFException("Unexpected end of " + entry.name);
+                    }
+                }
+                int count = inflater.inflate(output);
+                if (count > target.remaining()) {
+                    throw new ZipException(entry.name + " is larger than its declared size");
+                }
+                target.put(output, 0, count);
+            }
+        } catch (DataFormatException e) {
+            DirectBufferPool.shared().release(target);
+            throw (IOException) new ZipException("Corrupt " + entry.name + ": " + e.getMessage()).initCause(e);
+        } catch (IOException e) {
+            DirectBufferPool.shared().release(target);
+            throw e;
+        } finally {
+            inflater.end();
+        }
+        target.flip();
+        return target;
+    }
+
+    private static final class Entry {
+        final String name;
+        final int method;
+        final long compressedSize;
+        final long size;
+        final long localHeaderOffset;
+
+        Entry(String name, int method, long compressedSize, long size, long localHeaderOffset) {
+            this.name = name;
+            this.method = method;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+    }
+
+    private final class EntrySource extends DexSource {
+        private final Entry entry;
+
+        EntrySource(Entry entry) {
+            super(file.getPath() + "!" + entry.name);
+            this.entry = entry;
+        }
+
+        @Override
+        ByteBuffer load() throws IOException {
+            return ApkReader.this.load(entry);
+        }
+
+        @Override
+        ByteBuffer loadHeader(int size) throws IOException {
+            return ApkReader.this.loadHeader(entry, size);
+        }
+
+        @Override
+        void release(ByteBuffer buffer) {
+            if (entry.method == METHOD_DEFLATED) {
+                DirectBufferPool.shared().release(buffer);
+            }
+        }
+    }
+}
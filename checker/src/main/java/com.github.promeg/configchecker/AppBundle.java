@@ -0,0 +1,127 @@
+package com.github.promeg.configchecker;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Inputs made of several modules: an Android App Bundle (.aab), which keeps
+ * the dex files of every module in {module}/dex/, or a split APK set
+ * (.apks) from bundletool, with a splits/{module}-master.apk per module.
+ *
+ * Main expands a bundle into one input per module, named
+ * {bundle}!{module}, and checks those like separate apks: each module gets
+ * its own section and report, and the dex engine checks them concurrently.
+ */
+final class AppBundle {
+    static final char MODULE_SEPARATOR = '!';
+
+    private static final String BUNDLE_SUFFIX = ".aab";
+    private static final String APK_SET_SUFFIX = ".apks";
+    private static final String DEX_DIR = "/dex/";
+    private static final String RESOURCE_DIR = "/root/";
+    private static final String SPLITS_DIR = "splits/";
+    private static final String MASTER_SPLIT_SUFFIX = "-master.apk";
+
+    private AppBundle() {
+    }
+
+    static boolean isBundle(String fileName) {
+        return fileName.endsWith(BUNDLE_SUFFIX) || fileName.endsWith(APK_SET_SUFFIX);
+    }
+
+    /**
+     * @return {bundle}!{module} for every module of the bundle that may have
+     * code, in archive order, or an empty list if it is not a zip archive
+     */
+    static List<String> expand(String fileName) throws IOException {
+        List<String> modules = new ArrayList<String>();
+        ApkReader reader = ApkReader.open(new File(fileName));
+        if (reader == null) {
+            return modules;
+        }
+        try {
+            for (String module : modulesOf(fileName, reader.getEntryNames())) {
+                modules.add(fileName + MODULE_SEPARATOR + module);
+            }
+        } finally {
+            reader.close();
+        }
+        return modules;
+    }
+
+    static Set<String> modulesOf(String fileName, List<String> entryNames) {
+        Set<String> modules = new LinkedHashSet<String>();
+        boolean apkSet = fileName.endsWith(APK_SET_SUFFIX);
+        for (String name : entryNames) {
+            if (apkSet) {
+                // config splits (abi, density, language) carry no code
+                if (name.startsWith(SPLITS_DIR) && name.endsWith(MASTER_SPLIT_SUFFIX)) {
+                    modules.add(name.substring(SPLITS_DIR.length(), name.length() - MASTER_SPLIT_SUFFIX.length()));
+                }
+            } else {
+                int slash = name.indexOf('/');
+                if (slash > 0 && name.startsWith(DEX_DIR, slash)
+                        && ApkReader.isDexEntry(name.substring(slash + DEX_DIR.length()))) {
+                    modules.add(name.substring(0, slash));
+                }
+            }
+        }
+        return modules;
+    }
+
+    /**
+     * @return the bundle of a module input, or null if input is no {bundle}!{module}
+     */
+    static String bundleOf(String input) {
+        int separator = input.lastIndexOf(MODULE_SEPARATOR);
+        if (separator < 0 || new File(input).exists()) {
+            return null;
+        }
+        String bundle = input.substring(0, separator);
+        return isBundle(bundle) ? bundle : null;
+    }
+
+    /**
+     * @return the module of a module input, or null if input is no {bundle}!{module}
+     */
+    static String moduleOf(String input) {
+        return bundleOf(input) != null ? input.substring(input.lastIndexOf(MODULE_SEPARATOR) + 1) : null;
+    }
+
+    static boolean isApkSet(String bundle) {
+        return bundle.endsWith(APK_SET_SUFFIX);
+    }
+
+    /**
+     * @return where the dex files of module are in an app bundle
+     */
+    static String dexDir(String module) {
+        return module + DEX_DIR;
+    }
+
+    /**
+     * @return where the java resources of module, such as the annotation index, are in an app bundle
+     */
+    static String resourceDir(String module) {
+        return module + RESOURCE_DIR;
+    }
+
+    /**
+     * Copies the master split of module out of an apk set.
+     *
+     * @return the split apk in a temp file, to be deleted by the caller
+     */
+    static File extractSplit(ApkReader apkSet, String module) throws IOException {
+        File split = File.createTempFile("split-" + module, ".apk");
+        split.deleteOnExit();
+        if (!apkSet.extract(SPLITS_DIR + module + MASTER_SPLIT_SUFFIX, split)) {
+            split.delete();
+            throw new IOException("No split apk for module '" + module + "'");
+        }
+        return split;
+    }
+}
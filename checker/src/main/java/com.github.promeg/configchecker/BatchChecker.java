@@ -0,0 +1,144 @@
+package com.github.promeg.configchecker;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Checks many apks in one JVM, several at a time.
+ *
+ * Each apk's output is buffered and printed in input order once the apk is
+ * done, followed by a per-apk summary and the overall throughput. A failing
+ * apk does not stop the batch. Reports are written in input order as well.
+ */
+final class BatchChecker {
+    static final int EXIT_OK = 0;
+    static final int EXIT_ERROR = 1;
+    static final int EXIT_CHECK_FAILED = 3;
+
+    /**
+     * Checks a single apk, writing its progress to out and its results to report.
+     */
+    interface ApkTask {
+        void check(String fileName, PrintStream out, CheckReport report) throws IOException;
+    }
+
+    private final List<String> fileNames;
+    private final int jobs;
+    private final ApkTask task;
+    private final List<ReportWriter> reportWriters;
+    private final PrintStream out;
+
+    BatchChecker(List<String> fileNames, int jobs, ApkTask task, List<ReportWriter> reportWriters,
+                 PrintStream out) {
+        this.fileNames = fileNames;
+        this.jobs = jobs;
+        this.task = task;
+        this.reportWriters = reportWriters;
+        this.out = out;
+    }
+
+    /**
+     * @return the process exit code: 3 if any apk failed its check, 1 if any
+     * apk could not be checked, 0 otherwise
+     */
+    int run() throws IOException {
+        long startTime = System.currentTimeMillis();
+        List<Result> results = new ArrayList<Result>(fileNames.size());
+        ExecutorService executor = WorkerPool.newPool(Math.min(jobs, fileNames.size()), "apk-checker");
+        try {
+            List<Future<Result>> futures = new ArrayList<Future<Result>>(fileNames.size());
+            for (final String fileName : fileNames) {
+                futures.add(executor.submit(new Callable<Result>() {
+                    public Result call() {
+                        return checkOne(fileName);
+                    }
+                }));
+            }
+            for (Future<Result> future : futures) {
+                Result result = WorkerPool.await(future);
+                out.print(result.output);
+                out.flush();
+                for (ReportWriter reportWriter : reportWriters) {
+                    reportWriter.write(result.report);
+                }
+                results.add(result);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return printSummary(results, System.currentTimeMillis() - startTime);
+    }
+
+    private Result checkOne(String fileName) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PrintStream apkOut = new PrintStream(buffer, true);
+        apkOut.println("Processing " + fileName);
+        long startTime = System.currentTimeMillis();
+        CheckReport report = new CheckReport(fileName);
+        CheckReport.Status status = CheckReport.Status.PASS;
+        String message = null;
+        try {
+            task.check(fileName, apkOut, report);
+        } catch (ConfigCheckFailException e) {
+            status = CheckReport.Status.FAIL;
+            message = e.getMessage();
+            apkOut.println(message);
+        } catch (IOException e) {
+            status = CheckReport.Status.ERROR;
+            message = String.valueOf(e);
+            apkOut.println("Failed: " + message);
+        } catch (RuntimeException e) {
+            status = CheckReport.Status.ERROR;
+            message = String.valueOf(e);
+            e.printStackTrace(apkOut);
+        }
+        apkOut.flush();
+        report.finish(status, message, System.currentTimeMillis() - startTime);
+        return new Result(report, buffer.toString());
+    }
+
+    private int printSummary(List<Result> results, long elapsedMillis) {
+        int passed = 0;
+        int failed = 0;
+        int errors = 0;
+        out.println("Batch summary         ================");
+        for (Result result : results) {
+            CheckReport report = result.report;
+            out.println(String.format(Locale.US, "%-6s %8.2fs  %s%s", report.getStatus(),
+                    report.getMillis() / 1000.0, report.getInput(),
+                    report.getMessage() != null ? "  " + report.getMessage() : ""));
+            if (report.getStatus() == CheckReport.Status.PASS) {
+                passed++;
+            } else if (report.getStatus() == CheckReport.Status.FAIL) {
+                failed++;
+            } else {
+                errors++;
+            }
+        }
+        double minutes = Math.max(elapsedMillis, 1) / 60000.0;
+        out.println(String.format(Locale.US, "%d apks in %.2fs (%.1f apks/min): %d passed, %d failed, %d errors",
+                results.size(), elapsedMillis / 1000.0, results.size() / minutes, passed, failed, errors));
+
+        if (failed > 0) {
+            return EXIT_CHECK_FAILED;
+        }
+        return errors > 0 ? EXIT_ERROR : EXIT_OK;
+    }
+
+    private static final class Result {
+        final CheckReport report;
+        final String output;
+
+        Result(CheckReport report, String output) {
+            this.report = report;
+            this.output = output;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.github.promeg.configchecker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Everything one input's check produced: per dex scan statistics, the
+ * annotated fields found, the outcome of every constraint that was
+ * evaluated and the {@link Metrics} of the check. Filled in by the engine and the {@link VariantChecker}, then
+ * handed to the {@link ReportWriter}s.
+ */
+final class CheckReport {
+    enum Status {
+        PASS, FAIL, ERROR
+    }
+
+    private final String input;
+    private final List<DexStats> dexStats = new ArrayList<DexStats>();
+    private final List<Result> results = new ArrayList<Result>();
+    private final Metrics metrics = new Metrics();
+    private List<AnnotatedField> fields;
+    private Status status = Status.PASS;
+    private String message;
+    private long millis;
+
+    /**
+     * Starts the check of input, from which on its peak heap is sampled.
+     */
+    CheckReport(String input) {
+        this.input = input;
+        metrics.startHeapSampling();
+    }
+
+    String getInput() {
+        return input;
+    }
+
+    Metrics getMetrics() {
+        return metrics;
+    }
+
+    synchronized void addDex(String name, long millis, int annotatedFields, boolean cached) {
+        dexStats.add(new DexStats(name, millis, annotatedFields, cached));
+    }
+
+    synchronized void addResult(Variant variant, AnnotatedField field, EnforceValueHolder enforceValue,
+                                ValueChecker.Outcome outcome) {
+        results.add(new Result(variant, field, enforceValue, outcome));
+    }
+
+    synchronized void setFields(List<AnnotatedField> fields) {
+        this.fields = fields;
+    }
+
+    /**
+     * @return every annotated field the engine found, or null if the check did not get that far
+     */
+    synchronized List<AnnotatedField> getFields() {
+        return fields;
+    }
+
+    synchronized List<DexStats> getDexStats() {
+        return Collections.unmodifiableList(new ArrayList<DexStats>(dexStats));
+    }
+
+    synchronized List<Result> getResults() {
+        return Collections.unmodifiableList(new ArrayList<Result>(results));
+    }
+
+    synchronized int count(ValueChecker.Outcome outcome) {
+        int count = 0;
+        for (Result result : results) {
+            if (result.outcome == outcome) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    synchronized void finish(Status status, String message, long millis) {
+        metrics.stopHeapSampling();
+        this.status = status;
+        this.message = message;
+        this.millis = millis;
+    }
+
+    synchronized Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the failure or error message, null if the input passed
+     */
+    synchronized String getMessage() {
+        return message;
+    }
+
+    synchronized long getMillis() {
+        return millis;
+    }
+
+    static final class DexStats {
+        final String name;
+        final long millis;
+        final int annotatedFields;
+        final boolean cached;
+
+        DexStats(String name, long millis, int annotatedFields, boolean cached) {
+            this.name = name;
+            this.millis = millis;
+            this.annotatedFields = annotatedFields;
+            this.cached = cached;
+        }
+    }
+
+    static final class Result {
+        final Variant variant;
+        final AnnotatedField field;
+        final EnforceValueHolder enforceValue;
+        final ValueChecker.Outcome outcome;
+
+        Result(Variant variant, AnnotatedField field, EnforceValueHolder enforceValue, ValueChecker.Outcome outcome) {
+            this.variant = variant;
+            this.field = field;
+            this.enforceValue = enforceValue;
+            this.outcome = outcome;
+        }
+    }
+}
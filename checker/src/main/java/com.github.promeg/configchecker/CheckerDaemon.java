@@ -0,0 +1,247 @@
+package com.github.promeg.configchecker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.security.SecureRandom;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Keeps a checker JVM running so repeated checks skip JVM startup, class
+ * loading and JIT warm-up.
+ *
+ * The daemon listens on a loopback port and writes the port and a random
+ * token to {@link #infoFile()}; only clients that can read that file can
+ * talk to it. Each request carries the command line of a normal run, which
+ * is run by a fresh {@link Main} with its output streamed back, followed by
+ * the exit code. Dex engine checks run concurrently, soot checks one at a time.
+ *
+ * Request: int magic, int protocol version, UTF token, int argument count,
+ * UTF arguments. An empty argument list asks the daemon to stop.
+ * Response: frames of byte type, then int length and bytes for
+ * {@link #FRAME_OUT} and {@link #FRAME_ERR}, or int exit code for
+ * {@link #FRAME_EXIT}, which ends the response.
+ */
+final class CheckerDaemon {
+    static final int MAGIC = 0x41434344;
+    static final int PROTOCOL_VERSION = 1;
+
+    static final int FRAME_OUT = 1;
+    static final int FRAME_ERR = 2;
+    static final int FRAME_EXIT = 3;
+
+    private static final int TOKEN_BYTES = 16;
+
+    private final int port;
+    private final int jobs;
+    private final String token;
+    private ServerSocket serverSocket;
+
+    CheckerDaemon(int port, int jobs) {
+        this.port = port;
+        this.jobs = jobs;
+        byte[] random = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(random);
+        StringBuilder hex = new StringBuilder();
+        for (byte b : random) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        this.token = hex.toString();
+    }
+
+    /**
+     * Entry point for --daemon[=port]; port 0, the default, picks a free one.
+     */
+    static int runDaemon(String[] args) {
+        int port = 0;
+        if (args.length != 1) {
+            System.err.println("--daemon takes no other arguments, they are sent by each --client run");
+            return Main.EXIT_USAGE;
+        }
+        if (args[0].startsWith("--daemon=")) {
+            try {
+                port = Integer.parseInt(args[0].substring(args[0].indexOf('=') + 1));
+            } catch (NumberFormatException e) {
+                port = -1;
+            }
+            if (port < 0 || port > 0xffff) {
+                System.err.println("Invalid port '" + args[0].substring(args[0].indexOf('=') + 1) + "'");
+                return Main.EXIT_USAGE;
+            }
+        }
+        try {
+            new CheckerDaemon(port, WorkerPool.defaultThreads()).serve();
+            return BatchChecker.EXIT_OK;
+        } catch (IOException e) {
+            System.err.println("Failed: " + e);
+            return BatchChecker.EXIT_ERROR;
+        }
+    }
+
+    /**
+     * @return the file a running daemon describes itself in: "port token"
+     */
+    static File infoFile() {
+        return new File(new File(System.getProperty("user.home"), ".apk-config-checker"), "daemon");
+    }
+
+    /**
+     * Accepts requests until a client asks the daemon to stop.
+     */
+    void serve() throws IOException {
+        serverSocket = new ServerSocket(port, 50, InetAddress.getByName("127.0.0.1"));
+        File infoFile = infoFile();
+        ExecutorService executor = WorkerPool.newPool(jobs, "checker-daemon");
+        try {
+            writeInfoFile(infoFile);
+            System.out.println("Checker daemon " + Main.VERSION + " listening on 127.0.0.1:"
+                    + serverSocket.getLocalPort());
+            while (true) {
+                final Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                } catch (SocketException e) {
+                    if (serverSocket.isClosed()) {
+                        break;
+                    }
+                    throw e;
+                }
+                executor.execute(new Runnable() {
+                    public void run() {
+                        handle(socket);
+                    }
+                });
+            }
+        } finally {
+            serverSocket.close();
+            if (!infoFile.delete() && infoFile.exists()) {
+                System.err.println("Unable to delete '" + infoFile + "'");
+            }
+            executor.shutdown();
+        }
+        System.out.println("Checker daemon stopped");
+    }
+
+    private void writeInfoFile(File infoFile) throws IOException {
+        File dir = infoFile.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create '" + dir + "'");
+        }
+        // the token lets anyone run checks as this user, so no one else may read it; the file
+        // is restricted while still empty, before the token is written to it
+        OutputStream out = new FileOutputStream(infoFile);
+        if (!(infoFile.setReadable(false, false) && infoFile.setReadable(true, true)
+                && infoFile.setWritable(false, false) && infoFile.setWritable(true, true)
+                && infoFile.setExecutable(false, false))) {
+            out.close();
+            infoFile.delete();
+            throw new IOException("Unable to make '" + infoFile + "' readable by its owner only");
+        }
+        try {
+            out.write((serverSocket.getLocalPort() + " " + token + "\n").getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        infoFile.deleteOnExit();
+    }
+
+    private void handle(Socket socket) {
+        try {
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                if (in.readInt() != MAGIC) {
+                    return;
+                }
+                int version = in.readInt();
+                boolean authorized = token.equals(in.readUTF());
+                String[] args = new String[in.readInt()];
+                for (int i = 0; i < args.length; i++) {
+                    args[i] = in.readUTF();
+                }
+                socket.shutdownInput();
+
+                PrintStream err = new PrintStream(new BufferedOutputStream(new FrameOutputStream(out, FRAME_ERR)),
+                        true);
+                int exitCode;
+                if (!authorized) {
+                    err.println("Invalid daemon token, restart the client");
+                    exitCode = BatchChecker.EXIT_ERROR;
+                } else if (version != PROTOCOL_VERSION) {
+                    err.println("Daemon speaks protocol " + PROTOCOL_VERSION + ", client " + version
+                            + ", restart the daemon");
+                    exitCode = BatchChecker.EXIT_ERROR;
+                } else if (args.length == 0) {
+                    err.println("Checker daemon stopping");
+                    exitCode = BatchChecker.EXIT_OK;
+                    serverSocket.close();
+                } else {
+                    PrintStream stdout = new PrintStream(
+                            new BufferedOutputStream(new FrameOutputStream(out, FRAME_OUT)), true);
+                    exitCode = new Main(stdout, err).run(args);
+                    stdout.flush();
+                }
+                err.flush();
+                synchronized (out) {
+                    out.writeByte(FRAME_EXIT);
+                    out.writeInt(exitCode);
+                    out.flush();
+                }
+            } finally {
+                socket.close();
+            }
+        } catch (IOException e) {
+            // the client went away, nothing left to report to
+            System.err.println("Request failed: " + e);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Sends everything written to it as frames of one type.
+     */
+    private static final class FrameOutputStream extends OutputStream {
+        private final DataOutputStream out;
+        private final int type;
+
+        FrameOutputStream(DataOutputStream out, int type) {
+            this.out = out;
+            this.type = type;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            synchronized (out) {
+                out.writeByte(type);
+                out.writeInt(len);
+                out.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (out) {
+                out.flush();
+            }
+        }
+    }
+}
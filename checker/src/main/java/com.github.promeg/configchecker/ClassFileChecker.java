@@ -0,0 +1,275 @@
+package com.github.promeg.configchecker;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Check engine for javac output, so a wrong value is found right after the
+ * compile task instead of after dexing or R8. An input is a directory of
+ * class files, a single .class, a .jar, or an .aar, whose classes.jar and
+ * libs/*.jar are checked.
+ *
+ * The class files of every container are split into chunks and read and
+ * scanned by {@link ClassFileScanner} on worker threads; a jar is opened
+ * once and its entries are inflated by the workers in parallel. Results are
+ * checked in container and entry order, so the output does not depend on
+ * which worker finishes first.
+ */
+final class ClassFileChecker {
+    private static final String CLASS_SUFFIX = ".class";
+    private static final String JAR_SUFFIX = ".jar";
+    private static final String AAR_SUFFIX = ".aar";
+    private static final String AAR_CLASSES_JAR = "classes.jar";
+    private static final String AAR_LIBS_DIR = "libs/";
+    /** Class files one worker task reads. */
+    private static final int CHUNK_SIZE = 64;
+
+    private final String input;
+    private final int threads;
+    private final PrintStream out;
+    private final VariantChecker variantChecker;
+    private CheckReport report;
+    private Metrics metrics = new Metrics();
+
+    /**
+     * @param variants the variants to check, or null for every variant some annotation declares
+     * @param threads worker threads reading and scanning class files
+     */
+    ClassFileChecker(String input, List<Variant> variants, int threads, PrintStream out) {
+        this.input = input;
+        this.threads = threads;
+        this.out = out;
+        this.variantChecker = new VariantChecker(variants, out);
+    }
+
+    /**
+     * Report every failure before failing, instead of stopping at the first one.
+     */
+    void setKeepGoing(boolean keepGoing) {
+        variantChecker.setKeepGoing(keepGoing);
+    }
+
+    void setReport(CheckReport report) {
+        this.report = report;
+        this.metrics = report.getMetrics();
+        variantChecker.setReport(report);
+    }
+
+    public void run() throws IOException {
+        out.println("prepare.... " + variantChecker.describe());
+        long startTime = System.currentTimeMillis();
+        List<File> tempFiles = new ArrayList<File>();
+        List<Container> containers = new ArrayList<Container>();
+        try {
+            Metrics.Timer timer = metrics.start(Metrics.PHASE_OPEN);
+            try {
+                openContainers(new File(input), containers, tempFiles);
+            } finally {
+                timer.stop();
+            }
+            out.println("Start  checking       ================ " + containers);
+            List<AnnotatedField> fields = scan(containers);
+            timer = metrics.start(Metrics.PHASE_CHECK);
+            variantChecker.check(fields);
+            timer.stop();
+        } finally {
+            for (Container container : containers) {
+                container.close();
+            }
+            for (File tempFile : tempFiles) {
+                tempFile.delete();
+            }
+        }
+        out.println("Config check passed!  ================ " + input);
+        out.println("Done! Cost " + (System.currentTimeMillis() - startTime) / 1000 + "s");
+    }
+
+    private void openContainers(File file, List<Container> containers, List<File> tempFiles) throws IOException {
+        if (file.isDirectory()) {
+            List<String> classFiles = new ArrayList<String>();
+            listClassFiles(file, "", classFiles);
+            containers.add(new Container(file.getPath(), file, null, classFiles));
+        } else if (file.getName().endsWith(CLASS_SUFFIX)) {
+            if (!file.isFile()) {
+                throw new IOException("No such file: " + file);
+            }
+            containers.add(new Container(file.getPath(), file.getAbsoluteFile().getParentFile(), null,
+                    Collections.singletonList(file.getName())));
+        } else if (file.getName().endsWith(AAR_SUFFIX)) {
+            ApkReader aar = ApkReader.open(file);
+            if (aar == null) {
+                throw new IOException("Not a zip archive: " + file);
+            }
+            try {
+                for (String name : aar.getEntryNames()) {
+                    if (name.equals(AAR_CLASSES_JAR)
+                            || (name.startsWith(AAR_LIBS_DIR) && name.endsWith(JAR_SUFFIX))) {
+                        File jar = File.createTempFile("aar-", JAR_SUFFIX);
+                        tempFiles.add(jar);
+                        aar.extract(name, jar);
+                        containers.add(openJar(file.getPath() + AppBundle.MODULE_SEPARATOR + name, jar));
+                    }
+                }
+            } finally {
+                aar.close();
+            }
+        } else if (file.getName().endsWith(JAR_SUFFIX)) {
+            containers.add(openJar(file.getPath(), file));
+        } else {
+            throw new IOException("Not a class dir, .class, .jar or .aar: " + file);
+        }
+    }
+
+    private static Container openJar(String name, File file) throws IOException {
+        ZipFile zip = new ZipFile(file);
+        List<String> classFiles = new ArrayList<String>();
+        Enumeration<? extends ZipEntry> entries = zip.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            // META-INF holds multi-release copies and module-info, never application config
+            if (!entry.isDirectory() && entry.getName().endsWith(CLASS_SUFFIX)
+                    && !entry.getName().startsWith("META-INF/")) {
+                classFiles.add(entry.getName());
+            }
+        }
+        Collections.sort(classFiles);
+        return new Container(name, null, zip, classFiles);
+    }
+
+    private static void listClassFiles(File dir, String relativeDir, List<String> classFiles) throws IOException {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            throw new IOException("Unable to list '" + dir + "'");
+        }
+        Arrays.sort(children);
+        for (File child : children) {
+            if (child.isDirectory()) {
+                listClassFiles(child, relativeDir + child.getName() + "/", classFiles);
+            } else if (child.getName().endsWith(CLASS_SUFFIX)) {
+                classFiles.add(relativeDir + child.getName());
+            }
+        }
+    }
+
+    private List<AnnotatedField> scan(List<Container> containers) throws IOException {
+        final ClassFileScanner scanner = new ClassFileScanner();
+        List<AnnotatedField> fields = new ArrayList<AnnotatedField>();
+        ExecutorService executor = WorkerPool.newPool(threads, "class-scanner");
+        try {
+            List<List<Future<Scan>>> scans = new ArrayList<List<Future<Scan>>>(containers.size());
+            for (final Container container : containers) {
+                List<Future<Scan>> chunks = new ArrayList<Future<Scan>>();
+                for (int start = 0; start < container.classFiles.size(); start += CHUNK_SIZE) {
+                    final List<String> chunk = container.classFiles.subList(start,
+                            Math.min(start + CHUNK_SIZE, container.classFiles.size()));
+                    chunks.add(executor.submit(new Callable<Scan>() {
+                        public Scan call() throws IOException {
+                            Metrics.Timer timer = metrics.start(Metrics.PHASE_SCAN);
+                            long scanStart = System.currentTimeMillis();
+                            Scan scan = new Scan();
+                            for (String classFile : chunk) {
+                                byte[] bytes = container.read(classFile);
+                                List<AnnotatedField> found = scanner.scan(bytes, container.name + "/" + classFile);
+                                scan.fields.addAll(found);
+                                scan.classesScanned += found.isEmpty() ? 0 : 1;
+                                scan.bytesRead += bytes.length;
+                            }
+                            scan.millis = System.currentTimeMillis() - scanStart;
+                            timer.stop();
+                            return scan;
+                        }
+                    }));
+                }
+                scans.add(chunks);
+            }
+            for (int i = 0; i < containers.size(); i++) {
+                Container container = containers.get(i);
+                Scan total = new Scan();
+                for (Future<Scan> chunk : scans.get(i)) {
+                    Scan scan = WorkerPool.await(chunk);
+                    total.fields.addAll(scan.fields);
+                    total.classesScanned += scan.classesScanned;
+                    total.bytesRead += scan.bytesRead;
+                    total.millis += scan.millis;
+                }
+                fields.addAll(total.fields);
+                if (report != null) {
+                    report.addDex(container.name, total.millis, total.fields.size(), false);
+                }
+                metrics.addDex(container.name, container.classFiles.size(), total.classesScanned,
+                        total.fields.size(), total.bytesRead);
+                metrics.count(Metrics.COUNTER_CLASSES_LOADED, container.classFiles.size());
+                metrics.count(Metrics.COUNTER_CLASSES_SCANNED, total.classesScanned);
+                metrics.count(Metrics.COUNTER_ANNOTATED_FIELDS, total.fields.size());
+                metrics.count(Metrics.COUNTER_BYTES_READ, total.bytesRead);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return fields;
+    }
+
+    /**
+     * A directory or jar of class files, with the class files to check in order.
+     */
+    private static final class Container {
+        final String name;
+        final File dir;
+        /** Thread-safe, every worker inflates its own entries. */
+        final ZipFile zip;
+        final List<String> classFiles;
+
+        Container(String name, File dir, ZipFile zip, List<String> classFiles) {
+            this.name = name;
+            this.dir = dir;
+            this.zip = zip;
+            this.classFiles = classFiles;
+        }
+
+        byte[] read(String classFile) throws IOException {
+            InputStream in = zip != null ? zip.getInputStream(zip.getEntry(classFile))
+                    : new FileInputStream(new File(dir, classFile));
+            try {
+                return IOUtils.toByteArray(in);
+            } finally {
+                in.close();
+            }
+        }
+
+        void close() throws IOException {
+            if (zip != null) {
+                zip.close();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * What one worker task found in its chunk, or a container's totals.
+     */
+    private static final class Scan {
+        final List<AnnotatedField> fields = new ArrayList<AnnotatedField>();
+        int classesScanned;
+        long bytesRead;
+        long millis;
+    }
+}
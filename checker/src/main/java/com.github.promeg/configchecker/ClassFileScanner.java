@@ -0,0 +1,734 @@
+package com.github.promeg.configchecker;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Finds Enforce*Value annotated fields in javac output. The annotations are
+ * CLASS retained, so they are in the fields' RuntimeInvisibleAnnotations
+ * attributes, and a constant's value is in its ConstantValue attribute.
+ *
+ * The constant pool is walked once without decoding anything but the Utf8
+ * entries the scan matches against; a class referencing no enforcer
+ * annotation is skipped right after it. Otherwise only the fields are read,
+ * and methods are skipped unless an annotated static field has no
+ * ConstantValue: then the straight-line start of &lt;clinit&gt; is followed,
+ * up to the first branch, for the constants put into those fields. A field
+ * assigned anything else there, or only after a branch, has no real value,
+ * like a non-constant field for the Soot engine without its evaluator, and
+ * so has a non-final one assigned before a call, which may assign it again.
+ */
+final class ClassFileScanner {
+    private static final int CLASS_MAGIC = 0xcafebabe;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_FINAL = 0x0010;
+
+    private static final String STRING_DESCRIPTOR = "Ljava/lang/String;";
+
+    // Utf8 entries the scan looks for, by NAME_* index
+    private static final int NAME_CONSTANT_VALUE = 0;
+    private static final int NAME_INVISIBLE_ANNOTATIONS = 1;
+    private static final int NAME_VISIBLE_ANNOTATIONS = 2;
+    private static final int NAME_CODE = 3;
+    private static final int NAME_CLINIT = 4;
+    private static final int NAME_VALUE = 5;
+    private static final int NAME_FLAVOR = 6;
+    private static final int NAME_BUILD_TYPE = 7;
+    private static final byte[][] NAMES = {
+            utf8("ConstantValue"), utf8("RuntimeInvisibleAnnotations"), utf8("RuntimeVisibleAnnotations"),
+            utf8("Code"), utf8("<clinit>"), utf8("value"), utf8("flavor"), utf8("buildType")};
+
+    /** The descriptor of each {@link ValueType}'s annotation, by ordinal. */
+    private static final byte[][] ENFORCER_DESCRIPTORS = new byte[ValueType.values().length][];
+    /** The element_value tag of each {@link ValueType}'s "value" element, by ordinal. */
+    private static final char[] ELEMENT_TAGS = {'Z', 'I', 'J', 'F', 'D', 's'};
+
+    static {
+        for (ValueType type : ValueType.values()) {
+            ENFORCER_DESCRIPTORS[type.ordinal()] = utf8(type.getAnnotationDescriptor());
+        }
+    }
+
+    /**
+     * @param name where the class file comes from, for error messages
+     * @return every annotated field of the class, in field order; empty if
+     * the class references no enforcer annotation
+     * @throws IOException if the class file is truncated or otherwise malformed
+     */
+    List<AnnotatedField> scan(byte[] classFile, String name) throws IOException {
+        try {
+            return new ClassReader(ByteBuffer.wrap(classFile), name).scan();
+        } catch (IndexOutOfBoundsException e) {
+            throw malformed(name, e);
+        } catch (BufferUnderflowException e) {
+            throw malformed(name, e);
+        }
+    }
+
+    private static IOException malformed(String name, RuntimeException e) {
+        return new IOException("Malformed class file " + name + ": "
+                + (e.getMessage() != null ? e.getMessage() : "unexpected end of data"));
+    }
+
+    private static byte[] utf8(String ascii) {
+        byte[] bytes = new byte[ascii.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) ascii.charAt(i);
+        }
+        return bytes;
+    }
+
+    /**
+     * The state of scanning one class file.
+     */
+    private static final class ClassReader {
+        private final ByteBuffer in;
+        private final String name;
+        /** Offset of every constant pool entry's tag, 0 for the unusable second slot of longs and doubles. */
+        private int[] offsets;
+        /** The enforced type of every Utf8 entry that is an enforcer annotation descriptor. */
+        private ValueType[] enforcers;
+        /** The constant pool index of each NAMES entry, 0 if the class does not have it. */
+        private final int[] nameIndices = new int[NAMES.length];
+
+        ClassReader(ByteBuffer in, String name) {
+            this.in = in;
+            this.name = name;
+        }
+
+        List<AnnotatedField> scan() throws IOException {
+            if (in.getInt() != CLASS_MAGIC) {
+                throw new IOException("Not a class file: " + name);
+            }
+            in.getInt(); // minor and major version
+            if (!readConstantPool()) {
+                return Collections.emptyList();
+            }
+            in.getShort(); // access_flags
+            int thisClass = in.getShort() & 0xffff;
+            in.getShort(); // super_class
+            int interfacesCount = in.getShort() & 0xffff;
+            in.position(in.position() + 2 * interfacesCount);
+
+            List<PendingField> pending = new ArrayList<PendingField>();
+            boolean needsClinit = false;
+            int fieldsCount = in.getShort() & 0xffff;
+            for (int i = 0; i < fieldsCount; i++) {
+                PendingField field = readField();
+                if (field != null) {
+                    pending.add(field);
+                    needsClinit |= field.isStatic() && field.constantIndex == 0;
+                }
+            }
+            if (pending.isEmpty()) {
+                return Collections.emptyList();
+            }
+            if (needsClinit) {
+                readClinit(thisClass, pending);
+            }
+
+            String className = readUtf8(classNameIndex(thisClass)).replace('/', '.');
+            List<AnnotatedField> result = new ArrayList<AnnotatedField>(pending.size());
+            for (PendingField field : pending) {
+                result.add(new AnnotatedField(className, readUtf8(field.nameIndex), realValueOf(field),
+                        field.enforceValues));
+            }
+            return result;
+        }
+
+        /**
+         * Records where every entry is, matching Utf8 entries against the
+         * names and descriptors the scan needs by their bytes.
+         *
+         * @return false if no entry is an enforcer annotation descriptor
+         */
+        private boolean readConstantPool() throws IOException {
+            int count = in.getShort() & 0xffff;
+            offsets = new int[count];
+            boolean hasEnforcer = false;
+            for (int i = 1; i < count; i++) {
+                offsets[i] = in.position();
+                int tag = in.get() & 0xff;
+                switch (tag) {
+                    case CONSTANT_UTF8:
+                        int length = in.getShort() & 0xffff;
+                        hasEnforcer |= matchUtf8(i, in.position(), length);
+                        in.position(in.position() + length);
+                        break;
+                    case CONSTANT_CLASS:
+                    case CONSTANT_STRING:
+                    case CONSTANT_METHOD_TYPE:
+                    case CONSTANT_MODULE:
+                    case CONSTANT_PACKAGE:
+                        in.position(in.position() + 2);
+                        break;
+                    case CONSTANT_METHOD_HANDLE:
+                        in.position(in.position() + 3);
+                        break;
+                    case CONSTANT_INTEGER:
+                    case CONSTANT_FLOAT:
+                    case CONSTANT_FIELDREF:
+                    case CONSTANT_METHODREF:
+                    case CONSTANT_INTERFACE_METHODREF:
+                    case CONSTANT_NAME_AND_TYPE:
+                    case CONSTANT_DYNAMIC:
+                    case CONSTANT_INVOKE_DYNAMIC:
+                        in.position(in.position() + 4);
+                        break;
+                    case CONSTANT_LONG:
+                    case CONSTANT_DOUBLE:
+                        in.position(in.position() + 8);
+                        // takes two entries
+                        i++;
+                        break;
+                    default:
+                        throw new IOException("Unknown constant pool tag " + tag + " in " + name);
+                }
+            }
+            return hasEnforcer;
+        }
+
+        /**
+         * @return true if the Utf8 entry is an enforcer annotation descriptor
+         */
+        private boolean matchUtf8(int index, int offset, int length) {
+            for (int i = 0; i < NAMES.length; i++) {
+                if (nameIndices[i] == 0 && bytesEqual(offset, length, NAMES[i])) {
+                    nameIndices[i] = index;
+                    return false;
+                }
+            }
+            for (ValueType type : ValueType.values()) {
+                if (bytesEqual(offset, length, ENFORCER_DESCRIPTORS[type.ordinal()])) {
+                    if (enforcers == null) {
+                        enforcers = new ValueType[offsets.length];
+                    }
+                    enforcers[index] = type;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean bytesEqual(int offset, int length, byte[] expected) {
+            if (length != expected.length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (in.get(offset + i) != expected[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return the field if it has enforcer annotations, otherwise null
+         */
+        private PendingField readField() throws IOException {
+            int accessFlags = in.getShort() & 0xffff;
+            int nameIndex = in.getShort() & 0xffff;
+            int descriptorIndex = in.getShort() & 0xffff;
+            int constantIndex = 0;
+            List<EnforceValueHolder> enforceValues = Collections.emptyList();
+            int attributesCount = in.getShort() & 0xffff;
+            for (int i = 0; i < attributesCount; i++) {
+                int attributeName = in.getShort() & 0xffff;
+                int length = in.getInt();
+                int end = in.position() + length;
+                if (attributeName == nameIndices[NAME_CONSTANT_VALUE]) {
+                    constantIndex = in.getShort() & 0xffff;
+                } else if (attributeName == nameIndices[NAME_INVISIBLE_ANNOTATIONS]
+                        || attributeName == nameIndices[NAME_VISIBLE_ANNOTATIONS]) {
+                    enforceValues = readEnforceValues(enforceValues);
+                }
+                in.position(end);
+            }
+            if (enforceValues.isEmpty()) {
+                return null;
+            }
+            return new PendingField(accessFlags, nameIndex, descriptorIndex, constantIndex, enforceValues);
+        }
+
+        private List<EnforceValueHolder> readEnforceValues(List<EnforceValueHolder> enforceValues)
+                throws IOException {
+            int count = in.getShort() & 0xffff;
+            for (int i = 0; i < count; i++) {
+                int typeIndex = in.getShort() & 0xffff;
+                ValueType valueType = enforcers != null ? enforcers[typeIndex] : null;
+                if (valueType == null) {
+                    skipElementValuePairs();
+                    continue;
+                }
+                EnforceValueHolder enforceValue = readEnforceValue(valueType);
+                if (enforceValue != null) {
+                    if (enforceValues.isEmpty()) {
+                        enforceValues = new ArrayList<EnforceValueHolder>(1);
+                    }
+                    enforceValues.add(enforceValue);
+                }
+            }
+            return enforceValues;
+        }
+
+        /**
+         * Reads the element_value_pairs of an annotation, positioned after its type_index.
+         *
+         * @return null if the "value" element is missing or of another type
+         */
+        private EnforceValueHolder readEnforceValue(ValueType valueType) throws IOException {
+            int valueIndex = 0;
+            String flavor = null;
+            String buildType = null;
+            int pairs = in.getShort() & 0xffff;
+            for (int i = 0; i < pairs; i++) {
+                int elementName = in.getShort() & 0xffff;
+                char tag = (char) (in.get() & 0xff);
+                if (!isConstantTag(tag)) {
+                    in.position(in.position() - 1);
+                    skipElementValue();
+                    continue;
+                }
+                int constIndex = in.getShort() & 0xffff;
+                if (elementName == nameIndices[NAME_VALUE]) {
+                    valueIndex = tag == ELEMENT_TAGS[valueType.ordinal()] ? constIndex : 0;
+                } else if (elementName == nameIndices[NAME_FLAVOR] && tag == 's') {
+                    flavor = readUtf8(constIndex);
+                } else if (elementName == nameIndices[NAME_BUILD_TYPE] && tag == 's') {
+                    buildType = readUtf8(constIndex);
+                }
+            }
+            if (valueIndex == 0) {
+                return null;
+            }
+            switch (valueType) {
+                case BOOLEAN:
+                    return EnforceValueHolder.ofBoolean(readInt(valueIndex) != 0, flavor, buildType);
+                case INT:
+                    return EnforceValueHolder.ofInt(readInt(valueIndex), flavor, buildType);
+                case LONG:
+                    return EnforceValueHolder.ofLong(readLong(valueIndex), flavor, buildType);
+                case FLOAT:
+                    return EnforceValueHolder.ofFloat(Float.intBitsToFloat(readInt(valueIndex)), flavor, buildType);
+                case DOUBLE:
+                    return EnforceValueHolder.ofDouble(Double.longBitsToDouble(readLong(valueIndex)), flavor,
+                            buildType);
+                default:
+                    return EnforceValueHolder.ofString(readUtf8(valueIndex), flavor, buildType);
+            }
+        }
+
+        private boolean isConstantTag(char tag) {
+            return "BCDFIJSZs".indexOf(tag) >= 0;
+        }
+
+        private void skipElementValuePairs() throws IOException {
+            int pairs = in.getShort() & 0xffff;
+            for (int i = 0; i < pairs; i++) {
+                in.getShort(); // element_name_index
+                skipElementValue();
+            }
+        }
+
+        private void skipElementValue() throws IOException {
+            char tag = (char) (in.get() & 0xff);
+            if (isConstantTag(tag) || tag == 'c') {
+                in.getShort();
+            } else if (tag == 'e') {
+                in.getInt();
+            } else if (tag == '@') {
+                in.getShort();
+                skipElementValuePairs();
+            } else if (tag == '[') {
+                int count = in.getShort() & 0xffff;
+                for (int i = 0; i < count; i++) {
+                    skipElementValue();
+                }
+            } else {
+                throw new IOException("Unknown element value tag '" + tag + "' in " + name);
+            }
+        }
+
+        /**
+         * Skips to &lt;clinit&gt; and follows its code from the start to the
+         * first branch, return or throw, recording the constants put into
+         * the pending fields on the way.
+         */
+        private void readClinit(int thisClass, List<PendingField> pending) throws IOException {
+            if (nameIndices[NAME_CLINIT] == 0 || nameIndices[NAME_CODE] == 0) {
+                // no static initializer: every static field keeps its default value
+                markDefaults(pending);
+                return;
+            }
+            int methodsCount = in.getShort() & 0xffff;
+            for (int i = 0; i < methodsCount; i++) {
+                in.getShort(); // access_flags
+                int nameIndex = in.getShort() & 0xffff;
+                in.getShort(); // descriptor_index
+                int attributesCount = in.getShort() & 0xffff;
+                for (int j = 0; j < attributesCount; j++) {
+                    int attributeName = in.getShort() & 0xffff;
+                    int length = in.getInt();
+                    int end = in.position() + length;
+                    if (nameIndex == nameIndices[NAME_CLINIT] && attributeName == nameIndices[NAME_CODE]) {
+                        in.getInt(); // max_stack and max_locals
+                        int codeLength = in.getInt();
+                        followClinit(thisClass, in.position(), in.position() + codeLength, pending);
+                        return;
+                    }
+                    in.position(end);
+                }
+            }
+            markDefaults(pending);
+        }
+
+        private void markDefaults(List<PendingField> pending) {
+            for (PendingField field : pending) {
+                if (field.isStatic() && field.constantIndex == 0) {
+                    field.clinitState = PendingField.DEFAULT;
+                }
+            }
+        }
+
+        private void followClinit(int thisClass, int start, int end, List<PendingField> pending)
+                throws IOException {
+            // what the last instruction pushed: a constant pool index, a CONST_BASE - opcode code or 0
+            int lastConstant = 0;
+            // the value of an iconst_*, bipush or sipush
+            int lastOperand = 0;
+            // whether a method was called, which may assign any field
+            boolean invoked = false;
+            int pc = start;
+            while (pc < end) {
+                int opcode = in.get(pc) & 0xff;
+                int constant = 0;
+                int operand = 0;
+                int length = 1;
+                if (opcode >= 0x02 && opcode <= 0x0f) {
+                    // iconst_m1 to dconst_1
+                    constant = PendingField.CONST_BASE - opcode;
+                    operand = opcode - 0x03;
+                } else if (opcode == PendingField.BIPUSH) {
+                    constant = PendingField.CONST_BASE - opcode;
+                    operand = in.get(pc + 1);
+                    length = 2;
+                } else if (opcode == PendingField.SIPUSH) {
+                    constant = PendingField.CONST_BASE - opcode;
+                    operand = in.getShort(pc + 1);
+                    length = 3;
+                } else if (opcode == 0x12) {
+                    // ldc
+                    constant = in.get(pc + 1) & 0xff;
+                    length = 2;
+                } else if (opcode == 0x13 || opcode == 0x14) {
+                    // ldc_w, ldc2_w
+                    constant = in.getShort(pc + 1) & 0xffff;
+                    length = 3;
+                } else if (opcode == 0xb3) {
+                    // putstatic
+                    PendingField field = findPutField(thisClass, in.getShort(pc + 1) & 0xffff, pending);
+                    if (field != null) {
+                        field.clinitState = lastConstant != 0 ? PendingField.ASSIGNED : PendingField.UNKNOWN;
+                        field.clinitConstant = lastConstant;
+                        field.clinitOperand = lastOperand;
+                    }
+                    length = 3;
+                } else {
+                    length = instructionLength(opcode);
+                    if (length == 0) {
+                        // a branch, return or throw: what follows may not run, or run more than once
+                        if (opcode >= 0xac && opcode <= 0xb1) {
+                            markUnassigned(pending, invoked ? PendingField.UNKNOWN : PendingField.DEFAULT);
+                        }
+                        return;
+                    }
+                    if (opcode >= 0xb6 && opcode <= 0xba) {
+                        invoked = true;
+                        markReassignable(pending);
+                    }
+                }
+                lastConstant = constant;
+                lastOperand = operand;
+                pc += length;
+            }
+        }
+
+        /**
+         * The static initializer ran to its end: fields it never assigned keep their default value,
+         * unless it called a method, which is not followed and may have assigned them.
+         *
+         * @param state {@link PendingField#DEFAULT} or {@link PendingField#UNKNOWN}
+         */
+        private void markUnassigned(List<PendingField> pending, int state) {
+            for (PendingField field : pending) {
+                if (field.isStatic() && field.constantIndex == 0 && field.clinitState == PendingField.UNSEEN) {
+                    field.clinitState = state;
+                }
+            }
+        }
+
+        /**
+         * A method was called: it may assign the non-final fields again, while final ones are only
+         * ever assigned by the static initializer itself.
+         */
+        private void markReassignable(List<PendingField> pending) {
+            for (PendingField field : pending) {
+                if (field.isStatic() && !field.isFinal() && field.clinitState == PendingField.ASSIGNED) {
+                    field.clinitState = PendingField.UNKNOWN;
+                }
+            }
+        }
+
+        /**
+         * @return the pending field a putstatic to fieldref assigns, or null if it is another class' or field
+         */
+        private PendingField findPutField(int thisClass, int fieldref, List<PendingField> pending)
+                throws IOException {
+            int offset = offsets[fieldref];
+            int classIndex = in.getShort(offset + 1) & 0xffff;
+            if (classIndex != thisClass
+                    && !readUtf8(classNameIndex(classIndex)).equals(readUtf8(classNameIndex(thisClass)))) {
+                return null;
+            }
+            int nameAndType = offsets[in.getShort(offset + 3) & 0xffff];
+            int nameIndex = in.getShort(nameAndType + 1) & 0xffff;
+            for (PendingField field : pending) {
+                if (field.isStatic() && field.constantIndex == 0
+                        && (field.nameIndex == nameIndex || readUtf8(field.nameIndex).equals(readUtf8(nameIndex)))) {
+                    return field;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return the length of an instruction that neither branches nor ends
+         * the method, or 0 for one that does, or that this reader does not follow
+         */
+        private int instructionLength(int opcode) {
+            if ((opcode >= 0x99 && opcode <= 0xb1) || opcode == 0xbf || opcode >= 0xc4) {
+                // if*, goto, jsr, ret, switches, returns, athrow, wide, multianewarray, ifnull, goto_w
+                return 0;
+            }
+            switch (opcode) {
+                case 0x15: // iload to aload
+                case 0x16:
+                case 0x17:
+                case 0x18:
+                case 0x19:
+                case 0x36: // istore to astore
+                case 0x37:
+                case 0x38:
+                case 0x39:
+                case 0x3a:
+                case 0xbc: // newarray
+                    return 2;
+                case 0x84: // iinc
+                case 0xb2: // getstatic
+                case 0xb4: // getfield
+                case 0xb5: // putfield
+                case 0xb6: // invokevirtual
+                case 0xb7: // invokespecial
+                case 0xb8: // invokestatic
+                case 0xbb: // new
+                case 0xbd: // anewarray
+                case 0xc0: // checkcast
+                case 0xc1: // instanceof
+                    return 3;
+                case 0xb9: // invokeinterface
+                case 0xba: // invokedynamic
+                    return 5;
+                default:
+                    return opcode <= 0xc3 ? 1 : 0;
+            }
+        }
+
+        private RealValueHolder realValueOf(PendingField field) throws IOException {
+            if (!field.isStatic()) {
+                // instance field, no constant value
+                return null;
+            }
+            String descriptor = readUtf8(field.descriptorIndex);
+            if (field.constantIndex != 0) {
+                return toRealValue(descriptor, field.constantIndex, 0);
+            }
+            switch (field.clinitState) {
+                case PendingField.DEFAULT:
+                    return defaultValue(descriptor);
+                case PendingField.ASSIGNED:
+                    return toRealValue(descriptor, field.clinitConstant, field.clinitOperand);
+                default:
+                    return null;
+            }
+        }
+
+        /**
+         * Types a constant the way the Soot engine does: booleans as
+         * {@link ValueType#BOOLEAN}, every other int-sized primitive as
+         * {@link ValueType#INT}.
+         *
+         * @param constant a constant pool index, or the negative CONST_* code of
+         *                 the instruction that pushed the value
+         * @param operand the value a bipush, sipush or iconst_* pushed
+         */
+        private RealValueHolder toRealValue(String descriptor, int constant, int operand) throws IOException {
+            int tag = constant > 0 ? in.get(offsets[constant]) & 0xff : tagOf(constant);
+            if (descriptor.length() == 1) {
+                char type = descriptor.charAt(0);
+                if (tag == CONSTANT_INTEGER && "ZBSCI".indexOf(type) >= 0) {
+                    int value = constant > 0 ? readInt(constant) : operand;
+                    return type == 'Z' ? RealValueHolder.ofBoolean(value != 0) : RealValueHolder.ofInt(value);
+                } else if (tag == CONSTANT_LONG && type == 'J') {
+                    return RealValueHolder.ofLong(constant > 0 ? readLong(constant)
+                            : PendingField.CONST_BASE - constant - PendingField.LCONST_0);
+                } else if (tag == CONSTANT_FLOAT && type == 'F') {
+                    return RealValueHolder.ofFloat(constant > 0 ? Float.intBitsToFloat(readInt(constant))
+                            : PendingField.CONST_BASE - constant - PendingField.FCONST_0);
+                } else if (tag == CONSTANT_DOUBLE && type == 'D') {
+                    return RealValueHolder.ofDouble(constant > 0 ? Double.longBitsToDouble(readLong(constant))
+                            : PendingField.CONST_BASE - constant - PendingField.DCONST_0);
+                }
+                return null;
+            }
+            if (STRING_DESCRIPTOR.equals(descriptor) && tag == CONSTANT_STRING) {
+                return RealValueHolder.ofString(readUtf8(in.getShort(offsets[constant] + 1) & 0xffff));
+            }
+            return null;
+        }
+
+        /**
+         * @return the constant pool tag of the type an xconst_*, bipush or sipush pushes
+         */
+        private int tagOf(int constant) {
+            int opcode = PendingField.CONST_BASE - constant;
+            if (opcode == PendingField.BIPUSH || opcode == PendingField.SIPUSH) {
+                return CONSTANT_INTEGER;
+            } else if (opcode >= PendingField.DCONST_0) {
+                return CONSTANT_DOUBLE;
+            } else if (opcode >= PendingField.FCONST_0) {
+                return CONSTANT_FLOAT;
+            } else if (opcode >= PendingField.LCONST_0) {
+                return CONSTANT_LONG;
+            }
+            return CONSTANT_INTEGER;
+        }
+
+        /**
+         * The value a static field without ConstantValue holds if nothing assigns it.
+         */
+        private RealValueHolder defaultValue(String descriptor) {
+            if (descriptor.length() != 1) {
+                return null;
+            }
+            switch (descriptor.charAt(0)) {
+                case 'Z':
+                    return RealValueHolder.ofBoolean(false);
+                case 'B':
+                case 'S':
+                case 'C':
+                case 'I':
+                    return RealValueHolder.ofInt(0);
+                case 'J':
+                    return RealValueHolder.ofLong(0L);
+                case 'F':
+                    return RealValueHolder.ofFloat(0f);
+                case 'D':
+                    return RealValueHolder.ofDouble(0d);
+                default:
+                    return null;
+            }
+        }
+
+        private int classNameIndex(int classIndex) {
+            return in.getShort(offsets[classIndex] + 1) & 0xffff;
+        }
+
+        private int readInt(int index) {
+            return in.getInt(offsets[index] + 1);
+        }
+
+        private long readLong(int index) {
+            return in.getLong(offsets[index] + 1);
+        }
+
+        /**
+         * Decodes a Utf8 entry, which is modified UTF-8 like DataInput's.
+         */
+        private String readUtf8(int index) throws IOException {
+            int offset = offsets[index] + 1;
+            int length = 2 + (in.getShort(offset) & 0xffff);
+            return new DataInputStream(new ByteArrayInputStream(in.array(), in.arrayOffset() + offset, length))
+                    .readUTF();
+        }
+    }
+
+    /**
+     * An annotated field whose value is not decoded yet.
+     */
+    private static final class PendingField {
+        // what <clinit> does to a static field without ConstantValue
+        static final int UNSEEN = 0;
+        static final int ASSIGNED = 1;
+        static final int UNKNOWN = 2;
+        static final int DEFAULT = 3;
+
+        // constants pushed by instructions are coded as CONST_BASE - opcode, below every pool index
+        static final int CONST_BASE = -1;
+        static final int LCONST_0 = 0x09;
+        static final int FCONST_0 = 0x0b;
+        static final int DCONST_0 = 0x0e;
+        static final int BIPUSH = 0x10;
+        static final int SIPUSH = 0x11;
+
+        final int accessFlags;
+        final int nameIndex;
+        final int descriptorIndex;
+        final int constantIndex;
+        final List<EnforceValueHolder> enforceValues;
+        int clinitState = UNSEEN;
+        int clinitConstant;
+        int clinitOperand;
+
+        PendingField(int accessFlags, int nameIndex, int descriptorIndex, int constantIndex,
+                     List<EnforceValueHolder> enforceValues) {
+            this.accessFlags = accessFlags;
+            this.nameIndex = nameIndex;
+            this.descriptorIndex = descriptorIndex;
+            this.constantIndex = constantIndex;
+            this.enforceValues = enforceValues;
+        }
+
+        boolean isStatic() {
+            return (accessFlags & ACC_STATIC) != 0;
+        }
+
+        boolean isFinal() {
+            return (accessFlags & ACC_FINAL) != 0;
+        }
+    }
+}
@@ -0,0 +1,414 @@
+package com.github.promeg.configchecker;
+
+import soot.*;
+import soot.jimple.*;
+import soot.tagkit.*;
+import soot.toolkits.graph.BriefUnitGraph;
+import soot.toolkits.graph.UnitGraph;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Works out the value a static field holds once its class is initialized,
+ * for fields without a ConstantValue such as
+ * {@code static final boolean LOG = BuildConfig.LOG || Debug.FORCE}.
+ *
+ * Only the &lt;clinit&gt; of a class is looked at, by constant propagation over
+ * its control flow graph: a branch on a constant is followed one way, and a
+ * value that differs where two paths join is unknown. Final static fields of
+ * other classes come from their ConstantValue or, in turn, from their own
+ * &lt;clinit&gt;, and every class is evaluated at most once; their non-final
+ * ones are unknown, as any code may have changed them by then. Calls are not
+ * followed; their result is unknown, and so are the non-final fields of the
+ * class after any call, which may reach them directly or through others.
+ *
+ * Building a body changes soot's scene, so this is not called from the scan
+ * workers, only once they are done.
+ */
+final class ClinitEvaluator {
+    private static final String CLINIT = "void <clinit>()";
+    /** Statements visited per &lt;clinit&gt; before giving up; loops settle long before. */
+    private static final int MAX_STEPS = 100000;
+
+    /** Class to the values of its static fields after &lt;clinit&gt;, unknown ones left out. */
+    private final Map<SootClass, Map<SootField, Constant>> evaluated =
+            new HashMap<SootClass, Map<SootField, Constant>>();
+    private int clinitsEvaluated;
+
+    /**
+     * @return the value of field after its class is initialized, or null if it is not a static
+     * field or its value depends on something only known at run time
+     */
+    RealValueHolder evaluate(SootField field) {
+        if (!field.isStatic()) {
+            return null;
+        }
+        return toRealValue(field.getType(), staticValue(field));
+    }
+
+    int getClinitsEvaluated() {
+        return clinitsEvaluated;
+    }
+
+    private Constant staticValue(SootField field) {
+        Constant constant = constantValueOf(field);
+        if (constant != null) {
+            return constant;
+        }
+        return valuesOf(field.getDeclaringClass()).get(field);
+    }
+
+    private Map<SootField, Constant> valuesOf(SootClass sootClass) {
+        Map<SootField, Constant> values = evaluated.get(sootClass);
+        if (values == null) {
+            // a class read while it is evaluated, through a cycle, has no known values
+            evaluated.put(sootClass, Collections.<SootField, Constant>emptyMap());
+            values = evaluateClinit(sootClass);
+            evaluated.put(sootClass, values);
+        }
+        return values;
+    }
+
+    private Map<SootField, Constant> evaluateClinit(SootClass sootClass) {
+        Map<Object, Constant> state = new HashMap<Object, Constant>();
+        for (SootField field : sootClass.getFields()) {
+            if (field.isStatic()) {
+                Constant constant = constantValueOf(field);
+                state.put(field, constant != null ? constant : defaultValue(field.getType()));
+            }
+        }
+        if (sootClass.declaresMethod(CLINIT)) {
+            SootMethod clinit = sootClass.getMethod(CLINIT);
+            if (!clinit.isConcrete()) {
+                return Collections.emptyMap();
+            }
+            try {
+                Body body = clinit.retrieveActiveBody();
+                clinitsEvaluated++;
+                state = propagate(sootClass, new BriefUnitGraph(body), state);
+            } catch (RuntimeException e) {
+                // the body could not be built, e.g. it refers to classes that are not there
+                return Collections.emptyMap();
+            } finally {
+                // only the values are kept, not the bodies of possibly many classes
+                clinit.releaseActiveBody();
+            }
+        }
+        Map<SootField, Constant> values = new HashMap<SootField, Constant>();
+        if (state != null) {
+            for (Map.Entry<Object, Constant> entry : state.entrySet()) {
+                if (entry.getKey() instanceof SootField) {
+                    values.put((SootField) entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @param entry the values of the static fields before &lt;clinit&gt; runs
+     * @return the locals and static fields known when &lt;clinit&gt; returns, or
+     * null if that could not be worked out
+     */
+    private Map<Object, Constant> propagate(SootClass sootClass, UnitGraph graph, Map<Object, Constant> entry) {
+        Map<Unit, Map<Object, Constant>> in = new HashMap<Unit, Map<Object, Constant>>();
+        LinkedList<Unit> worklist = new LinkedList<Unit>();
+        // exception handlers are left out, an exception fails the class' initialization anyway
+        Unit first = graph.getBody().getUnits().getFirst();
+        in.put(first, entry);
+        worklist.add(first);
+        Map<Object, Constant> exit = null;
+        int steps = 0;
+        while (!worklist.isEmpty()) {
+            if (++steps > MAX_STEPS) {
+                return null;
+            }
+            Unit unit = worklist.removeFirst();
+            Map<Object, Constant> state = new HashMap<Object, Constant>(in.get(unit));
+            List<Unit> successors;
+            if (unit instanceof IfStmt) {
+                Constant condition = eval(sootClass, ((IfStmt) unit).getCondition(), state);
+                successors = successorsOf((IfStmt) unit, graph, condition);
+            } else {
+                transfer(sootClass, (Stmt) unit, state);
+                successors = graph.getSuccsOf(unit);
+            }
+            if (unit instanceof ReturnVoidStmt) {
+                exit = exit == null ? state : merge(exit, state);
+            }
+            for (Unit successor : successors) {
+                Map<Object, Constant> old = in.get(successor);
+                Map<Object, Constant> merged = old == null ? state : merge(old, state);
+                // merging only ever drops values, so a state that kept its size did not change
+                if (old == null || merged.size() != old.size()) {
+                    in.put(successor, merged);
+                    if (!worklist.contains(successor)) {
+                        worklist.add(successor);
+                    }
+                }
+            }
+        }
+        return exit;
+    }
+
+    private static List<Unit> successorsOf(IfStmt ifStmt, UnitGraph graph, Constant condition) {
+        if (!(condition instanceof IntConstant)) {
+            return graph.getSuccsOf(ifStmt);
+        }
+        Unit next = ((IntConstant) condition).value != 0
+                ? ifStmt.getTarget()
+                : graph.getBody().getUnits().getSuccOf(ifStmt);
+        return next == null ? Collections.<Unit>emptyList() : Collections.singletonList(next);
+    }
+
+    /**
+     * @return the values a and b agree on
+     */
+    private static Map<Object, Constant> merge(Map<Object, Constant> a, Map<Object, Constant> b) {
+        Map<Object, Constant> merged = new HashMap<Object, Constant>();
+        for (Map.Entry<Object, Constant> entry : a.entrySet()) {
+            if (entry.getValue().equals(b.get(entry.getKey()))) {
+                merged.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return merged;
+    }
+
+    private void transfer(SootClass sootClass, Stmt stmt, Map<Object, Constant> state) {
+        if (stmt.containsInvokeExpr()) {
+            // the callee may assign the non-final fields; final ones are only assigned here
+            Iterator<Map.Entry<Object, Constant>> entries = state.entrySet().iterator();
+            while (entries.hasNext()) {
+                Object key = entries.next().getKey();
+                if (key instanceof SootField && !((SootField) key).isFinal()) {
+                    entries.remove();
+                }
+            }
+        }
+        if (!(stmt instanceof DefinitionStmt)) {
+            return;
+        }
+        Object key = keyOf(sootClass, ((DefinitionStmt) stmt).getLeftOp());
+        if (key == null) {
+            // arrays, instance fields and other classes' fields are not tracked
+            return;
+        }
+        Constant value = stmt instanceof AssignStmt
+                ? eval(sootClass, ((AssignStmt) stmt).getRightOp(), state)
+                : null;
+        if (value != null) {
+            state.put(key, value);
+        } else {
+            state.remove(key);
+        }
+    }
+
+    /**
+     * @return the local or static field of sootClass left is, or null if it is neither
+     */
+    private static Object keyOf(SootClass sootClass, Value left) {
+        if (left instanceof Local) {
+            return left;
+        }
+        if (left instanceof StaticFieldRef) {
+            SootField field = resolveField(((StaticFieldRef) left).getFieldRef());
+            if (field != null && field.getDeclaringClass() == sootClass) {
+                return field;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the constant value is in state, or null if it is unknown
+     */
+    private Constant eval(SootClass sootClass, Value value, Map<Object, Constant> state) {
+        if (value instanceof Constant) {
+            return (Constant) value;
+        } else if (value instanceof Local) {
+            return state.get(value);
+        } else if (value instanceof StaticFieldRef) {
+            SootField field = resolveField(((StaticFieldRef) value).getFieldRef());
+            if (field == null) {
+                return null;
+            }
+            if (field.getDeclaringClass() == sootClass) {
+                return state.get(field);
+            }
+            return field.isFinal() ? staticValue(field) : null;
+        } else if (value instanceof CastExpr) {
+            Constant op = eval(sootClass, ((CastExpr) value).getOp(), state);
+            return op == null ? null : cast(op, ((CastExpr) value).getCastType());
+        } else if (value instanceof NegExpr) {
+            Constant op = eval(sootClass, ((NegExpr) value).getOp(), state);
+            return op instanceof NumericConstant ? ((NumericConstant) op).negate() : null;
+        } else if (value instanceof BinopExpr) {
+            Constant op1 = eval(sootClass, ((BinopExpr) value).getOp1(), state);
+            Constant op2 = eval(sootClass, ((BinopExpr) value).getOp2(), state);
+            if (op1 instanceof NumericConstant && op2 instanceof NumericConstant) {
+                return binop((BinopExpr) value, (NumericConstant) op1, (NumericConstant) op2);
+            }
+        }
+        // calls, allocations, arrays and instance fields
+        return null;
+    }
+
+    private static Constant binop(BinopExpr expr, NumericConstant a, NumericConstant b) {
+        try {
+            if (expr instanceof AddExpr) {
+                return a.add(b);
+            } else if (expr instanceof SubExpr) {
+                return a.subtract(b);
+            } else if (expr instanceof MulExpr) {
+                return a.multiply(b);
+            } else if (expr instanceof DivExpr) {
+                return a.divide(b);
+            } else if (expr instanceof RemExpr) {
+                return a.remainder(b);
+            } else if (expr instanceof EqExpr) {
+                return a.equalEqual(b);
+            } else if (expr instanceof NeExpr) {
+                return a.notEqual(b);
+            } else if (expr instanceof LtExpr) {
+                return a.lessThan(b);
+            } else if (expr instanceof LeExpr) {
+                return a.lessThanOrEqual(b);
+            } else if (expr instanceof GtExpr) {
+                return a.greaterThan(b);
+            } else if (expr instanceof GeExpr) {
+                return a.greaterThanOrEqual(b);
+            } else if (expr instanceof AndExpr) {
+                return ((ArithmeticConstant) a).and((ArithmeticConstant) b);
+            } else if (expr instanceof OrExpr) {
+                return ((ArithmeticConstant) a).or((ArithmeticConstant) b);
+            } else if (expr instanceof XorExpr) {
+                return ((ArithmeticConstant) a).xor((ArithmeticConstant) b);
+            } else if (expr instanceof ShlExpr) {
+                return ((ArithmeticConstant) a).shiftLeft((ArithmeticConstant) b);
+            } else if (expr instanceof ShrExpr) {
+                return ((ArithmeticConstant) a).shiftRight((ArithmeticConstant) b);
+            } else if (expr instanceof UshrExpr) {
+                return ((ArithmeticConstant) a).unsignedShiftRight((ArithmeticConstant) b);
+            } else if (expr instanceof CmpExpr) {
+                return ((LongConstant) a).cmp((LongConstant) b);
+            } else if (expr instanceof CmplExpr) {
+                return ((RealConstant) a).cmpl((RealConstant) b);
+            } else if (expr instanceof CmpgExpr) {
+                return ((RealConstant) a).cmpg((RealConstant) b);
+            }
+        } catch (RuntimeException e) {
+            // division by zero, or operands of different types
+        }
+        return null;
+    }
+
+    /**
+     * Converts like the JVM's primitive conversions; reference casts keep the value.
+     */
+    private static Constant cast(Constant value, Type type) {
+        if (!(value instanceof NumericConstant)) {
+            return type instanceof RefLikeType ? value : null;
+        }
+        boolean integral = value instanceof IntConstant || value instanceof LongConstant;
+        long l = 0;
+        double d = 0;
+        if (value instanceof IntConstant) {
+            l = ((IntConstant) value).value;
+        } else if (value instanceof LongConstant) {
+            l = ((LongConstant) value).value;
+        } else if (value instanceof FloatConstant) {
+            d = ((FloatConstant) value).value;
+        } else if (value instanceof DoubleConstant) {
+            d = ((DoubleConstant) value).value;
+        }
+        if (type instanceof LongType) {
+            return LongConstant.v(integral ? l : (long) d);
+        } else if (type instanceof FloatType) {
+            return FloatConstant.v(integral ? (float) l : (float) d);
+        } else if (type instanceof DoubleType) {
+            return DoubleConstant.v(integral ? (double) l : d);
+        }
+        int i = integral ? (int) l : (int) d;
+        if (type instanceof ByteType) {
+            return IntConstant.v((byte) i);
+        } else if (type instanceof ShortType) {
+            return IntConstant.v((short) i);
+        } else if (type instanceof CharType) {
+            return IntConstant.v((char) i);
+        } else if (type instanceof IntType || type instanceof BooleanType) {
+            return IntConstant.v(i);
+        }
+        return null;
+    }
+
+    /**
+     * @return the field ref points at, or null if its class is not there
+     */
+    private static SootField resolveField(SootFieldRef ref) {
+        SootClass declaringClass = ref.declaringClass();
+        if (declaringClass.isPhantom()) {
+            return null;
+        }
+        try {
+            if (declaringClass.resolvingLevel() < SootClass.SIGNATURES) {
+                // --lazy-soot only resolves the annotated classes up front
+                Scene.v().forceResolve(declaringClass.getName(), SootClass.SIGNATURES);
+            }
+            return ref.resolve();
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static Constant constantValueOf(SootField field) {
+        for (Tag tag : field.getTags()) {
+            if (tag instanceof StringConstantValueTag) {
+                return StringConstant.v(((StringConstantValueTag) tag).getStringValue());
+            } else if (tag instanceof IntegerConstantValueTag) {
+                return IntConstant.v(((IntegerConstantValueTag) tag).getIntValue());
+            } else if (tag instanceof LongConstantValueTag) {
+                return LongConstant.v(((LongConstantValueTag) tag).getLongValue());
+            } else if (tag instanceof FloatConstantValueTag) {
+                return FloatConstant.v(((FloatConstantValueTag) tag).getFloatValue());
+            } else if (tag instanceof DoubleConstantValueTag) {
+                return DoubleConstant.v(((DoubleConstantValueTag) tag).getDoubleValue());
+            }
+        }
+        return null;
+    }
+
+    private static Constant defaultValue(Type type) {
+        if (type instanceof LongType) {
+            return LongConstant.v(0);
+        } else if (type instanceof FloatType) {
+            return FloatConstant.v(0);
+        } else if (type instanceof DoubleType) {
+            return DoubleConstant.v(0);
+        } else if (type instanceof PrimType) {
+            return IntConstant.v(0);
+        }
+        return NullConstant.v();
+    }
+
+    private static RealValueHolder toRealValue(Type type, Constant value) {
+        if (value instanceof IntConstant) {
+            int intValue = ((IntConstant) value).value;
+            return type instanceof BooleanType ? RealValueHolder.ofBoolean(intValue != 0)
+                    : RealValueHolder.ofInt(intValue);
+        } else if (value instanceof LongConstant) {
+            return RealValueHolder.ofLong(((LongConstant) value).value);
+        } else if (value instanceof FloatConstant) {
+            return RealValueHolder.ofFloat(((FloatConstant) value).value);
+        } else if (value instanceof DoubleConstant) {
+            return RealValueHolder.ofDouble(((DoubleConstant) value).value);
+        } else if (value instanceof StringConstant) {
+            return RealValueHolder.ofString(((StringConstant) value).value);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,190 @@
+package com.github.promeg.configchecker;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Every annotated field of one apk, with its real value and constraints,
+ * sorted by class and field name so two snapshots can be compared in one
+ * pass by {@link SnapshotDiff}. Written by {@link SnapshotWriter}.
+ *
+ * The file is read memory-mapped; a field is only decoded when asked for.
+ * Layout:
+ * <pre>
+ * int magic "ACS1", int format version, int count,
+ * int[count + 1] offsets of the fields from the start of the file, the
+ * last one being the end of the file, then the fields as written by
+ * {@link AnnotatedFieldCodec#writeField}
+ * </pre>
+ * A field's constraints are sorted by flavor and build type, so the same
+ * constraints always give the same bytes.
+ */
+final class ConfigSnapshot {
+    static final String SUFFIX = ".snapshot";
+    /** Bump whenever the layout changes. */
+    static final int FORMAT_VERSION = 1;
+
+    private static final int MAGIC = 0x41435331; // "ACS1"
+    private static final int HEADER_SIZE = 12;
+
+    private static final Comparator<AnnotatedField> FIELD_ORDER = new Comparator<AnnotatedField>() {
+        public int compare(AnnotatedField a, AnnotatedField b) {
+            int order = a.getClassName().compareTo(b.getClassName());
+            return order != 0 ? order : a.getFieldName().compareTo(b.getFieldName());
+        }
+    };
+
+    private static final Comparator<EnforceValueHolder> CONSTRAINT_ORDER = new Comparator<EnforceValueHolder>() {
+        public int compare(EnforceValueHolder a, EnforceValueHolder b) {
+            int order = String.valueOf(a.getFlavor()).compareTo(String.valueOf(b.getFlavor()));
+            return order != 0 ? order : String.valueOf(a.getBuildType()).compareTo(String.valueOf(b.getBuildType()));
+        }
+    };
+
+    private final File file;
+    private final ByteBuffer buffer;
+    private final int count;
+
+    private ConfigSnapshot(File file, ByteBuffer buffer, int count) {
+        this.file = file;
+        this.buffer = buffer;
+        this.count = count;
+    }
+
+    static void write(File file, List<AnnotatedField> fields) throws IOException {
+        List<AnnotatedField> sorted = new ArrayList<AnnotatedField>(fields.size());
+        for (AnnotatedField field : fields) {
+            List<EnforceValueHolder> enforceValues = new ArrayList<EnforceValueHolder>(field.getEnforceValues());
+            Collections.sort(enforceValues, CONSTRAINT_ORDER);
+            sorted.add(new AnnotatedField(field.getClassName(), field.getFieldName(), field.getRealValue(),
+                    enforceValues));
+        }
+        Collections.sort(sorted, FIELD_ORDER);
+
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        DataOutputStream recordsOut = new DataOutputStream(records);
+        int[] offsets = new int[sorted.size() + 1];
+        int start = HEADER_SIZE + 4 * offsets.length;
+        for (int i = 0; i < sorted.size(); i++) {
+            offsets[i] = start + recordsOut.size();
+            AnnotatedFieldCodec.writeField(recordsOut, sorted.get(i));
+        }
+        offsets[sorted.size()] = start + recordsOut.size();
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(sorted.size());
+            for (int offset : offsets) {
+                out.writeInt(offset);
+            }
+            records.writeTo(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    static ConfigSnapshot open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        ByteBuffer buffer;
+        try {
+            // the mapping stays valid once the file is closed
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        } finally {
+            raf.close();
+        }
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a config snapshot: " + file);
+        }
+        int version = buffer.getInt(4);
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported config snapshot version " + version + ": " + file);
+        }
+        int count = buffer.getInt(8);
+        AnnotatedFieldCodec.checkCount(count);
+        if (HEADER_SIZE + 4L * (count + 1) > buffer.limit()
+                || buffer.getInt(HEADER_SIZE + 4 * count) != buffer.limit()) {
+            throw new IOException("Truncated config snapshot: " + file);
+        }
+        return new ConfigSnapshot(file, buffer, count);
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    int size() {
+        return count;
+    }
+
+    /**
+     * Orders field i of this snapshot and field j of other like the fields
+     * are sorted, decoding only their names.
+     */
+    int compareNames(int i, ConfigSnapshot other, int j) throws IOException {
+        int offset = offsetOf(i);
+        int otherOffset = other.offsetOf(j);
+        int order = readString(offset).compareTo(other.readString(otherOffset));
+        if (order != 0) {
+            return order;
+        }
+        offset = skipString(offset);
+        otherOffset = other.skipString(otherOffset);
+        return readString(offset).compareTo(other.readString(otherOffset));
+    }
+
+    /**
+     * @return whether field i of this snapshot and field j of other have the
+     * same value and constraints, from their bytes
+     */
+    boolean sameValues(int i, ConfigSnapshot other, int j) {
+        int from = skipString(skipString(offsetOf(i)));
+        int otherFrom = other.skipString(other.skipString(other.offsetOf(j)));
+        return slice(from, offsetOf(i + 1)).equals(other.slice(otherFrom, other.offsetOf(j + 1)));
+    }
+
+    AnnotatedField get(int i) throws IOException {
+        ByteBuffer record = slice(offsetOf(i), offsetOf(i + 1));
+        byte[] bytes = new byte[record.remaining()];
+        record.get(bytes);
+        return AnnotatedFieldCodec.readField(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    private int offsetOf(int i) {
+        return buffer.getInt(HEADER_SIZE + 4 * i);
+    }
+
+    private ByteBuffer slice(int from, int to) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(to);
+        slice.position(from);
+        return slice;
+    }
+
+    private String readString(int offset) throws IOException {
+        int length = buffer.getInt(offset);
+        byte[] bytes = new byte[length];
+        ByteBuffer string = buffer.duplicate();
+        string.position(offset + 4);
+        string.get(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private int skipString(int offset) {
+        return offset + 4 + buffer.getInt(offset);
+    }
+}
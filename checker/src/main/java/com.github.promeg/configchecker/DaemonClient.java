@@ -0,0 +1,150 @@
+package com.github.promeg.configchecker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * Thin client for {@link CheckerDaemon}: sends the command line to the
+ * running daemon, copies its output to stdout and stderr, and exits with the
+ * daemon's exit code, so scripts see the same 0/1/2/3 as a normal run.
+ */
+final class DaemonClient {
+    private DaemonClient() {
+    }
+
+    /**
+     * Entry point for --client [args]. The daemon runs in a different working
+     * directory, so file arguments are made absolute first.
+     */
+    static int check(String[] args) {
+        if (args.length == 0) {
+            System.err.println("--client needs the arguments of a normal check");
+            return Main.EXIT_USAGE;
+        }
+        return send(absolutePaths(args));
+    }
+
+    /**
+     * Entry point for --stop-daemon.
+     */
+    static int stop() {
+        return send(new String[0]);
+    }
+
+    private static int send(String[] args) {
+        Socket socket = null;
+        try {
+            String[] info = readInfoFile();
+            socket = new Socket(InetAddress.getByName("127.0.0.1"), Integer.parseInt(info[0]));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeInt(CheckerDaemon.MAGIC);
+            out.writeInt(CheckerDaemon.PROTOCOL_VERSION);
+            out.writeUTF(info[1]);
+            out.writeInt(args.length);
+            for (String arg : args) {
+                out.writeUTF(arg);
+            }
+            out.flush();
+
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            byte[] buffer = new byte[8192];
+            while (true) {
+                int type = in.readByte();
+                if (type == CheckerDaemon.FRAME_EXIT) {
+                    System.out.flush();
+                    System.err.flush();
+                    return in.readInt();
+                }
+                PrintStream target = type == CheckerDaemon.FRAME_ERR ? System.err : System.out;
+                int length = in.readInt();
+                while (length > 0) {
+                    int count = in.read(buffer, 0, Math.min(buffer.length, length));
+                    if (count < 0) {
+                        throw new EOFException();
+                    }
+                    target.write(buffer, 0, count);
+                    length -= count;
+                }
+            }
+        } catch (FileNotFoundException e) {
+            System.err.println("No checker daemon running, start one with --daemon");
+        } catch (EOFException e) {
+            System.err.println("Failed: the checker daemon closed the connection");
+        } catch (IOException e) {
+            System.err.println("Failed: " + e);
+        } catch (NumberFormatException e) {
+            System.err.println("Failed: corrupt " + CheckerDaemon.infoFile());
+        } finally {
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // nothing left to read
+                }
+            }
+        }
+        return BatchChecker.EXIT_ERROR;
+    }
+
+    /**
+     * @return the port and token of the running daemon
+     */
+    private static String[] readInfoFile() throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(CheckerDaemon.infoFile()), "UTF-8"));
+        try {
+            String line = reader.readLine();
+            String[] info = line == null ? new String[0] : line.trim().split(" ");
+            if (info.length != 2) {
+                throw new NumberFormatException();
+            }
+            return info;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Makes inputs and the values of path options absolute against the
+     * client's working directory.
+     */
+    static String[] absolutePaths(String[] args) {
+        String[] result = new String[args.length];
+        boolean inputs = false;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (inputs || !arg.startsWith("--")) {
+                inputs = true;
+                result[i] = new File(arg).getAbsolutePath();
+            } else if (arg.equals("--")) {
+                inputs = true;
+                result[i] = arg;
+            } else if (arg.startsWith("--androidjar=") || arg.startsWith("--manifest=")
+                    || arg.startsWith("--cache-dir=") || arg.startsWith("--snapshot-dir=")
+                    || arg.startsWith("--mapping=") || arg.startsWith("--platform-index=")) {
+                result[i] = absoluteValue(arg, arg.indexOf('=') + 1);
+            } else if ((arg.startsWith("--report=") || arg.startsWith("--metrics=")) && arg.indexOf(':') > 0) {
+                result[i] = absoluteValue(arg, arg.indexOf(':') + 1);
+            } else {
+                result[i] = arg;
+            }
+        }
+        return result;
+    }
+
+    private static String absoluteValue(String arg, int valueStart) {
+        return arg.substring(0, valueStart) + new File(arg.substring(valueStart)).getAbsolutePath();
+    }
+}
@@ -5,308 +5,523 @@ import soot.options.Options;
 import soot.tagkit.*;
 import soot.util.Chain;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Created by guyacong on 2015/12/23.
  */
 public class DexChecker {
-    private static final HashMap<Class, String> ENFORCER_ANNOTATIONS = new HashMap<Class, String>();
-
-    static {
-        ENFORCER_ANNOTATIONS.put(EnforceBooleanValue.class, getNameForSoot(EnforceBooleanValue.class));
-        ENFORCER_ANNOTATIONS.put(EnforceDoubleValue.class, getNameForSoot(EnforceDoubleValue.class));
-        ENFORCER_ANNOTATIONS.put(EnforceFloatValue.class, getNameForSoot(EnforceFloatValue.class));
-        ENFORCER_ANNOTATIONS.put(EnforceIntValue.class, getNameForSoot(EnforceIntValue.class));
-        ENFORCER_ANNOTATIONS.put(EnforceLongValue.class, getNameForSoot(EnforceLongValue.class));
-        ENFORCER_ANNOTATIONS.put(EnforceStringValue.class, getNameForSoot(EnforceStringValue.class));
-    }
-
     private static final String ANNOTATION_KEY_VALUE = "value";
     private static final String ANNOTATION_KEY_FLAVOR = "flavor";
     private static final String ANNOTATION_KEY_BUILDTYPE = "buildType";
 
-    private final Set<String> PROCESSED_CLASS_SET = new HashSet<String>(10000);
-
     private final String  androidJar;
     private final List<String>  dexFiles;
-    private final String targetFlavor;
-    private final String tartBuildType;
+    private final int threads;
+    private final PrintStream out;
+    private final VariantChecker variantChecker;
+    private CheckReport report;
+    private Metrics metrics = new Metrics();
+    private boolean lazy;
+    private File platformIndex;
+    private HeapBudget heapBudget;
+    private MappingIndex mapping;
+    private final ClinitEvaluator clinitEvaluator = new ClinitEvaluator();
 
 
     public DexChecker(String androidJar, List<String> dexFiles, String targetFlavor, String tartBuildType) {
+        this(androidJar, dexFiles, Collections.singletonList(new Variant(targetFlavor, tartBuildType)),
+                WorkerPool.defaultThreads(), System.out);
+    }
+
+    /**
+     * @param variants the variants to check, or null for every variant some annotation declares
+     * @param threads worker threads scanning the loaded classes
+     */
+    DexChecker(String androidJar, List<String> dexFiles, List<Variant> variants, int threads, PrintStream out) {
         this.androidJar = androidJar;
         this.dexFiles = dexFiles;
-        this.targetFlavor = targetFlavor;
-        this.tartBuildType = tartBuildType;
+        this.threads = threads;
+        this.out = out;
+        this.variantChecker = new VariantChecker(variants, out);
     }
 
-    public void run() {
-        System.out.println("prepare.... flavor: " + targetFlavor + "   build type: " + tartBuildType);
-        long startTime = System.currentTimeMillis();
-        initsoot();
-        PackManager.v().getPack("jtp").add(new Transform("jtp.DexCheckerTransform", new DexCheckerTransform()));
-        System.out.println("Start  checking       ================ " + dexFiles);
-        PackManager.v().runPacks();
-        System.out.println("Config check passed!  ================ " + dexFiles);
-        System.out.println("Done! Cost " + (System.currentTimeMillis() - startTime)/1000 + "s");
+    /**
+     * Report every failure before failing, instead of stopping at the first one.
+     */
+    void setKeepGoing(boolean keepGoing) {
+        variantChecker.setKeepGoing(keepGoing);
     }
 
-    private void initsoot() {
-        Options.v().set_force_android_jar(androidJar);
-        Options.v().set_allow_phantom_refs(true);
-        Options.v().set_prepend_classpath(true);
-        Options.v().set_output_format(Options.output_format_none);
-        Options.v().set_src_prec(Options.src_prec_apk);
-        Options.v().set_process_dir(dexFiles);
-        Options.v().set_debug(false);
+    /**
+     * Resolve only the classes declaring annotated fields, and only to their
+     * signatures, instead of loading every class of the apk.
+     */
+    void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
 
-        G.v().soot_options_Options().set_verbose(false);
-        G.v().out = new PrintStream(new OutputStream() {
-            @Override
-            public void write(int b) throws IOException {
+    /**
+     * Give soot this {@link PlatformIndex} as its classpath instead of the android.jar.
+     */
+    void setPlatformIndex(File platformIndex) {
+        this.platformIndex = platformIndex;
+    }
 
-            }
-        });
+    /**
+     * Resolve and scan the classes in batches that keep the heap near
+     * budgetBytes, releasing each batch before the next; implies lazy
+     * resolution.
+     */
+    void setHeapBudget(long budgetBytes) {
+        this.heapBudget = new HeapBudget(budgetBytes);
+    }
 
-        Scene.v().loadNecessaryClasses();
+    /**
+     * Check and report the fields under their original names.
+     */
+    void setMapping(MappingIndex mapping) {
+        this.mapping = mapping;
     }
 
-    private void checkValueThrow(SootField field, AnnotationTag annotationTag) {
-        RealValueHolder realValueHolder = extactRealValue(field);
-        EnforceValueHolder enforceValueHolder = extactEnforceValue(annotationTag);
+    void setReport(CheckReport report) {
+        this.report = report;
+        this.metrics = report.getMetrics();
+        variantChecker.setReport(report);
+    }
 
-        if (realValueHolder != null && enforceValueHolder != null) {
-            if (!realValueHolder.getValueType().equals(enforceValueHolder.getValueType())) {
-                throw new ConfigCheckFailException(String.format("Enforce value fail <<<<<< Filed type: %s does not match Annotation type: %s!", realValueHolder.getValueType(), enforceValueHolder.getValueType()));
-            }
-            if (!targetFlavor.equals(enforceValueHolder.getFlavor())) {
-                // flavor doesn't match, no need to check value
-                return;
+    public void run() throws IOException {
+        out.println("prepare.... " + variantChecker.describe());
+        long startTime = System.currentTimeMillis();
+        List<String> annotatedDexFiles = new ArrayList<String>();
+        Metrics.Timer timer = metrics.start(Metrics.PHASE_PREFILTER);
+        Set<String> annotatedClasses = prefilter(annotatedDexFiles);
+        timer.stop();
+        List<AnnotatedField> annotatedFields = new ArrayList<AnnotatedField>();
+        if (annotatedDexFiles.isEmpty()) {
+            out.println("No Enforce*Value annotation found, skip soot ================ " + dexFiles);
+        } else if (heapBudget != null) {
+            if (!heapBudget.fitsMaxHeap()) {
+                out.println("Heap budget of " + HeapBudget.toMegabytes(heapBudget.getBudgetBytes())
+                        + "m is more than the JVM's max heap of "
+                        + HeapBudget.toMegabytes(Runtime.getRuntime().maxMemory()) + "m");
             }
-            if (!tartBuildType.equals(enforceValueHolder.getBuildType())) {
-                // build type doesn't match, no need to check value
-                return;
+            out.println("Start  checking       ================ " + dexFiles);
+            annotatedFields = scanBounded(annotatedDexFiles, annotatedClasses);
+            metrics.count(Metrics.COUNTER_CLASSES_LOADED, Scene.v().getClasses().size());
+            metrics.count(Metrics.COUNTER_CLINITS_EVALUATED, clinitEvaluator.getClinitsEvaluated());
+            if (heapBudget.isExceeded()) {
+                metrics.count(Metrics.COUNTER_HEAP_BUDGET_EXCEEDED, 1);
+                out.println("Heap budget of " + HeapBudget.toMegabytes(heapBudget.getBudgetBytes())
+                        + "m could not be kept, " + HeapBudget.toMegabytes(heapBudget.getPeakBytes())
+                        + "m were in use after collecting garbage");
             }
-            if (realValueHolder.getValue().equals(enforceValueHolder.getValue())) {
-                System.out.println("Enforce value pass >>>>>>> Filed:  " + field.getDeclaringClass().toString() + "." + field.getName() + "=" + realValueHolder + "     " + enforceValueHolder);
+        } else {
+            List<SootClass> sootClasses;
+            if (lazy) {
+                timer = metrics.start(Metrics.PHASE_SOOT_RESOLVE_SIGNATURES);
+                sootClasses = resolveSignatures(annotatedDexFiles, annotatedClasses);
             } else {
-                throw new ConfigCheckFailException("Enforce value fail <<<<<< Filed:  " + field.getDeclaringClass().toString() + "." + field.getName() + "=" + realValueHolder + "     " + enforceValueHolder);
+                timer = metrics.start(Metrics.PHASE_SOOT_LOAD);
+                sootClasses = initsoot(annotatedDexFiles, annotatedClasses);
             }
+            timer.stop();
+            metrics.count(Metrics.COUNTER_CLASSES_LOADED, Scene.v().getClasses().size());
+            out.println("Start  checking       ================ " + dexFiles);
+            timer = metrics.start(Metrics.PHASE_SCAN);
+            annotatedFields = scan(sootClasses);
+            timer.stop();
+            metrics.count(Metrics.COUNTER_CLASSES_SCANNED, sootClasses.size());
+            metrics.count(Metrics.COUNTER_CLINITS_EVALUATED, clinitEvaluator.getClinitsEvaluated());
+        }
+        metrics.count(Metrics.COUNTER_ANNOTATED_FIELDS, annotatedFields.size());
+        if (report != null) {
+            // soot loads all dex files as one scene, so there is a single entry for them
+            report.addDex(dexFiles.toString(), System.currentTimeMillis() - startTime, annotatedFields.size(), false);
+        }
+        if (mapping != null) {
+            annotatedFields = mapping.deobfuscate(annotatedFields);
         }
+        timer = metrics.start(Metrics.PHASE_CHECK);
+        variantChecker.check(annotatedFields);
+        timer.stop();
+        out.println("Config check passed!  ================ " + dexFiles);
+        out.println("Done! Cost " + (System.currentTimeMillis() - startTime)/1000 + "s");
     }
 
-    private RealValueHolder extactRealValue(SootField sootField) {
-        List<Tag> tags = sootField.getTags();
-        for (Tag tag : tags) {
-            if (tag instanceof StringConstantValueTag) {
-                return new RealValueHolder<String>(((StringConstantValueTag) tag).getStringValue());
-            } else if (tag instanceof IntegerConstantValueTag) {
-                // maybe boolean or int
-                if (sootField.getType() instanceof BooleanType) {
-                    // boolean
-                    return new RealValueHolder<Boolean>(((IntegerConstantValueTag) tag).getIntValue() == 0 ? false : true);
-                } else {
-                    // int
-                    return new RealValueHolder<Integer>(((IntegerConstantValueTag) tag).getIntValue());
+    /**
+     * Finds the dex files and classes that reference an enforcer annotation at
+     * all, from the dex type tables, so soot only has to load those.
+     *
+     * @param annotatedDexFiles receives the dex files worth handing to soot
+     * @return names of the classes declaring annotated fields, or null if some
+     * input could not be prefiltered and every class has to be checked
+     */
+    private Set<String> prefilter(List<String> annotatedDexFiles) {
+        DexScanner scanner = new DexScanner();
+        Set<String> annotatedClasses = new HashSet<String>();
+        boolean prefiltered = true;
+        for (String dexFile : dexFiles) {
+            try {
+                File file = new File(dexFile);
+                DexFile dex = DexFile.open(file);
+                BitSet classDefs = scanner.findAnnotatedClasses(dex);
+                // soot reads the fields, so they cannot be attributed to a dex here
+                metrics.addDex(dexFile, dex.getClassDefsSize(), classDefs.cardinality(), -1, file.length());
+                metrics.count(Metrics.COUNTER_BYTES_READ, file.length());
+                if (classDefs.isEmpty()) {
+                    continue;
                 }
-            } else if (tag instanceof DoubleConstantValueTag) {
-                return new RealValueHolder<Double>(((DoubleConstantValueTag) tag).getDoubleValue());
-            } else if (tag instanceof FloatConstantValueTag) {
-                return new RealValueHolder<Float>(((FloatConstantValueTag) tag).getFloatValue());
-            } else if (tag instanceof LongConstantValueTag) {
-                return new RealValueHolder<Long>(((LongConstantValueTag) tag).getLongValue());
+                for (int i = classDefs.nextSetBit(0); i >= 0; i = classDefs.nextSetBit(i + 1)) {
+                    annotatedClasses.add(DexScanner.toClassName(dex.getTypeDescriptor(dex.getClassDefClassIdx(i))));
+                }
+            } catch (IOException e) {
+                // not a plain dex, let soot deal with it as before
+                prefiltered = false;
             }
+            annotatedDexFiles.add(dexFile);
         }
-        return null;
+        return prefiltered ? annotatedClasses : null;
     }
 
+    /**
+     * Loads every class of the dex files into the scene.
+     *
+     * @param annotatedClasses the prefiltered classes, or null if every
+     * application class has to be scanned
+     * @return the application classes to scan, each one once
+     */
+    private List<SootClass> initsoot(List<String> processDexFiles, Set<String> annotatedClasses) {
+        setupSoot(processDexFiles);
+        Scene.v().loadNecessaryClasses();
 
-    private EnforceValueHolder extactEnforceValue(AnnotationTag annotationTag) {
-        EnforceValueHolder enforceValueHolder = null;
-        String flavor = null;
-        String buildType = null;
-        for (AnnotationElem annotationElem : annotationTag.getElems()) {
-            if (annotationElem instanceof AnnotationStringElem) {
-                if (ANNOTATION_KEY_FLAVOR.equals(annotationElem.getName())) {
-                    flavor = ((AnnotationStringElem) annotationElem).getValue();
-                } else if (ANNOTATION_KEY_BUILDTYPE.equals(annotationElem.getName())) {
-                    buildType = ((AnnotationStringElem) annotationElem).getValue();
-                }
+        List<SootClass> sootClasses = new ArrayList<SootClass>();
+        for (SootClass sootClass : Scene.v().getApplicationClasses()) {
+            if (annotatedClasses == null || annotatedClasses.contains(sootClass.getName())) {
+                sootClasses.add(sootClass);
             }
         }
+        return sootClasses;
+    }
 
-        if (ENFORCER_ANNOTATIONS.get(EnforceBooleanValue.class).equals(annotationTag.getType())) {
-            // boolean
-            Boolean value = null;
-            for (AnnotationElem annotationElem : annotationTag.getElems()) {
-                if (annotationElem instanceof AnnotationBooleanElem) {
-                    if (ANNOTATION_KEY_VALUE.equals(annotationElem.getName())) {
-                        value = ((AnnotationBooleanElem) annotationElem).getValue();
-                        break;
-                    }
-                }
-            }
-            enforceValueHolder = new EnforceValueHolder<Boolean>(value, flavor, buildType);
-        } else  if (ENFORCER_ANNOTATIONS.get(EnforceDoubleValue.class).equals(annotationTag.getType())) {
-            // double
-            Double value = null;
-            for (AnnotationElem annotationElem : annotationTag.getElems()) {
-                if (annotationElem instanceof AnnotationDoubleElem) {
-                    if (ANNOTATION_KEY_VALUE.equals(annotationElem.getName())) {
-                        value = ((AnnotationDoubleElem) annotationElem).getValue();
-                        break;
-                    }
-                }
-            }
-            enforceValueHolder = new EnforceValueHolder<Double>(value, flavor, buildType);
-        } else  if (ENFORCER_ANNOTATIONS.get(EnforceFloatValue.class).equals(annotationTag.getType())) {
-            // float
-            Float value = null;
-            for (AnnotationElem annotationElem : annotationTag.getElems()) {
-                if (annotationElem instanceof AnnotationFloatElem) {
-                    if (ANNOTATION_KEY_VALUE.equals(annotationElem.getName())) {
-                        value = ((AnnotationFloatElem) annotationElem).getValue();
-                        break;
-                    }
+    /**
+     * Resolves the classes declaring annotated fields to
+     * {@link SootClass#SIGNATURES} only, which gives their fields with the
+     * constant value and annotation tags but builds no method body. Their
+     * supertypes are pulled in at hierarchy level, and soot's resolver only
+     * goes deeper if something asks for more.
+     *
+     * @param annotatedClasses the prefiltered classes, or null to resolve
+     * every class of the dex files
+     * @return the resolved classes, without phantoms
+     */
+    private List<SootClass> resolveSignatures(List<String> processDexFiles, Set<String> annotatedClasses) {
+        setupSoot(processDexFiles);
+        Scene.v().loadBasicClasses();
+        return resolve(classNamesOf(processDexFiles, annotatedClasses));
+    }
+
+    /**
+     * Like {@link #resolveSignatures}, one batch at a time: before a batch
+     * is resolved {@link HeapBudget} may collect garbage and make it
+     * smaller, and after its fields are read the annotations and method
+     * bodies of its classes are dropped. Constant value tags stay, the
+     * &lt;clinit&gt; of other classes may read them.
+     *
+     * @throws IOException if the heap ran out anyway
+     */
+    private List<AnnotatedField> scanBounded(List<String> processDexFiles, Set<String> annotatedClasses)
+            throws IOException {
+        Metrics.Timer timer = metrics.start(Metrics.PHASE_SOOT_RESOLVE_SIGNATURES);
+        setupSoot(processDexFiles);
+        Scene.v().loadBasicClasses();
+        List<String> classNames = new ArrayList<String>(classNamesOf(processDexFiles, annotatedClasses));
+        timer.stop();
+        List<AnnotatedField> annotatedFields = new ArrayList<AnnotatedField>();
+        int batchSize = HeapBudget.MAX_BATCH_SIZE;
+        try {
+            for (int from = 0; from < classNames.size(); from += batchSize) {
+                batchSize = heapBudget.nextBatchSize(batchSize);
+                timer = metrics.start(Metrics.PHASE_SOOT_RESOLVE_SIGNATURES);
+                List<SootClass> batch = resolve(classNames.subList(from,
+                        Math.min(from + batchSize, classNames.size())));
+                timer.stop();
+                timer = metrics.start(Metrics.PHASE_SCAN);
+                annotatedFields.addAll(scan(batch));
+                timer.stop();
+                metrics.count(Metrics.COUNTER_CLASSES_SCANNED, batch.size());
+                for (SootClass sootClass : batch) {
+                    release(sootClass);
                 }
             }
-            enforceValueHolder = new EnforceValueHolder<Float>(value, flavor, buildType);
-        }else  if (ENFORCER_ANNOTATIONS.get(EnforceIntValue.class).equals(annotationTag.getType())) {
-            // int
-            Integer value = null;
-            for (AnnotationElem annotationElem : annotationTag.getElems()) {
-                if (annotationElem instanceof AnnotationIntElem) {
-                    if (ANNOTATION_KEY_VALUE.equals(annotationElem.getName())) {
-                        value = ((AnnotationIntElem) annotationElem).getValue();
-                        break;
-                    }
-                }
+        } catch (OutOfMemoryError e) {
+            // drop the scene, so there is heap left to report with
+            G.reset();
+            throw new IOException("Out of memory with a heap budget of "
+                    + HeapBudget.toMegabytes(heapBudget.getBudgetBytes()) + "m and a max heap of "
+                    + HeapBudget.toMegabytes(Runtime.getRuntime().maxMemory()) + "m");
+        }
+        return annotatedFields;
+    }
+
+    /**
+     * @param annotatedClasses the prefiltered classes, or null for every
+     * class of the dex files
+     */
+    private static Collection<String> classNamesOf(List<String> processDexFiles, Set<String> annotatedClasses) {
+        if (annotatedClasses != null) {
+            return annotatedClasses;
+        }
+        Collection<String> classNames = new LinkedHashSet<String>();
+        for (String dexFile : processDexFiles) {
+            classNames.addAll(SourceLocator.v().getClassesUnder(dexFile));
+        }
+        return classNames;
+    }
+
+    /**
+     * @return the classes resolved to {@link SootClass#SIGNATURES}, without phantoms
+     */
+    private static List<SootClass> resolve(Collection<String> classNames) {
+        List<SootClass> sootClasses = new ArrayList<SootClass>(classNames.size());
+        for (String className : classNames) {
+            SootClass sootClass = Scene.v().forceResolve(className, SootClass.SIGNATURES);
+            if (!sootClass.isPhantom()) {
+                sootClasses.add(sootClass);
             }
-            enforceValueHolder = new EnforceValueHolder<Integer>(value, flavor, buildType);
-        }else  if (ENFORCER_ANNOTATIONS.get(EnforceLongValue.class).equals(annotationTag.getType())) {
-            // long
-            Long value = null;
-            for (AnnotationElem annotationElem : annotationTag.getElems()) {
-                if (annotationElem instanceof AnnotationLongElem) {
-                    if (ANNOTATION_KEY_VALUE.equals(annotationElem.getName())) {
-                        value = ((AnnotationLongElem) annotationElem).getValue();
-                        break;
-                    }
-                }
+        }
+        return sootClasses;
+    }
+
+    /**
+     * Drops what a scanned class holds besides its signatures and constant values.
+     */
+    private static void release(SootClass sootClass) {
+        sootClass.removeAllTags();
+        for (SootField field : sootClass.getFields()) {
+            field.removeTag("VisibilityAnnotationTag");
+        }
+        for (SootMethod method : sootClass.getMethods()) {
+            if (method.hasActiveBody()) {
+                method.releaseActiveBody();
             }
-            enforceValueHolder = new EnforceValueHolder<Long>(value, flavor, buildType);
-        }else  if (ENFORCER_ANNOTATIONS.get(EnforceStringValue.class).equals(annotationTag.getType())) {
-            // string
-            String value = null;
-            for (AnnotationElem annotationElem : annotationTag.getElems()) {
-                if (annotationElem instanceof AnnotationStringElem) {
-                    if (ANNOTATION_KEY_VALUE.equals(annotationElem.getName())) {
-                        value = ((AnnotationStringElem) annotationElem).getValue();
-                        break;
-                    }
+            method.removeAllTags();
+        }
+    }
+
+    private void setupSoot(List<String> processDexFiles) {
+        // start from a clean scene, a batch checks several apks in one JVM
+        G.reset();
+        if (platformIndex != null) {
+            Options.v().set_soot_classpath(platformIndex.getPath());
+        } else if (androidJar != null) {
+            Options.v().set_force_android_jar(androidJar);
+            Options.v().set_prepend_classpath(true);
+        } else {
+            // no platform classes at all, they all end up phantom; soot
+            // only skips its android.jar lookup with a classpath given
+            StringBuilder classpath = new StringBuilder();
+            for (String dexFile : processDexFiles) {
+                if (classpath.length() > 0) {
+                    classpath.append(File.pathSeparatorChar);
                 }
+                classpath.append(dexFile);
             }
-            enforceValueHolder = new EnforceValueHolder<String>(value, flavor, buildType);
+            Options.v().set_soot_classpath(classpath.toString());
         }
-        return enforceValueHolder;
-    }
+        Options.v().set_allow_phantom_refs(true);
+        Options.v().set_output_format(Options.output_format_none);
+        Options.v().set_src_prec(Options.src_prec_apk);
+        Options.v().set_process_dir(processDexFiles);
+        Options.v().set_debug(false);
 
+        G.v().soot_options_Options().set_verbose(false);
+        G.v().out = new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
 
-    private class DexCheckerTransform extends BodyTransformer {
-        @Override
-        protected void internalTransform(Body body, String phaseName, Map<String, String> options) {
-            SootClass sootClass = body.getMethod().getDeclaringClass();
-            if (PROCESSED_CLASS_SET.contains(sootClass.toString())) {
-                return;
             }
+        });
+    }
 
-            PROCESSED_CLASS_SET.add(sootClass.toString());
-            //System.out.println("processing:  " + sootClass.toString());
-            Chain<SootField> fields = sootClass.getFields();
-            for (SootField field : fields) {
-                List<Tag> tags = field.getTags();
-                for (Tag tag : tags) {
-                    if (tag instanceof VisibilityAnnotationTag) {
-                        List<AnnotationTag> annotationTags = ((VisibilityAnnotationTag) tag).getAnnotations();
-                        if (annotationTags != null) {
-                            for (AnnotationTag annotationTag : annotationTags) {
-                                checkValueThrow(field, annotationTag);
-                            }
+    /**
+     * Reads the annotated fields of every class, whether it has method bodies
+     * or not. The classes are split into one contiguous run per worker, and
+     * the fields come back in class order.
+     */
+    private List<AnnotatedField> scan(final List<SootClass> sootClasses) throws IOException {
+        int workers = Math.min(threads, sootClasses.size());
+        List<AnnotatedField> annotatedFields = new ArrayList<AnnotatedField>();
+        if (workers <= 1) {
+            for (SootClass sootClass : sootClasses) {
+                collectAnnotatedFields(sootClass, annotatedFields);
+            }
+            return evaluateClinits(annotatedFields);
+        }
+        ExecutorService executor = WorkerPool.newPool(workers, "soot-scanner");
+        try {
+            List<Future<List<AnnotatedField>>> scans = new ArrayList<Future<List<AnnotatedField>>>(workers);
+            for (int i = 0; i < workers; i++) {
+                final int from = (int) ((long) sootClasses.size() * i / workers);
+                final int to = (int) ((long) sootClasses.size() * (i + 1) / workers);
+                scans.add(executor.submit(new Callable<List<AnnotatedField>>() {
+                    public List<AnnotatedField> call() {
+                        List<AnnotatedField> fields = new ArrayList<AnnotatedField>();
+                        for (SootClass sootClass : sootClasses.subList(from, to)) {
+                            collectAnnotatedFields(sootClass, fields);
                         }
+                        return fields;
                     }
-                }
+                }));
+            }
+            for (Future<List<AnnotatedField>> scan : scans) {
+                annotatedFields.addAll(WorkerPool.await(scan));
             }
+        } finally {
+            executor.shutdownNow();
         }
+        return evaluateClinits(annotatedFields);
     }
 
-    static String getNameForSoot(Class clazz) {
-        return "L" + clazz.getName().replaceAll("\\.", "/") + ";";
-    }
-
-    static class RealValueHolder<T> {
-        final T value;
-        final String type;
-
-        public RealValueHolder(T value) {
-            this.value = value;
-            type = value.getClass().toString();
+    /**
+     * Works out the values of final static fields assigned in &lt;clinit&gt;,
+     * e.g. from BuildConfig or another config field. Building bodies changes
+     * the scene, so this runs on the calling thread once the workers are done.
+     *
+     * @return fields, with the values {@link ClinitEvaluator} knows filled in
+     */
+    private List<AnnotatedField> evaluateClinits(List<AnnotatedField> fields) {
+        List<AnnotatedField> evaluated = new ArrayList<AnnotatedField>(fields.size());
+        for (AnnotatedField field : fields) {
+            if (field.getRealValue() == null) {
+                SootField sootField = Scene.v().getSootClass(field.getClassName()).getFieldByName(field.getFieldName());
+                // a non-final field may be changed by any code that runs before the check matters
+                if (sootField.isFinal()) {
+                    field = new AnnotatedField(field.getClassName(), field.getFieldName(),
+                            clinitEvaluator.evaluate(sootField), field.getEnforceValues());
+                }
+            }
+            evaluated.add(field);
         }
+        return evaluated;
+    }
 
-        public T getValue() {
-            return value;
+    private void collectAnnotatedFields(SootClass sootClass, List<AnnotatedField> annotatedFields) {
+        Chain<SootField> fields = sootClass.getFields();
+        for (SootField field : fields) {
+            List<Tag> tags = field.getTags();
+            for (Tag tag : tags) {
+                if (tag instanceof VisibilityAnnotationTag) {
+                    List<AnnotationTag> annotationTags = ((VisibilityAnnotationTag) tag).getAnnotations();
+                    if (annotationTags != null) {
+                        collectAnnotatedField(field, annotationTags, annotatedFields);
+                    }
+                }
+            }
         }
+    }
 
-        @Override
-        public String toString() {
-            return value.toString();
+    private void collectAnnotatedField(SootField field, List<AnnotationTag> annotationTags,
+                                              List<AnnotatedField> annotatedFields) {
+        List<EnforceValueHolder> enforceValues = new ArrayList<EnforceValueHolder>(1);
+        for (AnnotationTag annotationTag : annotationTags) {
+            EnforceValueHolder enforceValueHolder = extactEnforceValue(annotationTag);
+            if (enforceValueHolder != null) {
+                enforceValues.add(enforceValueHolder);
+            }
         }
-
-        public String getValueType() {
-            return type;
+        if (!enforceValues.isEmpty()) {
+            // null if assigned in <clinit>, left to evaluateClinits
+            annotatedFields.add(new AnnotatedField(field.getDeclaringClass().toString(), field.getName(),
+                    extactRealValue(field), enforceValues));
         }
     }
 
-    static class EnforceValueHolder<T> {
-        final T value;
-        final String flavor;
-        final String buildType;
-        final String type;
-
-        public EnforceValueHolder(T value, String flavor, String buildType) {
-            this.value = value;
-            this.flavor = flavor;
-            this.buildType = buildType;
-            type = value.getClass().toString();
-        }
-
-        public T getValue() {
-            return value;
+    static RealValueHolder extactRealValue(SootField sootField) {
+        List<Tag> tags = sootField.getTags();
+        for (Tag tag : tags) {
+            if (tag instanceof StringConstantValueTag) {
+                return RealValueHolder.ofString(((StringConstantValueTag) tag).getStringValue());
+            } else if (tag instanceof IntegerConstantValueTag) {
+                // maybe boolean or int
+                if (sootField.getType() instanceof BooleanType) {
+                    // boolean
+                    return RealValueHolder.ofBoolean(((IntegerConstantValueTag) tag).getIntValue() != 0);
+                } else {
+                    // int
+                    return RealValueHolder.ofInt(((IntegerConstantValueTag) tag).getIntValue());
+                }
+            } else if (tag instanceof DoubleConstantValueTag) {
+                return RealValueHolder.ofDouble(((DoubleConstantValueTag) tag).getDoubleValue());
+            } else if (tag instanceof FloatConstantValueTag) {
+                return RealValueHolder.ofFloat(((FloatConstantValueTag) tag).getFloatValue());
+            } else if (tag instanceof LongConstantValueTag) {
+                return RealValueHolder.ofLong(((LongConstantValueTag) tag).getLongValue());
+            }
         }
+        return null;
+    }
 
-        public String getFlavor() {
-            return flavor;
-        }
 
-        public String getBuildType() {
-            return buildType;
+    /**
+     * Looks the annotation's type up in {@link ValueType#forAnnotation}, then
+     * decodes its elements in one pass.
+     *
+     * @return null if this is no enforcer annotation, or its value is missing
+     */
+    static EnforceValueHolder extactEnforceValue(AnnotationTag annotationTag) {
+        ValueType type = ValueType.forAnnotation(annotationTag.getType());
+        if (type == null) {
+            return null;
         }
-
-        @Override
-        public String toString() {
-            return "EnforceValueAnnotation{" +
-                    "value=" + value +
-                    ", flavor='" + flavor + '\'' +
-                    ", buildType='" + buildType + '\'' +
-                    '}';
+        AnnotationElem value = null;
+        String flavor = null;
+        String buildType = null;
+        for (AnnotationElem annotationElem : annotationTag.getElems()) {
+            String name = annotationElem.getName();
+            if (ANNOTATION_KEY_VALUE.equals(name)) {
+                value = annotationElem;
+            } else if (annotationElem instanceof AnnotationStringElem) {
+                if (ANNOTATION_KEY_FLAVOR.equals(name)) {
+                    flavor = ((AnnotationStringElem) annotationElem).getValue();
+                } else if (ANNOTATION_KEY_BUILDTYPE.equals(name)) {
+                    buildType = ((AnnotationStringElem) annotationElem).getValue();
+                }
+            }
         }
 
-        public String getValueType() {
-            return type;
+        switch (type) {
+            case BOOLEAN:
+                return value instanceof AnnotationBooleanElem
+                        ? EnforceValueHolder.ofBoolean(((AnnotationBooleanElem) value).getValue(), flavor, buildType)
+                        : null;
+            case INT:
+                return value instanceof AnnotationIntElem
+                        ? EnforceValueHolder.ofInt(((AnnotationIntElem) value).getValue(), flavor, buildType)
+                        : null;
+            case LONG:
+                return value instanceof AnnotationLongElem
+                        ? EnforceValueHolder.ofLong(((AnnotationLongElem) value).getValue(), flavor, buildType)
+                        : null;
+            case FLOAT:
+                return value instanceof AnnotationFloatElem
+                        ? EnforceValueHolder.ofFloat(((AnnotationFloatElem) value).getValue(), flavor, buildType)
+                        : null;
+            case DOUBLE:
+                return value instanceof AnnotationDoubleElem
+                        ? EnforceValueHolder.ofDouble(((AnnotationDoubleElem) value).getValue(), flavor, buildType)
+                        : null;
+            default:
+                return value instanceof AnnotationStringElem
+                        ? EnforceValueHolder.ofString(((AnnotationStringElem) value).getValue(), flavor, buildType)
+                        : null;
         }
     }
 }
-
@@ -0,0 +1,378 @@
+package com.github.promeg.configchecker;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only view of a single dex file, backed by a {@link ByteBuffer}.
+ *
+ * Only the parts of the format the checker needs are exposed: the string,
+ * type and field id tables, class definitions, and the raw readers for
+ * uleb128 values and encoded values. All offsets are absolute file offsets,
+ * as in the dex format itself.
+ */
+final class DexFile {
+    static final int VALUE_BYTE = 0x00;
+    static final int VALUE_SHORT = 0x02;
+    static final int VALUE_CHAR = 0x03;
+    static final int VALUE_INT = 0x04;
+    static final int VALUE_LONG = 0x06;
+    static final int VALUE_FLOAT = 0x10;
+    static final int VALUE_DOUBLE = 0x11;
+    static final int VALUE_STRING = 0x17;
+    static final int VALUE_ARRAY = 0x1c;
+    static final int VALUE_ANNOTATION = 0x1d;
+    static final int VALUE_NULL = 0x1e;
+    static final int VALUE_BOOLEAN = 0x1f;
+
+    private static final int HEADER_SIZE = 0x70;
+    private static final int CLASS_DEF_SIZE = 0x20;
+    private static final int FIELD_ID_SIZE = 8;
+
+    private final String name;
+    private final ByteBuffer buffer;
+
+    private final int stringIdsSize;
+    private final int stringIdsOff;
+    private final int typeIdsSize;
+    private final int typeIdsOff;
+    private final int fieldIdsSize;
+    private final int fieldIdsOff;
+    private final int classDefsSize;
+    private final int classDefsOff;
+
+    DexFile(String name, ByteBuffer buffer) throws IOException {
+        this.name = name;
+        this.buffer = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        this.buffer.position(0);
+
+        if (this.buffer.limit() < HEADER_SIZE
+                || this.buffer.get(0) != 'd' || this.buffer.get(1) != 'e' || this.buffer.get(2) != 'x'
+                || this.buffer.get(3) != '\n') {
+            throw new IOException(name + " is not a dex file");
+        }
+
+        stringIdsSize = this.buffer.getInt(0x38);
+        stringIdsOff = this.buffer.getInt(0x3c);
+        typeIdsSize = this.buffer.getInt(0x40);
+        typeIdsOff = this.buffer.getInt(0x44);
+        fieldIdsSize = this.buffer.getInt(0x50);
+        fieldIdsOff = this.buffer.getInt(0x54);
+        classDefsSize = this.buffer.getInt(0x60);
+        classDefsOff = this.buffer.getInt(0x64);
+    }
+
+    /**
+     * Maps a dex file on disk read-only.
+     */
+    static DexFile open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            return new DexFile(file.getPath(), channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            raf.close();
+        }
+    }
+
+    String getName() {
+        return name;
+    }
+
+    int getClassDefsSize() {
+        return classDefsSize;
+    }
+
+    /**
+     * Decodes the MUTF-8 string_data_item of the given string id.
+     */
+    String getString(int stringIdx) {
+        checkIndex(stringIdx, stringIdsSize, "string");
+        ByteBuffer in = cursor(buffer.getInt(stringIdsOff + stringIdx * 4));
+        int utf16Size = readUleb128(in);
+        char[] chars = new char[utf16Size];
+        for (int i = 0; i < utf16Size; i++) {
+            int a = in.get() & 0xff;
+            if (a < 0x80) {
+                chars[i] = (char) a;
+            } else if ((a & 0xe0) == 0xc0) {
+                int b = in.get() & 0xff;
+                chars[i] = (char) (((a & 0x1f) << 6) | (b & 0x3f));
+            } else {
+                int b = in.get() & 0xff;
+                int c = in.get() & 0xff;
+                chars[i] = (char) (((a & 0x0f) << 12) | ((b & 0x3f) << 6) | (c & 0x3f));
+            }
+        }
+        return new String(chars);
+    }
+
+    int getTypeStringIdx(int typeIdx) {
+        checkIndex(typeIdx, typeIdsSize, "type");
+        return buffer.getInt(typeIdsOff + typeIdx * 4);
+    }
+
+    /**
+     * Returns the type descriptor, e.g. "Ljava/lang/String;" or "Z".
+     */
+    String getTypeDescriptor(int typeIdx) {
+        return getString(getTypeStringIdx(typeIdx));
+    }
+
+    /**
+     * Looks a type up by descriptor. string_ids are sorted by content and
+     * type_ids by string index, so this is two binary searches.
+     *
+     * @return the type_idx, or -1 if this dex never references the type
+     */
+    int findTypeIdx(String descriptor) {
+        int stringIdx = findStringIdx(descriptor);
+        if (stringIdx < 0) {
+            return -1;
+        }
+
+        int low = 0;
+        int high = typeIdsSize - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midStringIdx = getTypeStringIdx(mid);
+            if (midStringIdx < stringIdx) {
+                low = mid + 1;
+            } else if (midStringIdx > stringIdx) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Looks a string up by content, with a binary search of the sorted string_ids.
+     *
+     * @return the string_idx, or -1 if this dex has no such string
+     */
+    int findStringIdx(String value) {
+        int low = 0;
+        int high = stringIdsSize - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = getString(mid).compareTo(value);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    int getFieldClassIdx(int fieldIdx) {
+        checkIndex(fieldIdx, fieldIdsSize, "field");
+        return buffer.getShort(fieldIdsOff + fieldIdx * FIELD_ID_SIZE) & 0xffff;
+    }
+
+    int getFieldTypeIdx(int fieldIdx) {
+        checkIndex(fieldIdx, fieldIdsSize, "field");
+        return buffer.getShort(fieldIdsOff + fieldIdx * FIELD_ID_SIZE + 2) & 0xffff;
+    }
+
+    String getFieldName(int fieldIdx) {
+        checkIndex(fieldIdx, fieldIdsSize, "field");
+        return getString(buffer.getInt(fieldIdsOff + fieldIdx * FIELD_ID_SIZE + 4));
+    }
+
+    int getClassDefClassIdx(int classDefIdx) {
+        return classDefInt(classDefIdx, 0x00);
+    }
+
+    int getClassDefAnnotationsOff(int classDefIdx) {
+        return classDefInt(classDefIdx, 0x14);
+    }
+
+    int getClassDefClassDataOff(int classDefIdx) {
+        return classDefInt(classDefIdx, 0x18);
+    }
+
+    int getClassDefStaticValuesOff(int classDefIdx) {
+        return classDefInt(classDefIdx, 0x1c);
+    }
+
+    private int classDefInt(int classDefIdx, int fieldOffset) {
+        checkIndex(classDefIdx, classDefsSize, "class_def");
+        return buffer.getInt(classDefsOff + classDefIdx * CLASS_DEF_SIZE + fieldOffset);
+    }
+
+    int getInt(int offset) {
+        return buffer.getInt(offset);
+    }
+
+    int getUnsignedShort(int offset) {
+        return buffer.getShort(offset) & 0xffff;
+    }
+
+    /**
+     * Returns an independent little-endian buffer positioned at the given offset,
+     * for sequential reads of uleb128 and encoded values.
+     */
+    ByteBuffer cursor(int offset) {
+        ByteBuffer in = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        in.position(offset);
+        return in;
+    }
+
+    static int readUleb128(ByteBuffer in) {
+        int result = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.get() & 0xff;
+            result |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0 && shift < 35);
+        return result;
+    }
+
+    /**
+     * Reads one encoded_value into {@code value}, without boxing it. Integral
+     * values are sign extended (chars zero extended) into {@link EncodedValue#bits},
+     * booleans stored as 0 or 1, floats and doubles as their canonical bit
+     * patterns, and null as 0; strings are resolved. Values the checker never
+     * needs (types, fields, methods, enums, arrays and annotations) are
+     * skipped.
+     *
+     * @return the VALUE_* type the value was encoded with
+     */
+    int readEncodedValue(ByteBuffer in, EncodedValue value) {
+        int header = in.get() & 0xff;
+        int valueType = header & 0x1f;
+        int valueArg = header >> 5;
+        value.clear();
+        value.type = valueType;
+        switch (valueType) {
+            case VALUE_BYTE:
+                value.bits = in.get();
+                break;
+            case VALUE_SHORT:
+            case VALUE_INT:
+            case VALUE_LONG:
+                value.bits = readSigned(in, valueArg + 1);
+                break;
+            case VALUE_CHAR:
+                value.bits = readUnsigned(in, valueArg + 1);
+                break;
+            case VALUE_FLOAT:
+                value.bits = Float.floatToIntBits(Float.intBitsToFloat(
+                        (int) (readUnsigned(in, valueArg + 1) << ((3 - valueArg) * 8))));
+                break;
+            case VALUE_DOUBLE:
+                value.bits = Double.doubleToLongBits(Double.longBitsToDouble(
+                        readUnsigned(in, valueArg + 1) << ((7 - valueArg) * 8)));
+                break;
+            case VALUE_STRING:
+                value.string = getString((int) readUnsigned(in, valueArg + 1));
+                break;
+            case VALUE_NULL:
+                break;
+            case VALUE_BOOLEAN:
+                value.bits = valueArg != 0 ? 1 : 0;
+                break;
+            default:
+                skipEncodedValueBody(in, valueType, valueArg);
+                break;
+        }
+        return valueType;
+    }
+
+    /**
+     * Skips one encoded_value without decoding it.
+     */
+    void skipEncodedValue(ByteBuffer in) {
+        int header = in.get() & 0xff;
+        skipEncodedValueBody(in, header & 0x1f, header >> 5);
+    }
+
+    private void skipEncodedValueBody(ByteBuffer in, int valueType, int valueArg) {
+        switch (valueType) {
+            case VALUE_ARRAY:
+                int size = readUleb128(in);
+                for (int i = 0; i < size; i++) {
+                    skipEncodedValue(in);
+                }
+                break;
+            case VALUE_ANNOTATION:
+                skipEncodedAnnotation(in);
+                break;
+            case VALUE_NULL:
+            case VALUE_BOOLEAN:
+                break;
+            default:
+                in.position(in.position() + valueArg + 1);
+                break;
+        }
+    }
+
+    /**
+     * Skips an encoded_annotation (type_idx, size, then name/value pairs).
+     */
+    void skipEncodedAnnotation(ByteBuffer in) {
+        readUleb128(in);
+        int size = readUleb128(in);
+        for (int i = 0; i < size; i++) {
+            readUleb128(in);
+            skipEncodedValue(in);
+        }
+    }
+
+    /**
+     * Reusable slots for one decoded encoded_value.
+     */
+    static final class EncodedValue {
+        int type = VALUE_NULL;
+        long bits;
+        String string;
+
+        /**
+         * Resets to null, the value of a static field past the end of static_values.
+         */
+        void clear() {
+            type = VALUE_NULL;
+            bits = 0;
+            string = null;
+        }
+
+        boolean isIntegral() {
+            return type == VALUE_BYTE || type == VALUE_SHORT || type == VALUE_CHAR || type == VALUE_INT
+                    || type == VALUE_LONG || type == VALUE_BOOLEAN;
+        }
+    }
+
+    private static long readSigned(ByteBuffer in, int size) {
+        long result = 0;
+        for (int i = 0; i < size; i++) {
+            result |= ((long) (in.get() & 0xff)) << (i * 8);
+        }
+        int shift = 64 - size * 8;
+        return (result << shift) >> shift;
+    }
+
+    private static long readUnsigned(ByteBuffer in, int size) {
+        long result = 0;
+        for (int i = 0; i < size; i++) {
+            result |= ((long) (in.get() & 0xff)) << (i * 8);
+        }
+        return result;
+    }
+
+    private void checkIndex(int index, int size, String what) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(name + ": " + what + " index " + index + " out of range");
+        }
+    }
+}
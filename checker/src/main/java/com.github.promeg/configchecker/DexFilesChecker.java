@@ -0,0 +1,176 @@
+package com.github.promeg.configchecker;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Checks the dex files of one variant as one input, like the dex files of an
+ * apk, and writes the JSON report of the check. This is the API for running
+ * the checker inside another tool, such as the Gradle plugin; everything
+ * else in this package may change between releases.
+ */
+public final class DexFilesChecker {
+    public static final String ENGINE_SOOT = Main.ENGINE_SOOT;
+    public static final String ENGINE_DEX = Main.ENGINE_DEX;
+
+    /** Soot is a singleton in its class loader, only one check at a time may use it. */
+    private static final Object SOOT_LOCK = new Object();
+
+    private final List<File> dexFiles;
+    private final String flavor;
+    private final String buildType;
+    private final File reportFile;
+    private String engine = ENGINE_SOOT;
+    private boolean lazySoot;
+    private boolean keepGoing;
+    private int threads = WorkerPool.defaultThreads();
+    private File androidJar;
+    private File mappingFile;
+    private PrintStream out = System.out;
+
+    /**
+     * @return the number of threads a check uses unless told otherwise
+     */
+    public static int defaultThreads() {
+        return WorkerPool.defaultThreads();
+    }
+
+    /**
+     * @param reportFile where the JSON report is written, see --report
+     */
+    public DexFilesChecker(List<File> dexFiles, String flavor, String buildType, File reportFile) {
+        this.dexFiles = new ArrayList<File>(dexFiles);
+        this.flavor = flavor;
+        this.buildType = buildType;
+        this.reportFile = reportFile;
+    }
+
+    /**
+     * @param engine {@link #ENGINE_SOOT}, the default, or {@link #ENGINE_DEX}
+     */
+    public void setEngine(String engine) {
+        if (!ENGINE_SOOT.equals(engine) && !ENGINE_DEX.equals(engine)) {
+            throw new IllegalArgumentException("Unknown engine '" + engine + "'");
+        }
+        this.engine = engine;
+    }
+
+    /**
+     * See --lazy-soot.
+     */
+    public void setLazySoot(boolean lazySoot) {
+        this.lazySoot = lazySoot;
+    }
+
+    /**
+     * Report every failure before failing, instead of stopping at the first one.
+     */
+    public void setKeepGoing(boolean keepGoing) {
+        this.keepGoing = keepGoing;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * @param androidJar the platform's android.jar for the soot engine, or null for none
+     */
+    public void setAndroidJar(File androidJar) {
+        this.androidJar = androidJar;
+    }
+
+    /**
+     * @param mappingFile the R8/ProGuard mapping.txt to report original names, or null
+     */
+    public void setMappingFile(File mappingFile) {
+        this.mappingFile = mappingFile;
+    }
+
+    public void setOut(PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * @throws ConfigCheckFailException if a field does not have its enforced value
+     * @throws IOException if the check could not be run, or its report not written
+     */
+    public void run() throws IOException {
+        String input = dexFiles.size() == 1 ? dexFiles.get(0).getPath() : dexFiles.toString();
+        CheckReport report = new CheckReport(input);
+        long startTime = System.currentTimeMillis();
+        CheckReport.Status status = CheckReport.Status.ERROR;
+        String message = null;
+        try {
+            if (dexFiles.isEmpty()) {
+                out.println("No dex file to check");
+            } else {
+                check(report);
+            }
+            status = CheckReport.Status.PASS;
+        } catch (ConfigCheckFailException e) {
+            status = CheckReport.Status.FAIL;
+            message = e.getMessage();
+            throw e;
+        } catch (IOException e) {
+            message = String.valueOf(e);
+            throw e;
+        } catch (RuntimeException e) {
+            message = String.valueOf(e);
+            throw e;
+        } finally {
+            report.finish(status, message, System.currentTimeMillis() - startTime);
+            writeReport(report);
+        }
+    }
+
+    private void check(CheckReport report) throws IOException {
+        List<Variant> variants = Collections.singletonList(new Variant(flavor, buildType));
+        MappingIndex mapping = mappingFile != null ? MappingIndex.forMapping(mappingFile) : null;
+        if (ENGINE_DEX.equals(engine)) {
+            List<DexSource> dexSources = new ArrayList<DexSource>(dexFiles.size());
+            for (File dexFile : dexFiles) {
+                dexSources.add(DexSource.forFile(dexFile));
+            }
+            DirectDexChecker checker = new DirectDexChecker(dexSources, variants, threads, out);
+            checker.setMapping(mapping);
+            checker.setKeepGoing(keepGoing);
+            checker.setReport(report);
+            checker.run();
+        } else {
+            List<String> dexPaths = new ArrayList<String>(dexFiles.size());
+            for (File dexFile : dexFiles) {
+                dexPaths.add(dexFile.getAbsolutePath());
+            }
+            DexChecker checker = new DexChecker(androidJar != null ? androidJar.getPath() : null, dexPaths,
+                    variants, threads, out);
+            if (androidJar != null) {
+                checker.setPlatformIndex(PlatformIndex.forAndroidJar(androidJar, PlatformIndex.defaultDir()));
+            }
+            checker.setMapping(mapping);
+            checker.setKeepGoing(keepGoing);
+            checker.setLazy(lazySoot);
+            checker.setReport(report);
+            synchronized (SOOT_LOCK) {
+                checker.run();
+            }
+        }
+    }
+
+    private void writeReport(CheckReport report) throws IOException {
+        File dir = reportFile.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create " + dir);
+        }
+        ReportWriter writer = new JsonReportWriter(reportFile);
+        try {
+            writer.write(report);
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,556 @@
+package com.github.promeg.configchecker;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds Enforce*Value annotated fields by reading the dex format directly.
+ *
+ * A dex is first prefiltered: the enforcer annotation descriptors are looked
+ * up in its type_ids, and if none is there the dex is skipped outright.
+ * Otherwise only the class_defs whose annotations_directory_item references
+ * one of those types are decoded. The real value comes from the class'
+ * static_values array; of the methods only &lt;clinit&gt; is looked at, for
+ * the fields it assigns, whose values are then unknown.
+ *
+ * {@link #scan(DexFile, AnnotationIndex)} does not read annotations at all:
+ * the classes an {@link AnnotationIndex} lists are found by type_idx and only
+ * their static fields named in the index are looked at.
+ */
+final class DexScanner {
+    private static final String ANNOTATION_KEY_VALUE = "value";
+    private static final String ANNOTATION_KEY_FLAVOR = "flavor";
+    private static final String ANNOTATION_KEY_BUILDTYPE = "buildType";
+
+    private static final String STRING_DESCRIPTOR = "Ljava/lang/String;";
+
+    /** ACC_STATIC | ACC_CONSTRUCTOR, which only &lt;clinit&gt; has. */
+    private static final int CLINIT_FLAGS = 0x10008;
+    private static final int OP_SPUT = 0x67;
+    private static final int OP_SPUT_SHORT = 0x6d;
+    private static final int OP_INVOKE_VIRTUAL = 0x6e;
+    private static final int OP_INVOKE_INTERFACE_RANGE = 0x78;
+    private static final int OP_INVOKE_POLYMORPHIC = 0xfa;
+    private static final int OP_INVOKE_CUSTOM_RANGE = 0xfd;
+    private static final int PACKED_SWITCH_PAYLOAD = 0x0100;
+    private static final int SPARSE_SWITCH_PAYLOAD = 0x0200;
+    private static final int FILL_ARRAY_DATA_PAYLOAD = 0x0300;
+
+    /** The size of every instruction in 16-bit code units, by opcode; unused opcodes count as one. */
+    private static final int[] INSTRUCTION_UNITS = new int[256];
+
+    static {
+        Arrays.fill(INSTRUCTION_UNITS, 1);
+        setUnits(2, 0x02, 0x05, 0x08, 0x13, 0x15, 0x16, 0x19, 0x1a, 0x1c, 0x1f, 0x20, 0x22, 0x23, 0x29,
+                0xfe, 0xff);
+        setUnits(3, 0x03, 0x06, 0x09, 0x14, 0x17, 0x1b, 0x24, 0x25, 0x26, 0x2a, 0x2b, 0x2c, 0xfc, 0xfd);
+        setUnits(5, 0x18);
+        setUnits(4, 0xfa, 0xfb);
+        // cmp*, if-*, aget/aput, iget/iput, sget/sput, binop, binop/lit16 and binop/lit8
+        setUnitRange(2, 0x2d, 0x3d);
+        setUnitRange(2, 0x44, 0x6d);
+        setUnitRange(2, 0x90, 0xaf);
+        setUnitRange(2, 0xd0, 0xe2);
+        // invoke-* and invoke-*/range
+        setUnitRange(3, 0x6e, 0x72);
+        setUnitRange(3, 0x74, 0x78);
+    }
+
+    private static void setUnits(int units, int... opcodes) {
+        for (int opcode : opcodes) {
+            INSTRUCTION_UNITS[opcode] = units;
+        }
+    }
+
+    private static void setUnitRange(int units, int first, int last) {
+        Arrays.fill(INSTRUCTION_UNITS, first, last + 1, units);
+    }
+
+    /** The encoded_value type of each {@link ValueType}'s "value" element, by ordinal. */
+    private static final int[] ENCODED_VALUE_TYPES = new int[ValueType.values().length];
+
+    static {
+        ENCODED_VALUE_TYPES[ValueType.BOOLEAN.ordinal()] = DexFile.VALUE_BOOLEAN;
+        ENCODED_VALUE_TYPES[ValueType.INT.ordinal()] = DexFile.VALUE_INT;
+        ENCODED_VALUE_TYPES[ValueType.LONG.ordinal()] = DexFile.VALUE_LONG;
+        ENCODED_VALUE_TYPES[ValueType.FLOAT.ordinal()] = DexFile.VALUE_FLOAT;
+        ENCODED_VALUE_TYPES[ValueType.DOUBLE.ordinal()] = DexFile.VALUE_DOUBLE;
+        ENCODED_VALUE_TYPES[ValueType.STRING.ordinal()] = DexFile.VALUE_STRING;
+    }
+
+    /**
+     * @return the class_def indices of classes with at least one enforcer
+     * annotated field; empty if the dex references no enforcer annotation
+     * @throws IOException if the dex is truncated or otherwise malformed
+     */
+    BitSet findAnnotatedClasses(DexFile dex) throws IOException {
+        try {
+            return findAnnotatedClasses(dex, new EnforcerTypes(dex));
+        } catch (IndexOutOfBoundsException e) {
+            throw malformed(dex, e);
+        } catch (BufferUnderflowException e) {
+            throw malformed(dex, e);
+        }
+    }
+
+    /**
+     * @return every annotated field of the dex, in class_def order
+     * @throws IOException if the dex is truncated or otherwise malformed
+     */
+    List<AnnotatedField> scan(DexFile dex) throws IOException {
+        return scan(dex, (BitSet) null);
+    }
+
+    /**
+     * @param annotatedClasses the result of {@link #findAnnotatedClasses(DexFile)}
+     *                         for the dex, or null to find them
+     */
+    List<AnnotatedField> scan(DexFile dex, BitSet annotatedClasses) throws IOException {
+        try {
+            EnforcerTypes enforcerTypes = new EnforcerTypes(dex);
+            DexFile.EncodedValue value = new DexFile.EncodedValue();
+            List<AnnotatedField> result = new ArrayList<AnnotatedField>();
+            if (annotatedClasses == null) {
+                annotatedClasses = findAnnotatedClasses(dex, enforcerTypes);
+            }
+            for (int classDefIdx = annotatedClasses.nextSetBit(0); classDefIdx >= 0;
+                 classDefIdx = annotatedClasses.nextSetBit(classDefIdx + 1)) {
+                scanClass(dex, enforcerTypes, value, classDefIdx, result);
+            }
+            return result;
+        } catch (IndexOutOfBoundsException e) {
+            throw malformed(dex, e);
+        } catch (BufferUnderflowException e) {
+            throw malformed(dex, e);
+        }
+    }
+
+    /**
+     * @return the fields of the dex listed in index, with the values the index
+     * enforces on them, in class_def order
+     */
+    List<AnnotatedField> scan(DexFile dex, AnnotationIndex index) throws IOException {
+        try {
+            int[] typeIndices = new int[index.getClassDescriptors().size()];
+            String[] descriptors = new String[typeIndices.length];
+            int count = 0;
+            for (String descriptor : index.getClassDescriptors()) {
+                int typeIdx = dex.findTypeIdx(descriptor);
+                if (typeIdx >= 0) {
+                    typeIndices[count++] = typeIdx;
+                }
+            }
+            List<AnnotatedField> result = new ArrayList<AnnotatedField>();
+            if (count == 0) {
+                return result;
+            }
+            // type_ids are sorted by descriptor, so the type_idx order is the descriptor order
+            Arrays.sort(typeIndices, 0, count);
+            for (int i = 0; i < count; i++) {
+                descriptors[i] = dex.getTypeDescriptor(typeIndices[i]);
+            }
+            DexFile.EncodedValue value = new DexFile.EncodedValue();
+            for (int classDefIdx = 0; classDefIdx < dex.getClassDefsSize(); classDefIdx++) {
+                int i = Arrays.binarySearch(typeIndices, 0, count, dex.getClassDefClassIdx(classDefIdx));
+                if (i >= 0) {
+                    scanIndexedClass(dex, value, classDefIdx, descriptors[i], index.getFields(descriptors[i]),
+                            result);
+                }
+            }
+            return result;
+        } catch (IndexOutOfBoundsException e) {
+            throw malformed(dex, e);
+        } catch (BufferUnderflowException e) {
+            throw malformed(dex, e);
+        }
+    }
+
+    private void scanIndexedClass(DexFile dex, DexFile.EncodedValue value, int classDefIdx, String descriptor,
+                                  Map<String, List<EnforceValueHolder>> indexedFields,
+                                  List<AnnotatedField> result) {
+        ClassStatics statics = readClassStatics(dex, classDefIdx);
+        String className = null;
+        for (int fieldIdx : statics.fieldIndices) {
+            String fieldName = dex.getFieldName(fieldIdx);
+            List<EnforceValueHolder> enforceValues = indexedFields.get(fieldName);
+            if (enforceValues == null) {
+                continue;
+            }
+            if (className == null) {
+                className = toClassName(descriptor);
+            }
+            RealValueHolder realValue = readRealValue(dex, value, fieldIdx, statics);
+            result.add(new AnnotatedField(className, fieldName, realValue, enforceValues));
+        }
+    }
+
+    private static IOException malformed(DexFile dex, RuntimeException e) {
+        return new IOException("Malformed dex file " + dex.getName() + ": "
+                + (e.getMessage() != null ? e.getMessage() : "unexpected end of data"));
+    }
+
+    private BitSet findAnnotatedClasses(DexFile dex, EnforcerTypes enforcerTypes) {
+        BitSet annotatedClasses = new BitSet();
+        if (enforcerTypes.isEmpty()) {
+            return annotatedClasses;
+        }
+        for (int classDefIdx = 0; classDefIdx < dex.getClassDefsSize(); classDefIdx++) {
+            int annotationsOff = dex.getClassDefAnnotationsOff(classDefIdx);
+            if (annotationsOff != 0 && hasEnforcedField(dex, enforcerTypes, annotationsOff)) {
+                annotatedClasses.set(classDefIdx);
+            }
+        }
+        return annotatedClasses;
+    }
+
+    /**
+     * Peeks at the type_idx of every field annotation, without decoding any element.
+     */
+    private boolean hasEnforcedField(DexFile dex, EnforcerTypes enforcerTypes, int annotationsOff) {
+        int fieldsSize = dex.getInt(annotationsOff + 4);
+        for (int i = 0; i < fieldsSize; i++) {
+            int annotationSetOff = dex.getInt(annotationsOff + 16 + i * 8 + 4);
+            int size = dex.getInt(annotationSetOff);
+            for (int j = 0; j < size; j++) {
+                // annotation_item: visibility byte, then the encoded_annotation's type_idx
+                ByteBuffer in = dex.cursor(dex.getInt(annotationSetOff + 4 + j * 4) + 1);
+                if (enforcerTypes.valueTypeOf(DexFile.readUleb128(in)) != null) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param value scratch slots for decoding, reused across the whole dex
+     */
+    private void scanClass(DexFile dex, EnforcerTypes enforcerTypes, DexFile.EncodedValue value, int classDefIdx,
+                           List<AnnotatedField> result) {
+        int annotationsOff = dex.getClassDefAnnotationsOff(classDefIdx);
+        // annotations_directory_item: class_annotations_off, fields_size,
+        // annotated_methods_size, annotated_parameters_size, field_annotations[]
+        int fieldsSize = dex.getInt(annotationsOff + 4);
+        ClassStatics statics = null;
+        for (int i = 0; i < fieldsSize; i++) {
+            int fieldIdx = dex.getInt(annotationsOff + 16 + i * 8);
+            int annotationSetOff = dex.getInt(annotationsOff + 16 + i * 8 + 4);
+            List<EnforceValueHolder> enforceValues = readEnforceValues(dex, enforcerTypes, value, annotationSetOff);
+            if (enforceValues.isEmpty()) {
+                continue;
+            }
+            if (statics == null) {
+                statics = readClassStatics(dex, classDefIdx);
+            }
+            RealValueHolder realValue = readRealValue(dex, value, fieldIdx, statics);
+            result.add(new AnnotatedField(toClassName(dex.getTypeDescriptor(dex.getFieldClassIdx(fieldIdx))),
+                    dex.getFieldName(fieldIdx), realValue, enforceValues));
+        }
+    }
+
+    private List<EnforceValueHolder> readEnforceValues(DexFile dex, EnforcerTypes enforcerTypes,
+                                                       DexFile.EncodedValue value, int annotationSetOff) {
+        List<EnforceValueHolder> enforceValues = Collections.emptyList();
+        int size = dex.getInt(annotationSetOff);
+        for (int i = 0; i < size; i++) {
+            ByteBuffer in = dex.cursor(dex.getInt(annotationSetOff + 4 + i * 4));
+            in.get(); // visibility
+            ValueType valueType = enforcerTypes.valueTypeOf(DexFile.readUleb128(in));
+            if (valueType == null) {
+                continue;
+            }
+            EnforceValueHolder enforceValue = readEnforceValue(dex, enforcerTypes, in, valueType, value);
+            if (enforceValue != null) {
+                if (enforceValues.isEmpty()) {
+                    enforceValues = new ArrayList<EnforceValueHolder>(1);
+                }
+                enforceValues.add(enforceValue);
+            }
+        }
+        return enforceValues;
+    }
+
+    /**
+     * Reads the elements of an encoded_annotation, positioned after its type_idx.
+     * Element names are matched by string_idx, so only the flavor, build type
+     * and string values are ever decoded to strings.
+     *
+     * @return null if the "value" element is missing or of another type
+     */
+    private EnforceValueHolder readEnforceValue(DexFile dex, EnforcerTypes enforcerTypes, ByteBuffer in,
+                                                ValueType valueType, DexFile.EncodedValue value) {
+        boolean found = false;
+        long bits = 0;
+        String string = null;
+        String flavor = null;
+        String buildType = null;
+        int size = DexFile.readUleb128(in);
+        for (int i = 0; i < size; i++) {
+            int nameIdx = DexFile.readUleb128(in);
+            int encodedType = dex.readEncodedValue(in, value);
+            if (nameIdx == enforcerTypes.valueNameIdx) {
+                found = encodedType == ENCODED_VALUE_TYPES[valueType.ordinal()];
+                bits = value.bits;
+                string = value.string;
+            } else if (nameIdx == enforcerTypes.flavorNameIdx && encodedType == DexFile.VALUE_STRING) {
+                flavor = value.string;
+            } else if (nameIdx == enforcerTypes.buildTypeNameIdx && encodedType == DexFile.VALUE_STRING) {
+                buildType = value.string;
+            }
+        }
+        if (!found) {
+            return null;
+        }
+        return new EnforceValueHolder(valueType, bits, string, flavor, buildType);
+    }
+
+    /**
+     * Reads everything {@link #readRealValue} needs of a class in one pass
+     * over its class_data_item, static_values and &lt;clinit&gt;, so that
+     * the cost stays linear in the size of the class however many of its
+     * fields are annotated.
+     */
+    private ClassStatics readClassStatics(DexFile dex, int classDefIdx) {
+        int classDataOff = dex.getClassDefClassDataOff(classDefIdx);
+        if (classDataOff == 0) {
+            return new ClassStatics(new int[0], new int[0]);
+        }
+        ByteBuffer in = dex.cursor(classDataOff);
+        int staticFieldsSize = DexFile.readUleb128(in);
+        int instanceFieldsSize = DexFile.readUleb128(in);
+        int directMethodsSize = DexFile.readUleb128(in);
+        DexFile.readUleb128(in); // virtual_methods_size
+        int[] fieldIndices = new int[staticFieldsSize];
+        int fieldIdx = 0;
+        for (int i = 0; i < staticFieldsSize; i++) {
+            fieldIdx += DexFile.readUleb128(in);
+            DexFile.readUleb128(in); // access_flags
+            fieldIndices[i] = fieldIdx;
+        }
+        for (int i = 0; i < 2 * instanceFieldsSize; i++) {
+            DexFile.readUleb128(in); // field_idx_diff and access_flags
+        }
+        ClassStatics statics = new ClassStatics(fieldIndices,
+                readStaticValueOffsets(dex, dex.getClassDefStaticValuesOff(classDefIdx), staticFieldsSize));
+        for (int i = 0; i < directMethodsSize; i++) {
+            DexFile.readUleb128(in); // method_idx_diff
+            int accessFlags = DexFile.readUleb128(in);
+            int codeOff = DexFile.readUleb128(in);
+            if ((accessFlags & CLINIT_FLAGS) == CLINIT_FLAGS) {
+                if (codeOff != 0) {
+                    walkClinit(dex, codeOff, statics);
+                }
+                break;
+            }
+        }
+        return statics;
+    }
+
+    /**
+     * @return the offset of every encoded_value in the static_values array,
+     * at most one per static field
+     */
+    private int[] readStaticValueOffsets(DexFile dex, int staticValuesOff, int staticFieldsSize) {
+        if (staticValuesOff == 0) {
+            return new int[0];
+        }
+        ByteBuffer in = dex.cursor(staticValuesOff);
+        int[] offsets = new int[Math.min(DexFile.readUleb128(in), staticFieldsSize)];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = in.position();
+            if (i + 1 < offsets.length) {
+                dex.skipEncodedValue(in);
+            }
+        }
+        return offsets;
+    }
+
+    /**
+     * Reads the initial value of a static field from the class' static_values
+     * array. Static fields past the end of the array hold the default value of
+     * their type, as the format lets the compiler drop trailing defaults, but
+     * only if &lt;clinit&gt; leaves them alone: a field it puts a value into,
+     * or one it may set through a call, has no known value.
+     */
+    private RealValueHolder readRealValue(DexFile dex, DexFile.EncodedValue value, int fieldIdx,
+                                          ClassStatics statics) {
+        // class_data_item lists the static fields by ascending field_idx
+        int position = Arrays.binarySearch(statics.fieldIndices, fieldIdx);
+        if (position < 0) {
+            // instance field, no constant value
+            return null;
+        }
+        if (statics.clinitWrites.get(position)) {
+            return null;
+        }
+        value.clear();
+        if (position < statics.valueOffsets.length) {
+            dex.readEncodedValue(dex.cursor(statics.valueOffsets[position]), value);
+        } else if (statics.clinitInvokes) {
+            return null;
+        }
+        return toRealValue(dex.getTypeDescriptor(dex.getFieldTypeIdx(fieldIdx)), value);
+    }
+
+    /**
+     * Walks the code of the class' &lt;clinit&gt; for the static fields of
+     * the class it puts values into and whether it calls anything.
+     */
+    private void walkClinit(DexFile dex, int codeOff, ClassStatics statics) {
+        // code_item: registers, ins, outs and tries sizes, debug_info_off, insns_size, insns
+        int insnsSize = dex.getInt(codeOff + 12);
+        int insnsOff = codeOff + 16;
+        int pc = 0;
+        while (pc < insnsSize) {
+            int unit = dex.getUnsignedShort(insnsOff + 2 * pc);
+            int opcode = unit & 0xff;
+            if (opcode >= OP_SPUT && opcode <= OP_SPUT_SHORT) {
+                int position = Arrays.binarySearch(statics.fieldIndices, dex.getUnsignedShort(insnsOff + 2 * pc + 2));
+                if (position >= 0) {
+                    statics.clinitWrites.set(position);
+                }
+            } else if ((opcode >= OP_INVOKE_VIRTUAL && opcode <= OP_INVOKE_INTERFACE_RANGE)
+                    || opcode >= OP_INVOKE_POLYMORPHIC && opcode <= OP_INVOKE_CUSTOM_RANGE) {
+                statics.clinitInvokes = true;
+            }
+            pc += instructionUnits(dex, insnsOff + 2 * pc, unit);
+        }
+    }
+
+    /**
+     * @return the size of the instruction at offset in 16-bit code units,
+     * the switch and array data payloads included
+     */
+    private static int instructionUnits(DexFile dex, int offset, int unit) {
+        switch (unit) {
+            case PACKED_SWITCH_PAYLOAD:
+                return 4 + 2 * dex.getUnsignedShort(offset + 2);
+            case SPARSE_SWITCH_PAYLOAD:
+                return 2 + 4 * dex.getUnsignedShort(offset + 2);
+            case FILL_ARRAY_DATA_PAYLOAD:
+                long bytes = (long) dex.getUnsignedShort(offset + 2) * dex.getInt(offset + 4);
+                return (int) (4 + (bytes + 1) / 2);
+            default:
+                return INSTRUCTION_UNITS[unit & 0xff];
+        }
+    }
+
+    /**
+     * Types a static value the way the Soot engine does: booleans as
+     * {@link ValueType#BOOLEAN}, every other int-sized primitive as
+     * {@link ValueType#INT}.
+     */
+    private static RealValueHolder toRealValue(String typeDescriptor, DexFile.EncodedValue value) {
+        if (typeDescriptor.length() == 1) {
+            long integral = value.isIntegral() ? value.bits : 0;
+            switch (typeDescriptor.charAt(0)) {
+                case 'Z':
+                    return RealValueHolder.ofBoolean(integral != 0);
+                case 'B':
+                case 'S':
+                case 'C':
+                case 'I':
+                    return RealValueHolder.ofInt((int) integral);
+                case 'J':
+                    return RealValueHolder.ofLong(integral);
+                case 'F':
+                    return value.type == DexFile.VALUE_FLOAT ? new RealValueHolder(ValueType.FLOAT, value.bits, null)
+                            : RealValueHolder.ofFloat(0f);
+                case 'D':
+                    return value.type == DexFile.VALUE_DOUBLE ? new RealValueHolder(ValueType.DOUBLE, value.bits, null)
+                            : RealValueHolder.ofDouble(0d);
+                default:
+                    return null;
+            }
+        }
+        if (STRING_DESCRIPTOR.equals(typeDescriptor) && value.type == DexFile.VALUE_STRING) {
+            return RealValueHolder.ofString(value.string);
+        }
+        return null;
+    }
+
+    /**
+     * "Lcom/example/Config;" to "com.example.Config".
+     */
+    static String toClassName(String descriptor) {
+        return descriptor.substring(1, descriptor.length() - 1).replace('/', '.');
+    }
+
+    /**
+     * The static fields of one class, with where their static values start
+     * and which of them its &lt;clinit&gt; puts values into.
+     */
+    private static final class ClassStatics {
+        /** the field_idx of every static field, ascending */
+        final int[] fieldIndices;
+        /** where the static value of each field starts, for the fields static_values covers */
+        final int[] valueOffsets;
+        /** the positions of the fields &lt;clinit&gt; puts a value into */
+        final BitSet clinitWrites = new BitSet();
+        boolean clinitInvokes;
+
+        ClassStatics(int[] fieldIndices, int[] valueOffsets) {
+            this.fieldIndices = fieldIndices;
+            this.valueOffsets = valueOffsets;
+        }
+    }
+
+    /**
+     * The type_idx of every enforcer annotation one dex references, with the
+     * type of its "value" element, and the string_idx of the element names.
+     */
+    private static final class EnforcerTypes {
+        private final int[] typeIndices;
+        private final ValueType[] valueTypes;
+        final int valueNameIdx;
+        final int flavorNameIdx;
+        final int buildTypeNameIdx;
+
+        EnforcerTypes(DexFile dex) {
+            ValueType[] all = ValueType.values();
+            int[] indices = new int[all.length];
+            ValueType[] types = new ValueType[all.length];
+            int count = 0;
+            for (ValueType type : all) {
+                int typeIdx = dex.findTypeIdx(type.getAnnotationDescriptor());
+                if (typeIdx >= 0) {
+                    indices[count] = typeIdx;
+                    types[count] = type;
+                    count++;
+                }
+            }
+            typeIndices = new int[count];
+            valueTypes = new ValueType[count];
+            System.arraycopy(indices, 0, typeIndices, 0, count);
+            System.arraycopy(types, 0, valueTypes, 0, count);
+
+            boolean empty = count == 0;
+            valueNameIdx = empty ? -1 : dex.findStringIdx(ANNOTATION_KEY_VALUE);
+            flavorNameIdx = empty ? -1 : dex.findStringIdx(ANNOTATION_KEY_FLAVOR);
+            buildTypeNameIdx = empty ? -1 : dex.findStringIdx(ANNOTATION_KEY_BUILDTYPE);
+        }
+
+        boolean isEmpty() {
+            return typeIndices.length == 0;
+        }
+
+        /**
+         * @return the value type if typeIdx is an enforcer annotation, otherwise null
+         */
+        ValueType valueTypeOf(int typeIdx) {
+            for (int i = 0; i < typeIndices.length; i++) {
+                if (typeIndices[i] == typeIdx) {
+                    return valueTypes[i];
+                }
+            }
+            return null;
+        }
+    }
+}
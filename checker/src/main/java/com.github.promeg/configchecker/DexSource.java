@@ -0,0 +1,72 @@
+package com.github.promeg.configchecker;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Where the bytes of one dex file come from: a dex on disk or an entry of an
+ * apk. Sources are cheap to create; the data is only mapped or inflated by
+ * {@link #load()}, so that happens on whichever worker scans it.
+ */
+abstract class DexSource {
+    private final String name;
+
+    DexSource(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return a path for dex files, "path/to/App.apk!classes2.dex" for apk entries
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * @return the whole dex, positioned at 0
+     */
+    abstract ByteBuffer load() throws IOException;
+
+    /**
+     * @return at least the first size bytes of the dex (or all of it, if shorter), positioned at 0
+     */
+    ByteBuffer loadHeader(int size) throws IOException {
+        return load();
+    }
+
+    /**
+     * Hands back a buffer returned by {@link #load()} once nothing reads it any more.
+     */
+    void release(ByteBuffer buffer) {
+    }
+
+    DexFile open(ByteBuffer buffer) throws IOException {
+        return new DexFile(name, buffer);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    /**
+     * A dex file on disk, mapped read-only.
+     */
+    static DexSource forFile(final File file) {
+        return new DexSource(file.getAbsolutePath()) {
+            @Override
+            ByteBuffer load() throws IOException {
+                RandomAccessFile raf = new RandomAccessFile(file, "r");
+                try {
+                    FileChannel channel = raf.getChannel();
+                    return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                } finally {
+                    raf.close();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,57 @@
+package com.github.promeg.configchecker;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reusable direct buffers for inflated dex files, so checking a multidex apk
+ * (or many apks in a row) does not allocate a fresh buffer per dex.
+ */
+final class DirectBufferPool {
+    /** Upper bound of the bytes kept around in released buffers. */
+    private static final long MAX_POOLED_BYTES = 256L * 1024 * 1024;
+
+    private static final DirectBufferPool SHARED = new DirectBufferPool(MAX_POOLED_BYTES);
+
+    private final long maxPooledBytes;
+    private final List<ByteBuffer> free = new ArrayList<ByteBuffer>();
+    private long pooledBytes;
+
+    DirectBufferPool(long maxPooledBytes) {
+        this.maxPooledBytes = maxPooledBytes;
+    }
+
+    static DirectBufferPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * @return a cleared buffer with at least the given capacity, its limit set to size
+     */
+    synchronized ByteBuffer acquire(int size) {
+        ByteBuffer best = null;
+        for (ByteBuffer buffer : free) {
+            if (buffer.capacity() >= size && (best == null || buffer.capacity() < best.capacity())) {
+                best = buffer;
+            }
+        }
+        if (best == null) {
+            best = ByteBuffer.allocateDirect(size);
+        } else {
+            free.remove(best);
+            pooledBytes -= best.capacity();
+        }
+        best.clear();
+        best.limit(size);
+        return best;
+    }
+
+    synchronized void release(ByteBuffer buffer) {
+        if (!buffer.isDirect() || pooledBytes + buffer.capacity() > maxPooledBytes) {
+            return;
+        }
+        free.add(buffer);
+        pooledBytes += buffer.capacity();
+    }
+}
@@ -0,0 +1,298 @@
+package com.github.promeg.configchecker;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Check engine that reads annotations and static values straight out of the
+ * dex files with {@link DexScanner}, instead of letting Soot build Jimple
+ * bodies for every method. Needs no android.jar.
+ *
+ * Dex files are loaded one after the other by a reader thread, in input
+ * order, and each is handed to a scan worker as soon as it is mapped or
+ * inflated, so inflating the next dex overlaps scanning the previous ones.
+ * Only a few loaded buffers wait for a worker at any time. Results are
+ * checked in input order, so the output does not depend on which worker
+ * finishes first. With a {@link ResultCache}, a dex whose signature is already
+ * cached is not loaded at all.
+ *
+ * With an {@link AnnotationIndex} from the apk, the listed fields whose
+ * annotations were stripped are checked too, with the expected values of the
+ * index, and listed fields found in no dex fail the check. The cache is not
+ * used then, it only holds annotation scans.
+ *
+ * With a {@link MappingIndex}, fields are checked and reported under their
+ * original names; the cache keeps the names the dex files have, and the
+ * fields of an index are looked up under their obfuscated names.
+ */
+public class DirectDexChecker {
+    private final List<DexSource> dexFiles;
+    private final int threads;
+    private final PrintStream out;
+    private final VariantChecker variantChecker;
+    private ResultCache cache;
+    private AnnotationIndex index;
+    private MappingIndex mapping;
+    private CheckReport report;
+    private Metrics metrics = new Metrics();
+
+    public DirectDexChecker(List<DexSource> dexFiles, String targetFlavor, String targetBuildType) {
+        this(dexFiles, targetFlavor, targetBuildType, WorkerPool.defaultThreads());
+    }
+
+    public DirectDexChecker(List<DexSource> dexFiles, String targetFlavor, String targetBuildType, int threads) {
+        this(dexFiles, Collections.singletonList(new Variant(targetFlavor, targetBuildType)), threads, System.out);
+    }
+
+    /**
+     * @param variants the variants to check, or null for every variant some annotation declares
+     */
+    DirectDexChecker(List<DexSource> dexFiles, List<Variant> variants, int threads, PrintStream out) {
+        this.dexFiles = dexFiles;
+        this.threads = threads;
+        this.out = out;
+        this.variantChecker = new VariantChecker(variants, out);
+    }
+
+    void setCache(ResultCache cache) {
+        this.cache = cache;
+    }
+
+    void setIndex(AnnotationIndex index) {
+        this.index = index;
+    }
+
+    void setMapping(MappingIndex mapping) {
+        this.mapping = mapping;
+    }
+
+    /**
+     * Report every failure before failing, instead of stopping at the first one.
+     */
+    void setKeepGoing(boolean keepGoing) {
+        variantChecker.setKeepGoing(keepGoing);
+    }
+
+    void setReport(CheckReport report) {
+        this.report = report;
+        this.metrics = report.getMetrics();
+        variantChecker.setReport(report);
+    }
+
+    public void run() throws IOException {
+        out.println("prepare.... " + variantChecker.describe());
+        long startTime = System.currentTimeMillis();
+        final DexScanner scanner = new DexScanner();
+        final AtomicInteger cacheHits = new AtomicInteger();
+        final AtomicBoolean cacheWarned = new AtomicBoolean();
+        // the index has the original names, the fields of an obfuscated apk are looked up by the new ones
+        final AnnotationIndex scanIndex = index != null && mapping != null ? mapping.obfuscate(index) : index;
+        out.println("Start  checking       ================ " + dexFiles);
+        List<AnnotatedField> fields = new ArrayList<AnnotatedField>();
+        int scanThreads = Math.min(threads, dexFiles.size());
+        // at most this many dex files are inflated but not yet scanned
+        final Semaphore loadedBuffers = new Semaphore(scanThreads + 1);
+        ExecutorService reader = WorkerPool.newPool(1, "dex-reader");
+        ExecutorService executor = WorkerPool.newPool(scanThreads, "dex-scanner");
+        try {
+            List<Future<Scan>> scans = new ArrayList<Future<Scan>>(dexFiles.size());
+            for (final DexSource dexFile : dexFiles) {
+                final Future<Load> load = reader.submit(new Callable<Load>() {
+                    public Load call() throws IOException {
+                        long loadStart = System.currentTimeMillis();
+                        Metrics.Timer timer = metrics.start(Metrics.PHASE_LOAD);
+                        String key = null;
+                        if (cache != null && index == null) {
+                            key = ResultCache.keyOf(dexFile.loadHeader(ResultCache.HEADER_SIZE));
+                            List<AnnotatedField> cached = cache.get(key);
+                            if (cached != null) {
+                                cacheHits.incrementAndGet();
+                                timer.stop();
+                                return new Load(key, null, cached, System.currentTimeMillis() - loadStart);
+                            }
+                        }
+                        try {
+                            loadedBuffers.acquire();
+                        } catch (InterruptedException e) {
+                            throw (IOException) new InterruptedIOException("Interrupted loading "
+                                    + dexFile.getName()).initCause(e);
+                        }
+                        ByteBuffer buffer;
+                        try {
+                            buffer = dexFile.load();
+                        } catch (IOException e) {
+                            loadedBuffers.release();
+                            throw e;
+                        }
+                        timer.stop();
+                        return new Load(key, buffer, null, System.currentTimeMillis() - loadStart);
+                    }
+                });
+                scans.add(executor.submit(new Callable<Scan>() {
+                    public Scan call() throws IOException {
+                        Load loaded = WorkerPool.await(load);
+                        if (loaded.cachedFields != null) {
+                            return new Scan(loaded.cachedFields, loaded.millis, true, 0, 0, 0);
+                        }
+                        long scanStart = System.currentTimeMillis();
+                        Metrics.Timer timer = metrics.start(Metrics.PHASE_SCAN);
+                        List<AnnotatedField> fields;
+                        int classesLoaded;
+                        int classesScanned;
+                        long bytesRead = loaded.buffer.remaining();
+                        try {
+                            DexFile dex = dexFile.open(loaded.buffer);
+                            BitSet annotatedClasses = scanner.findAnnotatedClasses(dex);
+                            fields = scanner.scan(dex, annotatedClasses);
+                            classesScanned = annotatedClasses.cardinality();
+                            if (index != null) {
+                                fields = addUnannotated(fields, scanner.scan(dex, scanIndex));
+                                classesScanned = countClasses(fields);
+                            }
+                            classesLoaded = dex.getClassDefsSize();
+                        } finally {
+                            dexFile.release(loaded.buffer);
+                            loadedBuffers.release();
+                        }
+                        if (loaded.key != null) {
+                            try {
+                                cache.put(loaded.key, fields);
+                            } catch (IOException e) {
+                                // the cache only saves time, a full disk must not fail the check
+                                if (cacheWarned.compareAndSet(false, true)) {
+                                    out.println("Unable to write the result cache, continuing without it: " + e);
+                                }
+                            }
+                        }
+                        timer.stop();
+                        return new Scan(fields, loaded.millis + System.currentTimeMillis() - scanStart, false,
+                                classesLoaded, classesScanned, bytesRead);
+                    }
+                }));
+            }
+            for (int i = 0; i < scans.size(); i++) {
+                Scan scan = WorkerPool.await(scans.get(i));
+                fields.addAll(scan.fields);
+                if (report != null) {
+                    report.addDex(dexFiles.get(i).getName(), scan.millis, scan.fields.size(), scan.cached);
+                }
+                metrics.addDex(dexFiles.get(i).getName(), scan.classesLoaded, scan.classesScanned,
+                        scan.fields.size(), scan.bytesRead);
+                metrics.count(Metrics.COUNTER_CLASSES_LOADED, scan.classesLoaded);
+                metrics.count(Metrics.COUNTER_CLASSES_SCANNED, scan.classesScanned);
+                metrics.count(Metrics.COUNTER_ANNOTATED_FIELDS, scan.fields.size());
+                metrics.count(Metrics.COUNTER_BYTES_READ, scan.bytesRead);
+                if (scan.cached) {
+                    metrics.count(Metrics.COUNTER_CACHED_DEX_FILES, 1);
+                }
+            }
+        } finally {
+            reader.shutdownNow();
+            executor.shutdownNow();
+        }
+        if (cache != null && index == null) {
+            out.println("Result cache: " + cacheHits.get() + " of " + dexFiles.size() + " dex files unchanged");
+        }
+        if (mapping != null) {
+            fields = mapping.deobfuscate(fields);
+        }
+        List<AnnotatedField> missing = Collections.emptyList();
+        if (index != null) {
+            missing = index.findMissing(fields);
+            out.println("Annotation index: " + index.getFieldCount() + " fields, " + missing.size() + " missing");
+        }
+        Metrics.Timer timer = metrics.start(Metrics.PHASE_CHECK);
+        variantChecker.check(fields, missing);
+        timer.stop();
+        out.println("Config check passed!  ================ " + dexFiles);
+        out.println("Done! Cost " + (System.currentTimeMillis() - startTime) / 1000 + "s");
+    }
+
+    /**
+     * The index never narrows the scan, it only adds the listed fields whose
+     * annotations are gone, e.g. stripped by the shrinker.
+     *
+     * @return the annotated fields followed by the indexed fields not among them
+     */
+    private static List<AnnotatedField> addUnannotated(List<AnnotatedField> annotated,
+                                                       List<AnnotatedField> indexed) {
+        Set<String> names = new HashSet<String>();
+        for (AnnotatedField field : annotated) {
+            names.add(field.getName());
+        }
+        List<AnnotatedField> fields = new ArrayList<AnnotatedField>(annotated);
+        for (AnnotatedField field : indexed) {
+            if (!names.contains(field.getName())) {
+                fields.add(field);
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * @return the number of classes fields come from; a class' fields are next to each other
+     */
+    private static int countClasses(List<AnnotatedField> fields) {
+        int count = 0;
+        String className = null;
+        for (AnnotatedField field : fields) {
+            if (!field.getClassName().equals(className)) {
+                className = field.getClassName();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * A dex file as handed from the reader thread to a scan worker: either
+     * its loaded buffer or the fields cached for it.
+     */
+    private static final class Load {
+        final String key;
+        final ByteBuffer buffer;
+        final List<AnnotatedField> cachedFields;
+        final long millis;
+
+        Load(String key, ByteBuffer buffer, List<AnnotatedField> cachedFields, long millis) {
+            this.key = key;
+            this.buffer = buffer;
+            this.cachedFields = cachedFields;
+            this.millis = millis;
+        }
+    }
+
+    private static final class Scan {
+        final List<AnnotatedField> fields;
+        final long millis;
+        final boolean cached;
+        /** 0 for cached results, nothing was read. */
+        final int classesLoaded;
+        final int classesScanned;
+        final long bytesRead;
+
+        Scan(List<AnnotatedField> fields, long millis, boolean cached, int classesLoaded, int classesScanned,
+             long bytesRead) {
+            this.fields = fields;
+            this.millis = millis;
+            this.cached = cached;
+            this.classesLoaded = classesLoaded;
+            this.classesScanned = classesScanned;
+            this.bytesRead = bytesRead;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.github.promeg.configchecker;
+
+import java.io.PrintStream;
+
+/**
+ * The value an Enforce*Value annotation expects for one flavor and build type.
+ */
+class EnforceValueHolder extends TypedValue {
+    final String flavor;
+    final String buildType;
+
+    EnforceValueHolder(ValueType type, long bits, String string, String flavor, String buildType) {
+        super(type, bits, string);
+        this.flavor = flavor;
+        this.buildType = buildType;
+    }
+
+    static EnforceValueHolder ofBoolean(boolean value, String flavor, String buildType) {
+        return new EnforceValueHolder(ValueType.BOOLEAN, bitsOf(value), null, flavor, buildType);
+    }
+
+    static EnforceValueHolder ofInt(int value, String flavor, String buildType) {
+        return new EnforceValueHolder(ValueType.INT, value, null, flavor, buildType);
+    }
+
+    static EnforceValueHolder ofLong(long value, String flavor, String buildType) {
+        return new EnforceValueHolder(ValueType.LONG, value, null, flavor, buildType);
+    }
+
+    static EnforceValueHolder ofFloat(float value, String flavor, String buildType) {
+        return new EnforceValueHolder(ValueType.FLOAT, bitsOf(value), null, flavor, buildType);
+    }
+
+    static EnforceValueHolder ofDouble(double value, String flavor, String buildType) {
+        return new EnforceValueHolder(ValueType.DOUBLE, bitsOf(value), null, flavor, buildType);
+    }
+
+    static EnforceValueHolder ofString(String value, String flavor, String buildType) {
+        return new EnforceValueHolder(ValueType.STRING, 0, value, flavor, buildType);
+    }
+
+    public String getFlavor() {
+        return flavor;
+    }
+
+    public String getBuildType() {
+        return buildType;
+    }
+
+    @Override
+    public String toString() {
+        return "EnforceValueAnnotation{" +
+                "value=" + valueString() +
+                ", flavor='" + flavor + '\'' +
+                ", buildType='" + buildType + '\'' +
+                '}';
+    }
+
+    /**
+     * Prints {@link #toString()} without building it first.
+     */
+    void print(PrintStream out) {
+        out.print("EnforceValueAnnotation{value=");
+        printValue(out);
+        out.print(", flavor='");
+        out.print(flavor);
+        out.print("', buildType='");
+        out.print(buildType);
+        out.print("'}");
+    }
+}
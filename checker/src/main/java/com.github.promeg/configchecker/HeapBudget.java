@@ -0,0 +1,85 @@
+package com.github.promeg.configchecker;
+
+/**
+ * The heap the soot engine should stay within, set by --max-heap. Before a
+ * batch of classes is resolved the used heap is compared with it: past
+ * {@link #HIGH_WATER_PERCENT} of the budget, garbage is collected first,
+ * and if that does not get the heap back under, the next batch is halved.
+ * Once there is room again batches grow back to {@link #MAX_BATCH_SIZE}.
+ *
+ * If the heap stays over budget even with single classes, the budget is
+ * marked exceeded and the check goes on; it is up to the caller to report it.
+ */
+final class HeapBudget {
+    static final int MAX_BATCH_SIZE = 512;
+    private static final int HIGH_WATER_PERCENT = 80;
+
+    private final long budgetBytes;
+    private long peakBytes;
+    private boolean exceeded;
+
+    HeapBudget(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    /**
+     * @return the most heap in use seen before a batch, after collecting garbage
+     */
+    long getPeakBytes() {
+        return peakBytes;
+    }
+
+    boolean isExceeded() {
+        return exceeded;
+    }
+
+    /**
+     * @return false if the JVM may not even grow its heap to the budget, so
+     * it would run out of memory before the budget is reached
+     */
+    boolean fitsMaxHeap() {
+        return budgetBytes <= Runtime.getRuntime().maxMemory();
+    }
+
+    /**
+     * Blocks until the heap is under the high water mark, or as close as a
+     * collection gets it.
+     *
+     * @param batchSize the size of the last batch
+     * @return how many classes to resolve next
+     */
+    int nextBatchSize(int batchSize) {
+        long highWater = budgetBytes / 100 * HIGH_WATER_PERCENT;
+        long used = usedBytes();
+        if (used < highWater) {
+            peakBytes = Math.max(peakBytes, used);
+            return Math.min(MAX_BATCH_SIZE, batchSize * 2);
+        }
+        System.gc();
+        used = usedBytes();
+        peakBytes = Math.max(peakBytes, used);
+        if (used < highWater) {
+            return batchSize;
+        }
+        if (used > budgetBytes && batchSize == 1) {
+            exceeded = true;
+        }
+        return Math.max(1, batchSize / 2);
+    }
+
+    static long usedBytes() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * @return bytes in megabytes, rounded up
+     */
+    static long toMegabytes(long bytes) {
+        return (bytes + (1 << 20) - 1) >> 20;
+    }
+}
@@ -0,0 +1,236 @@
+package com.github.promeg.configchecker;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Expands the checker's input arguments into the list of files to check.
+ *
+ * An input may be a file, a directory (searched recursively for .apk and .dex
+ * files), or a glob such as "out/*-release.apk", where "**" also matches
+ * across directories. A manifest file lists
+ * one such input per line; blank lines and lines starting with '#' are ignored.
+ * Every file is returned once, in argument order, directory contents sorted
+ * by path. For the class engine a directory is not searched but kept as one
+ * input, a tree of class files.
+ */
+final class InputCollector {
+    private static final String[] CHECKABLE_SUFFIXES = {".apk", ".dex", ".aab", ".apks"};
+
+    private final Set<String> fileNames = new LinkedHashSet<String>();
+    private boolean keepDirectories;
+
+    void setKeepDirectories(boolean keepDirectories) {
+        this.keepDirectories = keepDirectories;
+    }
+
+    List<String> getFileNames() {
+        return new ArrayList<String>(fileNames);
+    }
+
+    void addManifest(String manifest) throws IOException {
+        File manifestFile = new File(manifest);
+        File baseDir = manifestFile.getAbsoluteFile().getParentFile();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(manifestFile), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith("#")) {
+                    continue;
+                }
+                File entry = new File(line);
+                add(entry.isAbsolute() ? line : new File(baseDir, line).getPath());
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    void add(String input) throws IOException {
+        if (isGlob(input)) {
+            addGlob(input);
+            return;
+        }
+        File file = new File(input);
+        if (file.isDirectory() && !keepDirectories) {
+            addDirectory(file);
+        } else {
+            // a missing file is reported when it is opened, like a single input
+            fileNames.add(input);
+        }
+    }
+
+    private void addDirectory(File dir) throws IOException {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            throw new IOException("Unable to list '" + dir + "'");
+        }
+        Arrays.sort(children);
+        for (File child : children) {
+            if (child.isDirectory()) {
+                addDirectory(child);
+            } else if (isCheckable(child.getName())) {
+                fileNames.add(child.getPath());
+            }
+        }
+    }
+
+    private void addGlob(String glob) throws IOException {
+        String normalized = glob.replace(File.separatorChar, '/');
+        // walk from the last directory before the first wildcard
+        int firstWildcard = indexOfWildcard(normalized);
+        int baseEnd = normalized.lastIndexOf('/', firstWildcard);
+        String base = baseEnd < 0 ? "." : (baseEnd == 0 ? "/" : normalized.substring(0, baseEnd));
+        String relativeGlob = normalized.substring(baseEnd + 1);
+        Pattern pattern = toPattern(relativeGlob);
+
+        File baseDir = new File(base);
+        if (!baseDir.isDirectory()) {
+            throw new FileNotFoundException("No files match '" + glob + "'");
+        }
+        int before = fileNames.size();
+        addGlobMatches(baseDir, "", pattern, directoryDepth(relativeGlob));
+        if (fileNames.size() == before) {
+            throw new FileNotFoundException("No files match '" + glob + "'");
+        }
+    }
+
+    /**
+     * @param depth how many more directory levels the pattern reaches into
+     */
+    private void addGlobMatches(File dir, String relativeDir, Pattern pattern, int depth) throws IOException {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            throw new IOException("Unable to list '" + dir + "'");
+        }
+        Arrays.sort(children);
+        for (File child : children) {
+            String relative = relativeDir + child.getName();
+            if (child.isDirectory()) {
+                if (depth > 0) {
+                    addGlobMatches(child, relative + "/", pattern, depth - 1);
+                }
+            } else if (pattern.matcher(relative).matches()) {
+                fileNames.add(child.getPath());
+            }
+        }
+    }
+
+    static boolean isCheckable(String name) {
+        for (String suffix : CHECKABLE_SUFFIXES) {
+            if (name.endsWith(suffix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isGlob(String input) {
+        return indexOfWildcard(input) >= 0;
+    }
+
+    private static int indexOfWildcard(String input) {
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c == '*' || c == '?' || c == '[') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the number of directory levels below its base a glob can match in,
+     * {@link Integer#MAX_VALUE} if it contains "**"
+     */
+    static int directoryDepth(String glob) {
+        if (glob.contains("**")) {
+            return Integer.MAX_VALUE;
+        }
+        int depth = 0;
+        for (int i = 0; i < glob.length(); i++) {
+            if (glob.charAt(i) == '/') {
+                depth++;
+            }
+        }
+        return depth;
+    }
+
+    /**
+     * "**" crosses directories, "*" and "?" stay within one path segment and
+     * "[...]" is a character class, negated by a leading "!" or "^", which
+     * never matches "/" either.
+     */
+    static Pattern toPattern(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*') {
+                if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                    i++;
+                    if (i + 1 < glob.length() && glob.charAt(i + 1) == '/') {
+                        // "**/" also matches no directory at all
+                        i++;
+                        regex.append("(?:.*/)?");
+                    } else {
+                        regex.append(".*");
+                    }
+                } else {
+                    regex.append("[^/]*");
+                }
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else if (c == '[') {
+                int start = i + 1;
+                boolean negated = start < glob.length() && (glob.charAt(start) == '!' || glob.charAt(start) == '^');
+                if (negated) {
+                    start++;
+                }
+                // a "]" right after the opening bracket is part of the class
+                int end = start < glob.length() ? glob.indexOf(']', start + 1) : -1;
+                if (end < 0) {
+                    regex.append("\\[");
+                } else {
+                    String members = escapeClassMembers(glob.substring(start, end));
+                    if (negated) {
+                        regex.append("[^/").append(members).append(']');
+                    } else {
+                        regex.append('[').append(members).append("&&[^/]]");
+                    }
+                    i = end;
+                }
+            } else if ("\\.+()^$|{}".indexOf(c) >= 0) {
+                regex.append('\\').append(c);
+            } else {
+                regex.append(c);
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    /**
+     * Escapes what is special inside a regex character class but not a glob one, keeping ranges.
+     */
+    private static String escapeClassMembers(String members) {
+        StringBuilder escaped = new StringBuilder();
+        for (int i = 0; i < members.length(); i++) {
+            char c = members.charAt(i);
+            if ("\\[]&^".indexOf(c) >= 0) {
+                escaped.append('\\');
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+}
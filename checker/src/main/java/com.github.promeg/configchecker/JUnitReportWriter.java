@@ -0,0 +1,118 @@
+package com.github.promeg.configchecker;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Writes reports as JUnit XML, which most CI servers can display: one
+ * testsuite per input and one testcase per checked constraint. Failed and
+ * mismatched constraints become failures, constraints of a field without a
+ * static value are skipped, and an input that could not be checked at all
+ * becomes an error.
+ */
+final class JUnitReportWriter implements ReportWriter {
+    private final Writer writer;
+
+    JUnitReportWriter(File file) throws IOException {
+        writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<testsuites name=\"apk-config-checker\">\n");
+    }
+
+    public synchronized void write(CheckReport report) throws IOException {
+        List<CheckReport.Result> results = report.getResults();
+        boolean error = report.getStatus() == CheckReport.Status.ERROR;
+        int failures = report.count(ValueChecker.Outcome.FAIL) + report.count(ValueChecker.Outcome.TYPE_MISMATCH)
+                + report.count(ValueChecker.Outcome.MISSING);
+        StringBuilder xml = new StringBuilder();
+        xml.append("  <testsuite name=").append(attr(report.getInput()));
+        xml.append(" tests=\"").append(results.size() + (error ? 1 : 0)).append('"');
+        xml.append(" failures=\"").append(failures).append('"');
+        xml.append(" errors=\"").append(error ? 1 : 0).append('"');
+        xml.append(" skipped=\"").append(report.count(ValueChecker.Outcome.NO_VALUE)).append('"');
+        xml.append(" time=\"").append(seconds(report.getMillis())).append("\">\n");
+
+        for (CheckReport.Result result : results) {
+            AnnotatedField field = result.field;
+            xml.append("    <testcase classname=").append(attr(field.getClassName()));
+            xml.append(" name=").append(attr(field.getFieldName() + " [" + result.variant + "]"));
+            switch (result.outcome) {
+                case FAIL:
+                    xml.append(">\n      <failure type=\"EnforceValueFail\" message=").append(attr(
+                            ValueChecker.failMessage(field.getName(), field.getRealValue(), result.enforceValue)));
+                    xml.append("/>\n    </testcase>\n");
+                    break;
+                case TYPE_MISMATCH:
+                    xml.append(">\n      <failure type=\"TypeMismatch\" message=").append(attr(
+                            ValueChecker.typeMismatchMessage(field.getRealValue(), result.enforceValue)));
+                    xml.append("/>\n    </testcase>\n");
+                    break;
+                case MISSING:
+                    xml.append(">\n      <failure type=\"MissingField\" message=").append(attr(
+                            ValueChecker.missingMessage(field.getName(), result.enforceValue)));
+                    xml.append("/>\n    </testcase>\n");
+                    break;
+                case NO_VALUE:
+                    xml.append(">\n      <skipped message=\"no static value\"/>\n    </testcase>\n");
+                    break;
+                default:
+                    xml.append("/>\n");
+                    break;
+            }
+        }
+        if (error) {
+            xml.append("    <testcase classname=").append(attr(report.getInput())).append(" name=\"check\">\n");
+            xml.append("      <error message=").append(attr(report.getMessage())).append("/>\n");
+            xml.append("    </testcase>\n");
+        }
+        xml.append("  </testsuite>\n");
+        writer.write(xml.toString());
+        writer.flush();
+    }
+
+    public synchronized void close() throws IOException {
+        writer.write("</testsuites>\n");
+        writer.close();
+    }
+
+    private static String seconds(long millis) {
+        return String.format(Locale.US, "%.3f", millis / 1000.0);
+    }
+
+    private static String attr(String value) {
+        if (value == null) {
+            return "\"\"";
+        }
+        StringBuilder escaped = new StringBuilder(value.length() + 2);
+        escaped.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&':
+                    escaped.append("&amp;");
+                    break;
+                case '<':
+                    escaped.append("&lt;");
+                    break;
+                case '>':
+                    escaped.append("&gt;");
+                    break;
+                case '"':
+                    escaped.append("&quot;");
+                    break;
+                case '\n':
+                    escaped.append("&#10;");
+                    break;
+                default:
+                    // XML 1.0 has no way to write most control characters
+                    escaped.append(c < 0x20 && c != '\t' && c != '\r' ? '?' : c);
+                    break;
+            }
+        }
+        return escaped.append('"').toString();
+    }
+}
@@ -0,0 +1,82 @@
+package com.github.promeg.configchecker;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Writes the {@link Metrics} of each check as a single JSON document:
+ * <pre>
+ * {"checker": "apk-config-checker", "version": "1.0", "metrics": [
+ *   {"input": ..., "status": "PASS", "millis": ..., "peakHeapBytes": ...,
+ *    "phases": {"scan": {"count": ..., "wallMillis": ..., "cpuMillis": ...}},
+ *    "counters": {"classesLoaded": ..., ...},
+ *    "dex": [{"name": ..., "classesLoaded": ..., "classesScanned": ...,
+ *             "annotatedFields": ..., "bytesRead": ...}]}]}
+ * </pre>
+ */
+final class JsonMetricsWriter implements ReportWriter {
+    private final Writer writer;
+    private boolean first = true;
+
+    JsonMetricsWriter(File file) throws IOException {
+        writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        writer.write("{\"checker\": \"apk-config-checker\", \"version\": " + JsonReportWriter.quote(Main.VERSION)
+                + ", \"metrics\": [");
+    }
+
+    public synchronized void write(CheckReport report) throws IOException {
+        Metrics metrics = report.getMetrics();
+        StringBuilder json = new StringBuilder();
+        json.append(first ? "\n  {" : ",\n  {");
+        first = false;
+        json.append("\"input\": ").append(JsonReportWriter.quote(report.getInput()));
+        json.append(", \"status\": ").append(JsonReportWriter.quote(report.getStatus().name()));
+        json.append(", \"millis\": ").append(report.getMillis());
+        json.append(", \"peakHeapBytes\": ").append(metrics.getPeakHeapBytes());
+
+        json.append(",\n   \"phases\": {");
+        String separator = "";
+        for (Map.Entry<String, Metrics.Phase> entry : metrics.getPhases().entrySet()) {
+            Metrics.Phase phase = entry.getValue();
+            json.append(separator).append(JsonReportWriter.quote(entry.getKey()));
+            json.append(": {\"count\": ").append(phase.count);
+            json.append(", \"wallMillis\": ").append(millis(phase.wallNanos));
+            json.append(", \"cpuMillis\": ").append(millis(phase.cpuNanos)).append('}');
+            separator = ", ";
+        }
+        json.append("},\n   \"counters\": {");
+        separator = "";
+        for (Map.Entry<String, Long> entry : metrics.getCounters().entrySet()) {
+            json.append(separator).append(JsonReportWriter.quote(entry.getKey())).append(": ").append(entry.getValue());
+            separator = ", ";
+        }
+        json.append("},\n   \"dex\": [");
+        separator = "";
+        for (Metrics.Dex dex : metrics.getDexes()) {
+            json.append(separator).append("\n    {\"name\": ").append(JsonReportWriter.quote(dex.name));
+            json.append(", \"classesLoaded\": ").append(dex.classesLoaded);
+            json.append(", \"classesScanned\": ").append(dex.classesScanned);
+            json.append(", \"annotatedFields\": ").append(dex.annotatedFields < 0 ? "null"
+                    : String.valueOf(dex.annotatedFields));
+            json.append(", \"bytesRead\": ").append(dex.bytesRead).append('}');
+            separator = ",";
+        }
+        json.append("]}");
+        writer.write(json.toString());
+        writer.flush();
+    }
+
+    public synchronized void close() throws IOException {
+        writer.write("\n]}\n");
+        writer.close();
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.US, "%.3f", nanos / 1e6);
+    }
+}
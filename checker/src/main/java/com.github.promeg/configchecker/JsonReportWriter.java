@@ -0,0 +1,129 @@
+package com.github.promeg.configchecker;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Writes reports as a single JSON document:
+ * <pre>
+ * {"checker": "apk-config-checker", "version": "1.0", "reports": [
+ *   {"input": ..., "status": "FAIL", "message": ..., "millis": ...,
+ *    "dex": [{"name": ..., "millis": ..., "annotatedFields": ..., "cached": ...}],
+ *    "results": [{"class": ..., "field": ..., "status": ..., "realValue": ...,
+ *                 "expectedValue": ..., "flavor": ..., "buildType": ..., "variant": ...}],
+ *    "summary": {"pass": ..., "fail": ..., "typeMismatch": ..., "noValue": ..., "missing": ...}}]}
+ * </pre>
+ * Each report is streamed out as soon as it is written.
+ */
+final class JsonReportWriter implements ReportWriter {
+    private final Writer writer;
+    private boolean first = true;
+
+    JsonReportWriter(File file) throws IOException {
+        writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        writer.write("{\"checker\": \"apk-config-checker\", \"version\": " + quote(Main.VERSION)
+                + ", \"reports\": [");
+    }
+
+    public synchronized void write(CheckReport report) throws IOException {
+        StringBuilder json = new StringBuilder();
+        json.append(first ? "\n  {" : ",\n  {");
+        first = false;
+        json.append("\"input\": ").append(quote(report.getInput()));
+        json.append(", \"status\": ").append(quote(report.getStatus().name()));
+        json.append(", \"message\": ").append(quote(report.getMessage()));
+        json.append(", \"millis\": ").append(report.getMillis());
+
+        json.append(",\n   \"dex\": [");
+        String separator = "";
+        for (CheckReport.DexStats dex : report.getDexStats()) {
+            json.append(separator).append("\n    {\"name\": ").append(quote(dex.name));
+            json.append(", \"millis\": ").append(dex.millis);
+            json.append(", \"annotatedFields\": ").append(dex.annotatedFields);
+            json.append(", \"cached\": ").append(dex.cached).append('}');
+            separator = ",";
+        }
+        json.append("],\n   \"results\": [");
+        separator = "";
+        for (CheckReport.Result result : report.getResults()) {
+            AnnotatedField field = result.field;
+            Object realValue = field.getRealValue() == null ? null : field.getRealValue().getValue();
+            json.append(separator).append("\n    {\"class\": ").append(quote(field.getClassName()));
+            json.append(", \"field\": ").append(quote(field.getFieldName()));
+            json.append(", \"status\": ").append(quote(result.outcome.name()));
+            json.append(", \"realValue\": ").append(value(realValue));
+            json.append(", \"expectedValue\": ").append(value(result.enforceValue.getValue()));
+            json.append(", \"flavor\": ").append(quote(result.variant.getFlavor()));
+            json.append(", \"buildType\": ").append(quote(result.variant.getBuildType()));
+            json.append(", \"variant\": ").append(quote(result.variant.toString())).append('}');
+            separator = ",";
+        }
+        json.append("],\n   \"summary\": {\"pass\": ").append(report.count(ValueChecker.Outcome.PASS));
+        json.append(", \"fail\": ").append(report.count(ValueChecker.Outcome.FAIL));
+        json.append(", \"typeMismatch\": ").append(report.count(ValueChecker.Outcome.TYPE_MISMATCH));
+        json.append(", \"noValue\": ").append(report.count(ValueChecker.Outcome.NO_VALUE));
+        json.append(", \"missing\": ").append(report.count(ValueChecker.Outcome.MISSING));
+        json.append("}}");
+        writer.write(json.toString());
+        writer.flush();
+    }
+
+    public synchronized void close() throws IOException {
+        writer.write("\n]}\n");
+        writer.close();
+    }
+
+    /**
+     * Numbers and booleans are written as they are, except for the non finite
+     * floating point values JSON has no literal for.
+     */
+    private static String value(Object value) {
+        if (value instanceof Boolean || value instanceof Integer || value instanceof Long) {
+            return value.toString();
+        }
+        if (value instanceof Float || value instanceof Double) {
+            double d = ((Number) value).doubleValue();
+            return Double.isNaN(d) || Double.isInfinite(d) ? quote(value.toString()) : value.toString();
+        }
+        return quote(value == null ? null : value.toString());
+    }
+
+    static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder quoted = new StringBuilder(value.length() + 2);
+        quoted.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    quoted.append("\\\"");
+                    break;
+                case '\\':
+                    quoted.append("\\\\");
+                    break;
+                case '\n':
+                    quoted.append("\\n");
+                    break;
+                case '\r':
+                    quoted.append("\\r");
+                    break;
+                case '\t':
+                    quoted.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+                    break;
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
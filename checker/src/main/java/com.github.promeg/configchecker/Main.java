@@ -20,6 +20,7 @@ import org.apache.commons.io.IOUtils;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Enumeration;
 import java.util.List;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
@@ -27,47 +28,373 @@ import java.util.zip.ZipFile;
 
 public class Main {
 
+    static final String VERSION = "1.0";
+
+    static final String ENGINE_SOOT = "soot";
+    static final String ENGINE_DEX = "dex";
+    static final String ENGINE_CLASS = "class";
+    static final String VARIANTS_ALL = "all";
+    static final String REPORT_JSON = "json";
+    static final String REPORT_JUNIT = "junit";
+    static final String METRICS_JSON = "json";
+    static final String METRICS_PROMETHEUS = "prometheus";
+    static final int EXIT_USAGE = 2;
+    static final long DEFAULT_CACHE_MAX_BYTES = 256L * 1024 * 1024;
+
     String mAndroidJar;
     String mFlavor;
     String mBuildType;
+    String mEngine = ENGINE_SOOT;
+    int mThreads = WorkerPool.defaultThreads();
+    int mJobs = WorkerPool.defaultThreads();
+    String mManifest;
+    String mVariantList;
+    /** Variants to check; null checks every variant the annotations declare. */
+    List<Variant> mVariants;
+    File mCacheDir;
+    long mCacheMaxBytes = DEFAULT_CACHE_MAX_BYTES;
+    boolean mKeepGoing;
+    boolean mLazySoot;
+    long mHeapBudget;
+    /** --platform-index, or null to keep the index of --androidjar in {@link PlatformIndex#defaultDir()}. */
+    File mPlatformIndex;
+    boolean mFullAndroidJar;
+    boolean mNoIndex;
+    /** --report values, "format:path". */
+    final List<String> mReports = new ArrayList<String>();
+    /** --metrics values, "format:path". */
+    final List<String> mMetrics = new ArrayList<String>();
+    File mSnapshotDir;
+    /** --mapping, the R8/ProGuard mapping.txt of the inputs. */
+    File mMapping;
+    private MappingIndex mMappingIndex;
 
-    public static void main(String[] args) {
-        Main main = new Main();
-        main.run(args);
+    private final List<ReportWriter> mReportWriters = new ArrayList<ReportWriter>();
+
+    /** Dex files extracted for the soot engine, deleted once the apk is checked. */
+    private final List<File> mTempFiles = new ArrayList<File>();
+
+    /** Soot is a singleton, only one check at a time may use it. */
+    private static final Object SOOT_LOCK = new Object();
+
+    private final PrintStream mOut;
+    private final PrintStream mErr;
+
+    Main() {
+        this(System.out, System.err);
+    }
+
+    Main(PrintStream out, PrintStream err) {
+        mOut = out;
+        mErr = err;
     }
 
-    void run(String[] args) {
+    public static void main(String[] args) {
+        int exitCode;
+        if (args.length > 0 && (args[0].equals("--daemon") || args[0].startsWith("--daemon="))) {
+            exitCode = CheckerDaemon.runDaemon(args);
+        } else if (args.length > 0 && args[0].equals("--client")) {
+            String[] checkArgs = new String[args.length - 1];
+            System.arraycopy(args, 1, checkArgs, 0, checkArgs.length);
+            exitCode = DaemonClient.check(checkArgs);
+        } else if (args.length == 1 && args[0].equals("--stop-daemon")) {
+            exitCode = DaemonClient.stop();
+        } else if (args.length > 0 && args[0].equals("--diff")) {
+            String[] snapshots = new String[args.length - 1];
+            System.arraycopy(args, 1, snapshots, 0, snapshots.length);
+            exitCode = SnapshotDiff.run(snapshots, System.out, System.err);
+        } else {
+            exitCode = new Main().run(args);
+        }
+        if (exitCode != BatchChecker.EXIT_OK) {
+            System.exit(exitCode);
+        }
+    }
 
+    /**
+     * @return the exit code: 0 if every input passed, 3 if a check failed,
+     * 2 for a usage error and 1 if an input could not be checked
+     */
+    int run(String[] args) {
+        int exitCode = BatchChecker.EXIT_OK;
         try {
             String[] inputFileNames = parseArgs(args);
-            for (String fileName : collectFileNames(inputFileNames)) {
-                System.out.println("Processing " + fileName);
-                List<String> dexFiles = openInputFiles(fileName);
-                new DexChecker(mAndroidJar, dexFiles, mFlavor, mBuildType).run();
+            List<String> fileNames = collectFileNames(inputFileNames);
+            openReportWriters(fileNames);
+            if (fileNames.size() > 1) {
+                exitCode = runBatch(fileNames);
+            } else {
+                checkSingle(fileNames.get(0));
             }
         } catch (ConfigCheckFailException exp) {
-            exp.printStackTrace();
-            System.exit(3);
+            exp.printStackTrace(mErr);
+            exitCode = BatchChecker.EXIT_CHECK_FAILED;
         } catch (UsageException ue) {
             usage();
-            System.exit(2);
+            exitCode = EXIT_USAGE;
         } catch (IOException ioe) {
             if (ioe.getMessage() != null) {
-                System.err.println("Failed: " + ioe);
+                mErr.println("Failed: " + ioe);
+            }
+            exitCode = BatchChecker.EXIT_ERROR;
+        } finally {
+            // reports are only complete once closed, so this has to happen before exit
+            if (!closeReportWriters() && exitCode == BatchChecker.EXIT_OK) {
+                exitCode = BatchChecker.EXIT_ERROR;
+            }
+        }
+        return exitCode;
+    }
+
+    private void checkSingle(String fileName) throws IOException {
+        mOut.println("Processing " + fileName);
+        CheckReport report = new CheckReport(fileName);
+        long startTime = System.currentTimeMillis();
+        CheckReport.Status status = CheckReport.Status.ERROR;
+        String message = null;
+        try {
+            check(fileName, mThreads, mOut, report);
+            status = CheckReport.Status.PASS;
+        } catch (ConfigCheckFailException e) {
+            status = CheckReport.Status.FAIL;
+            message = e.getMessage();
+            throw e;
+        } catch (IOException e) {
+            message = String.valueOf(e);
+            throw e;
+        } catch (RuntimeException e) {
+            message = String.valueOf(e);
+            throw e;
+        } finally {
+            report.finish(status, message, System.currentTimeMillis() - startTime);
+            for (ReportWriter reportWriter : mReportWriters) {
+                reportWriter.write(report);
+            }
+        }
+    }
+
+    private void openReportWriters(List<String> fileNames) throws IOException {
+        for (String report : mReports) {
+            String format = report.substring(0, report.indexOf(':'));
+            File file = new File(report.substring(report.indexOf(':') + 1));
+            if (REPORT_JSON.equals(format)) {
+                mReportWriters.add(new JsonReportWriter(file));
+            } else {
+                mReportWriters.add(new JUnitReportWriter(file));
+            }
+        }
+        for (String metrics : mMetrics) {
+            String format = metrics.substring(0, metrics.indexOf(':'));
+            File file = new File(metrics.substring(metrics.indexOf(':') + 1));
+            if (METRICS_JSON.equals(format)) {
+                mReportWriters.add(new JsonMetricsWriter(file));
+            } else {
+                mReportWriters.add(new PrometheusMetricsWriter(file));
+            }
+        }
+        if (mSnapshotDir != null) {
+            mReportWriters.add(new SnapshotWriter(mSnapshotDir, fileNames));
+        }
+    }
+
+    /**
+     * @return false if a report could not be completed
+     */
+    private boolean closeReportWriters() {
+        boolean closed = true;
+        for (ReportWriter reportWriter : mReportWriters) {
+            try {
+                reportWriter.close();
+            } catch (IOException e) {
+                mErr.println("Failed: " + e);
+                closed = false;
+            }
+        }
+        mReportWriters.clear();
+        return closed;
+    }
+
+    /**
+     * Checks every input in one JVM. The dex and class engines check several
+     * inputs at a time and split the threads between them; soot is a
+     * singleton, so it checks one apk after the other.
+     */
+    private int runBatch(List<String> fileNames) throws IOException {
+        int jobs = ENGINE_SOOT.equals(mEngine) ? 1 : Math.min(mJobs, fileNames.size());
+        final int threads = Math.max(1, mThreads / jobs);
+        return new BatchChecker(fileNames, jobs, new BatchChecker.ApkTask() {
+            public void check(String fileName, PrintStream out, CheckReport report) throws IOException {
+                Main.this.check(fileName, threads, out, report);
+            }
+        }, mReportWriters, mOut).run();
+    }
+
+    private void check(String fileName, int threads, PrintStream out, CheckReport report) throws IOException {
+        if (ENGINE_DEX.equals(mEngine)) {
+            checkWithDexEngine(fileName, threads, out, report);
+        } else if (ENGINE_CLASS.equals(mEngine)) {
+            ClassFileChecker checker = new ClassFileChecker(fileName, mVariants, threads, out);
+            checker.setKeepGoing(mKeepGoing);
+            checker.setReport(report);
+            checker.run();
+        } else {
+            try {
+                Metrics.Timer timer = report.getMetrics().start(Metrics.PHASE_EXTRACT);
+                List<String> dexFiles = openInputFiles(fileName);
+                timer.stop();
+                DexChecker checker = new DexChecker(mAndroidJar, dexFiles, mVariants, threads, out);
+                checker.setKeepGoing(mKeepGoing);
+                checker.setLazy(mLazySoot);
+                if (mHeapBudget > 0) {
+                    checker.setHeapBudget(mHeapBudget);
+                }
+                checker.setPlatformIndex(platformIndex());
+                if (mMapping != null) {
+                    checker.setMapping(mappingIndex());
+                }
+                checker.setReport(report);
+                synchronized (SOOT_LOCK) {
+                    checker.run();
+                }
+            } finally {
+                deleteTempFiles();
+            }
+        }
+    }
+
+    /**
+     * @return the platform index soot should use instead of --androidjar,
+     * built on first use, or null to use --androidjar itself or to run
+     * without platform classes
+     */
+    private synchronized File platformIndex() {
+        if (mFullAndroidJar) {
+            return null;
+        } else if (mAndroidJar == null) {
+            return mPlatformIndex;
+        }
+        File androidJar = new File(mAndroidJar);
+        try {
+            if (mPlatformIndex == null) {
+                mPlatformIndex = PlatformIndex.forAndroidJar(androidJar, PlatformIndex.defaultDir());
+            } else if (!mPlatformIndex.isFile()) {
+                PlatformIndex.build(androidJar, mPlatformIndex);
+            }
+        } catch (IOException e) {
+            mErr.println("Unable to index '" + mAndroidJar + "', loading all of it: " + e);
+            mFullAndroidJar = true;
+            return null;
+        }
+        return mPlatformIndex;
+    }
+
+    /**
+     * @return the index of --mapping, built or reused on first use and shared by every input
+     */
+    private synchronized MappingIndex mappingIndex() throws IOException {
+        if (mMappingIndex == null) {
+            mMappingIndex = MappingIndex.forMapping(mMapping);
+        }
+        return mMappingIndex;
+    }
+
+    /**
+     * Checks a .dex, a .jar/.apk or a module of an app bundle with the dex
+     * engine. Dex entries of an apk or bundle are read in place; only the
+     * split apk of an apk set is extracted to a temp file first.
+     */
+    private void checkWithDexEngine(String fileName, int threads, PrintStream out, CheckReport report)
+            throws IOException {
+        String module = AppBundle.moduleOf(fileName);
+        File inputFile = new File(module != null ? AppBundle.bundleOf(fileName) : fileName);
+        File split = null;
+        ApkReader apkReader;
+        Metrics.Timer timer = report.getMetrics().start(Metrics.PHASE_OPEN);
+        try {
+            apkReader = ApkReader.open(inputFile);
+        } catch (FileNotFoundException fnfe) {
+            mErr.println("Unable to open '" + fileName + "': " +
+                    fnfe.getMessage());
+            throw fnfe;
+        }
+        try {
+            if (module != null && apkReader == null) {
+                throw new IOException("Not a zip archive: " + inputFile);
+            }
+            if (module != null && AppBundle.isApkSet(inputFile.getPath())) {
+                // the module's split is an apk of its own from here on
+                split = AppBundle.extractSplit(apkReader, module);
+                apkReader.close();
+                apkReader = ApkReader.open(split);
+                module = null;
+            }
+            timer.stop();
+            List<DexSource> dexFiles = new ArrayList<DexSource>();
+            if (apkReader != null) {
+                dexFiles.addAll(module != null
+                        ? apkReader.getDexSources(AppBundle.dexDir(module)) : apkReader.getDexSources());
+            }
+            if (dexFiles.size() == 0) {
+                if (split != null) {
+                    out.println("No dex file in " + fileName);
+                    return;
+                }
+                dexFiles.add(DexSource.forFile(inputFile));
+            }
+            DirectDexChecker checker = new DirectDexChecker(dexFiles, mVariants, threads, out);
+            if (mCacheDir != null) {
+                checker.setCache(new ResultCache(mCacheDir, mCacheMaxBytes));
+            }
+            if (apkReader != null && !mNoIndex) {
+                checker.setIndex(AnnotationIndex.read(apkReader,
+                        module != null ? AppBundle.resourceDir(module) : ""));
+            }
+            if (mMapping != null) {
+                checker.setMapping(mappingIndex());
+            }
+            checker.setKeepGoing(mKeepGoing);
+            checker.setReport(report);
+            checker.run();
+        } finally {
+            if (apkReader != null) {
+                apkReader.close();
+            }
+            if (split != null && !split.delete() && split.exists()) {
+                mErr.println("Unable to delete '" + split + "'");
             }
-            System.exit(1);
         }
     }
 
     /**
-     * Opens an input file, which could be a .dex or a .jar/.apk with a
-     * classes.dex inside.  If the latter, we extract the contents to a
-     * temporary file.
+     * Opens an input file, which could be a .dex, a .jar/.apk with a
+     * classes.dex inside or a module of an app bundle.  If one of the latter,
+     * we extract the contents to a temporary file, deleted again by
+     * {@link #deleteTempFiles()}.
      */
     List<String> openInputFiles(String fileName) throws IOException {
         List<String> dexFiles = new ArrayList<String>();
 
-        openInputFileAsZip(fileName, dexFiles);
+        String module = AppBundle.moduleOf(fileName);
+        if (module != null) {
+            String bundle = AppBundle.bundleOf(fileName);
+            ApkReader apkReader = ApkReader.open(new File(bundle));
+            if (apkReader == null) {
+                throw new IOException("Not a zip archive: " + bundle);
+            }
+            try {
+                if (AppBundle.isApkSet(bundle)) {
+                    File split = AppBundle.extractSplit(apkReader, module);
+                    mTempFiles.add(split);
+                    openInputFileAsZip(split.getPath(), "", dexFiles);
+                } else {
+                    openInputFileAsZip(bundle, AppBundle.dexDir(module), dexFiles);
+                }
+            } finally {
+                apkReader.close();
+            }
+            return dexFiles;
+        }
+        openInputFileAsZip(fileName, "", dexFiles);
         if (dexFiles.size() == 0) {
             File inputFile = new File(fileName);
             dexFiles.add(inputFile.getAbsolutePath());
@@ -79,8 +406,10 @@ public class Main {
     /**
      * Tries to open an input file as a Zip archive (jar/apk) with a
      * "classes.dex" inside.
+     *
+     * @param dir where the dex files are, "" for the top level
      */
-    void openInputFileAsZip(String fileName, List<String> dexFiles) throws IOException {
+    void openInputFileAsZip(String fileName, String dir, List<String> dexFiles) throws IOException {
         ZipFile zipFile;
 
         // Try it as a zip file.
@@ -88,7 +417,7 @@ public class Main {
             zipFile = new ZipFile(fileName);
         } catch (FileNotFoundException fnfe) {
             // not found, no point in retrying as non-zip.
-            System.err.println("Unable to open '" + fileName + "': " +
+            mErr.println("Unable to open '" + fileName + "': " +
                     fnfe.getMessage());
             throw fnfe;
         } catch (ZipException ze) {
@@ -97,13 +426,18 @@ public class Main {
         }
 
         // Open and add all files matching "classes.*\.dex" in the zip file.
-        for (ZipEntry entry : Collections.list(zipFile.entries())) {
-            if (entry.getName().matches("classes.*\\.dex")) {
-                dexFiles.add(openDexFile(zipFile, entry).getAbsolutePath());
+        try {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (name.startsWith(dir) && ApkReader.isDexEntry(name.substring(dir.length()))) {
+                    dexFiles.add(openDexFile(zipFile, entry).getAbsolutePath());
+                }
             }
+        } finally {
+            zipFile.close();
         }
-
-        zipFile.close();
     }
 
     File openDexFile(ZipFile zipFile, ZipEntry entry) throws IOException  {
@@ -112,16 +446,33 @@ public class Main {
         // ZipException is a subclass).
         InputStream zis = zipFile.getInputStream(entry);
 
-        // Create a temp file to hold the DEX data, open it, and delete it
-        // to ensure it doesn't hang around if we fail.
+        // Create a temp file to hold the DEX data, and make sure it doesn't
+        // hang around if we fail.
         File dexFile = File.createTempFile("dexdeps", ".dex");
+        dexFile.deleteOnExit();
+        mTempFiles.add(dexFile);
 
         // Copy all data from input stream to output file.
-        IOUtils.copy(zis, new FileOutputStream(dexFile));
+        OutputStream out = new FileOutputStream(dexFile);
+        try {
+            IOUtils.copy(zis, out);
+        } finally {
+            out.close();
+            zis.close();
+        }
 
         return dexFile;
     }
 
+    private void deleteTempFiles() {
+        for (File tempFile : mTempFiles) {
+            if (!tempFile.delete() && tempFile.exists()) {
+                mErr.println("Unable to delete '" + tempFile + "'");
+            }
+        }
+        mTempFiles.clear();
+    }
+
     private String[] parseArgs(String[] args) {
         int idx;
 
@@ -136,54 +487,246 @@ public class Main {
                 mFlavor = arg.substring(arg.indexOf('=') + 1);
             } else if (arg.startsWith("--buildType=")) {
                 mBuildType = arg.substring(arg.indexOf('=') + 1);
+            } else if (arg.startsWith("--engine=")) {
+                mEngine = arg.substring(arg.indexOf('=') + 1);
+                if (!ENGINE_SOOT.equals(mEngine) && !ENGINE_DEX.equals(mEngine) && !ENGINE_CLASS.equals(mEngine)) {
+                    mErr.println("Unknown engine '" + mEngine + "'");
+                    throw new UsageException();
+                }
+            } else if (arg.startsWith("--threads=")) {
+                mThreads = parseThreads(arg.substring(arg.indexOf('=') + 1));
+            } else if (arg.startsWith("--jobs=")) {
+                mJobs = parseThreads(arg.substring(arg.indexOf('=') + 1));
+            } else if (arg.startsWith("--variants=")) {
+                mVariantList = arg.substring(arg.indexOf('=') + 1);
+            } else if (arg.equals("--cache")) {
+                mCacheDir = ResultCache.defaultDir();
+            } else if (arg.startsWith("--cache-dir=")) {
+                mCacheDir = new File(arg.substring(arg.indexOf('=') + 1));
+            } else if (arg.startsWith("--cache-max-size=")) {
+                mCacheMaxBytes = parseSize(arg.substring(arg.indexOf('=') + 1));
+            } else if (arg.startsWith("--platform-index=")) {
+                mPlatformIndex = new File(arg.substring(arg.indexOf('=') + 1));
+            } else if (arg.equals("--full-androidjar")) {
+                mFullAndroidJar = true;
+            } else if (arg.equals("--no-index")) {
+                mNoIndex = true;
+            } else if (arg.equals("--lazy-soot")) {
+                mLazySoot = true;
+            } else if (arg.startsWith("--max-heap=")) {
+                mHeapBudget = parseSize(arg.substring(arg.indexOf('=') + 1));
+            } else if (arg.equals("--keep-going")) {
+                mKeepGoing = true;
+            } else if (arg.startsWith("--report=")) {
+                String report = arg.substring(arg.indexOf('=') + 1);
+                int colon = report.indexOf(':');
+                String format = colon > 0 ? report.substring(0, colon) : report;
+                if (colon < 0 || colon == report.length() - 1
+                        || (!REPORT_JSON.equals(format) && !REPORT_JUNIT.equals(format))) {
+                    mErr.println("Invalid report '" + report + "', expected json:{file} or junit:{file}");
+                    throw new UsageException();
+                }
+                mReports.add(report);
+            } else if (arg.startsWith("--metrics=")) {
+                String metrics = arg.substring(arg.indexOf('=') + 1);
+                int colon = metrics.indexOf(':');
+                String format = colon > 0 ? metrics.substring(0, colon) : metrics;
+                if (colon < 0 || colon == metrics.length() - 1
+                        || (!METRICS_JSON.equals(format) && !METRICS_PROMETHEUS.equals(format))) {
+                    mErr.println("Invalid metrics '" + metrics + "', expected json:{file} or prometheus:{file}");
+                    throw new UsageException();
+                }
+                mMetrics.add(metrics);
+            } else if (arg.startsWith("--snapshot-dir=")) {
+                mSnapshotDir = new File(arg.substring(arg.indexOf('=') + 1));
+            } else if (arg.startsWith("--mapping=")) {
+                mMapping = new File(arg.substring(arg.indexOf('=') + 1));
+            } else if (arg.startsWith("--manifest=")) {
+                mManifest = arg.substring(arg.indexOf('=') + 1);
             } else {
-                System.err.println("Unknown option '" + arg + "'");
+                mErr.println("Unknown option '" + arg + "'");
                 throw new UsageException();
             }
         }
 
-        // We expect at least one more argument (file name).
+        // We expect at least one more argument (file name), unless a manifest lists them.
+        if (idx < args.length && args[idx].equals("--")) {
+            idx++;
+        }
         int fileCount = args.length - idx;
-        if (fileCount != 1) {
+        if (fileCount < 1 && mManifest == null) {
             throw new UsageException();
         }
         String[] inputFileNames = new String[fileCount];
         System.arraycopy(args, idx, inputFileNames, 0, fileCount);
 
-        if (mAndroidJar == null || mFlavor == null || mBuildType == null) {
+        mVariants = parseVariants();
+        if (mPlatformIndex != null && !mPlatformIndex.isFile() && mAndroidJar == null) {
+            mErr.println("No platform index '" + mPlatformIndex + "', build it with --androidjar");
+            throw new UsageException();
+        }
+        if (mMapping != null && !mMapping.isFile()) {
+            mErr.println("No mapping file '" + mMapping + "'");
             throw new UsageException();
         }
         return inputFileNames;
     }
 
+    /**
+     * --flavor and --buildType name one variant, --variants=all every variant
+     * declared in annotations, and --variants=f1:b1,f2:b2 a list of them.
+     */
+    private List<Variant> parseVariants() {
+        if (VARIANTS_ALL.equals(mVariantList)) {
+            return null;
+        }
+        List<Variant> variants = new ArrayList<Variant>();
+        if (mVariantList != null) {
+            try {
+                variants.addAll(Variant.parseList(mVariantList));
+            } catch (IllegalArgumentException e) {
+                mErr.println(e.getMessage());
+                throw new UsageException();
+            }
+        }
+        if (mFlavor != null && mBuildType != null) {
+            Variant variant = new Variant(mFlavor, mBuildType);
+            if (!variants.contains(variant)) {
+                variants.add(0, variant);
+            }
+        } else if (mFlavor != null || mBuildType != null || variants.isEmpty()) {
+            throw new UsageException();
+        }
+        return variants;
+    }
+
+    /**
+     * Parses a byte count with an optional k, m or g suffix.
+     */
+    long parseSize(String value) {
+        String number = value.trim().toLowerCase();
+        long unit = 1;
+        if (number.endsWith("k")) {
+            unit = 1024L;
+        } else if (number.endsWith("m")) {
+            unit = 1024L * 1024;
+        } else if (number.endsWith("g")) {
+            unit = 1024L * 1024 * 1024;
+        }
+        if (unit != 1) {
+            number = number.substring(0, number.length() - 1);
+        }
+        try {
+            long size = Long.parseLong(number) * unit;
+            if (size > 0) {
+                return size;
+            }
+        } catch (NumberFormatException e) {
+            // fall through to usage
+        }
+        mErr.println("Invalid size '" + value + "'");
+        throw new UsageException();
+    }
+
+    private int parseThreads(String value) {
+        try {
+            int threads = Integer.parseInt(value);
+            if (threads > 0) {
+                return threads;
+            }
+        } catch (NumberFormatException e) {
+            // fall through to usage
+        }
+        mErr.println("Invalid thread count '" + value + "'");
+        throw new UsageException();
+    }
+
     private void usage() {
-        System.err.print(
-            "ApkConfigChecker: Check apk's config v1.0\n" +
-            "Usage: apk-config-checker [args] <file.{dex,apk}>\n" +
+        mErr.print(
+            "ApkConfigChecker: Check apk's config v" + VERSION + "\n" +
+            "Usage: apk-config-checker [args] <file.{dex,apk,aab,apks}|dir|glob>...\n" +
+            "  an app bundle (.aab) or split apk set (.apks) is checked module by module\n" +
             "Args(required):\n" +
-            "  --androidjar={Path to sdk/platforms/android-{version}/androidjar.jar}\n" +
             "  --flavor={flavor name to check}\n" +
-            "  --buildType={build type to check}\n"
+            "  --buildType={build type to check}\n" +
+            "    or\n" +
+            "  --variants={flavor:buildType,...|all} check several variants in one pass, all checks\n" +
+            "                      every variant some annotation declares\n" +
+            "Args(optional):\n" +
+            "  --androidjar={Path to sdk/platforms/android-{version}/androidjar.jar} soot engine:\n" +
+            "                      platform classes, read through an index of the jar kept in\n" +
+            "                      ~/.apk-config-checker/platform; without it they are phantom\n" +
+            "  --platform-index={file} use this index, built from --androidjar if missing\n" +
+            "  --full-androidjar   load --androidjar itself instead of its index\n" +
+            "  --engine={soot,dex,class} soot(default) loads the whole apk into a soot scene, dex reads\n" +
+            "                      annotations and static values straight from the dex files,\n" +
+            "                      class checks javac output before dexing: inputs are class\n" +
+            "                      dirs, .class, .jar and .aar files\n" +
+            "  --lazy-soot         soot engine: resolve only the annotated classes, to their\n" +
+            "                      signatures\n" +
+            "  --max-heap={n[k|m|g]} soot engine: resolve and release the annotated classes in\n" +
+            "                      batches, collecting garbage and shrinking batches near n\n" +
+            "  --threads={n}       worker threads, one dex file each for the dex engine, a share\n" +
+            "                      of the classes for soot (default: cpu count)\n" +
+            "  --cache             dex engine: reuse results of unchanged dex files, from\n" +
+            "                      ~/.apk-config-checker/cache\n" +
+            "  --cache-dir={dir}   same as --cache, in the given directory\n" +
+            "  --cache-max-size={n[k|m|g]} evict least recently used results past this (default: 256m)\n" +
+            "  --manifest={file}   check every file, dir or glob listed in file, one per line\n" +
+            "  --jobs={n}          apks checked at the same time with more than one input\n" +
+            "                      (dex and class engines, default: cpu count)\n" +
+            "  --no-index          dex engine: ignore the Enforce*Value index an apk built with\n" +
+            "                      apk-config-checker-processor has\n" +
+            "  --keep-going        report every failing constraint instead of stopping at the first\n" +
+            "  --report={json,junit}:{file} also write the results to file, may be repeated\n" +
+            "  --metrics={json,prometheus}:{file} write time per phase, classes and bytes read\n" +
+            "                      and peak heap to file, may be repeated\n" +
+            "  --snapshot-dir={dir} write every annotated field of each input to\n" +
+            "                      {dir}/{input name}.snapshot, {bundle name}-{module}.snapshot\n" +
+            "                      for a module of a bundle\n" +
+            "  --mapping={mapping.txt} check and report fields under their names before R8 or\n" +
+            "                      ProGuard, through an index kept in {mapping.txt}.index;\n" +
+            "                      the apk's Enforce*Value index is not used then\n" +
+            "Daemon:\n" +
+            "  --daemon[=port]     keep a checker JVM running on a loopback port\n" +
+            "  --client [args]     run a check in the running daemon, same args and exit codes\n" +
+            "  --stop-daemon       stop the running daemon\n" +
+            "Snapshots:\n" +
+            "  --diff {old.snapshot} {new.snapshot} print the fields added, removed or changed\n"
         );
     }
 
     /**
-     * Checks if input files array contain directories and
-     * adds it's contents to the file list if so.
-     * Otherwise just adds a file to the list.
+     * Expands directories, globs and the manifest given by --manifest into
+     * the files they contain. Plain files are taken as they are.
      *
      * @return a List of file names to process
      */
-    private List<String> collectFileNames(String[] inputFileNames) {
-        List<String> fileNames = new ArrayList<String>();
+    private List<String> collectFileNames(String[] inputFileNames) throws IOException {
+        InputCollector collector = new InputCollector();
+        // a class directory is one input, like a jar
+        collector.setKeepDirectories(ENGINE_CLASS.equals(mEngine));
+        if (mManifest != null) {
+            collector.addManifest(mManifest);
+        }
         for (String inputFileName : inputFileNames) {
-            File file = new File(inputFileName);
-            if (file.isDirectory()) {
-                throw new IllegalArgumentException("Only support file input(dex or apk).");
+            collector.add(inputFileName);
+        }
+        List<String> fileNames = new ArrayList<String>();
+        for (String fileName : collector.getFileNames()) {
+            boolean bundle = !ENGINE_CLASS.equals(mEngine) && AppBundle.isBundle(fileName)
+                    && new File(fileName).isFile();
+            List<String> modules = bundle ? AppBundle.expand(fileName) : Collections.<String>emptyList();
+            if (modules.isEmpty()) {
+                fileNames.add(fileName);
             } else {
-                fileNames.add(inputFileName);
+                fileNames.addAll(modules);
             }
         }
+        if (fileNames.isEmpty()) {
+            throw new IOException(ENGINE_CLASS.equals(mEngine) ? "No class dir, .jar or .aar to check"
+                    : "No .apk, .aab or .dex file to check");
+        }
         return fileNames;
     }
 
@@ -0,0 +1,365 @@
+package com.github.promeg.configchecker;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maps obfuscated class and field names back to the original ones, from an
+ * R8/ProGuard mapping.txt given with --mapping.
+ *
+ * The mapping is not kept on the heap. One streaming pass writes an index
+ * next to it, {mapping}.index, or to {@link #defaultDir()} if the mapping's
+ * dir is read-only, which later runs map read-only as long as the mapping
+ * keeps its size and modification time. Methods, most of a
+ * mapping, are left out; what remains is a record per class with its
+ * fields, found by binary search over a table sorted by obfuscated name:
+ * <pre>
+ * int magic "ACMX", int format version, long mapping size, long mapping
+ * modification time, int class count, int offset of the table, then the
+ * class records: obfuscated name, original name, int field count and
+ * (obfuscated, original) field names sorted by obfuscated name; then the
+ * table, the offsets of the records sorted by obfuscated class name
+ * </pre>
+ * Names are written like {@link AnnotatedFieldCodec#writeString}. Only the
+ * records of classes with annotated fields are ever read, but for the
+ * original class names, which mapping an {@link AnnotationIndex} reads once.
+ */
+final class MappingIndex {
+    /** Bump whenever the index could hold something different for the same mapping. */
+    static final int FORMAT_VERSION = 1;
+    static final String SUFFIX = ".index";
+
+    private static final int MAGIC = 0x41434d58; // "ACMX"
+    private static final int HEADER_SIZE = 32;
+    private static final int COUNT_OFFSET = 24;
+    private static final int TABLE_OFFSET = 28;
+    private static final String ARROW = " -> ";
+
+    private static final Comparator<String[]> BY_OBFUSCATED_NAME = new Comparator<String[]>() {
+        public int compare(String[] a, String[] b) {
+            return a[1].compareTo(b[1]);
+        }
+    };
+
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int table;
+
+    private MappingIndex(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.count = buffer.getInt(COUNT_OFFSET);
+        this.table = buffer.getInt(TABLE_OFFSET);
+    }
+
+    /**
+     * @return the index of mapping, built first if there is none or the mapping changed
+     */
+    static MappingIndex forMapping(File mapping) throws IOException {
+        File index = new File(mapping.getPath() + SUFFIX);
+        ByteBuffer buffer = mapIfCurrent(index, mapping);
+        if (buffer == null && !index.getAbsoluteFile().getParentFile().canWrite()) {
+            // e.g. a mapping in a read-only CI artifact dir
+            index = new File(defaultDir(), mapping.getName() + "-"
+                    + Integer.toHexString(mapping.getAbsolutePath().hashCode()) + SUFFIX);
+            buffer = mapIfCurrent(index, mapping);
+        }
+        if (buffer == null) {
+            File dir = index.getAbsoluteFile().getParentFile();
+            if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+                throw new IOException("Unable to create '" + dir + "'");
+            }
+            build(mapping, index);
+            buffer = mapIfCurrent(index, mapping);
+            if (buffer == null) {
+                throw new IOException("Mapping index '" + index + "' does not match '" + mapping + "'");
+            }
+        }
+        return new MappingIndex(buffer);
+    }
+
+    /**
+     * Where the indexes of mappings in read-only dirs are kept.
+     */
+    static File defaultDir() {
+        return new File(new File(System.getProperty("user.home"), ".apk-config-checker"), "mapping");
+    }
+
+    /**
+     * @return the mapped index, or null if there is none or it is not the index of mapping as it is now
+     */
+    private static ByteBuffer mapIfCurrent(File index, File mapping) throws IOException {
+        if (!index.isFile()) {
+            return null;
+        }
+        ByteBuffer buffer = map(index);
+        return isCurrent(buffer, mapping) ? buffer : null;
+    }
+
+    private static ByteBuffer map(File index) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(index, "r");
+        try {
+            // the mapping stays valid once the file is closed
+            return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static boolean isCurrent(ByteBuffer buffer, File mapping) {
+        return buffer.limit() >= HEADER_SIZE
+                && buffer.getInt(0) == MAGIC
+                && buffer.getInt(4) == FORMAT_VERSION
+                && buffer.getLong(8) == mapping.length()
+                && buffer.getLong(16) == mapping.lastModified()
+                && buffer.getInt(TABLE_OFFSET) + 4L * buffer.getInt(COUNT_OFFSET) == buffer.limit();
+    }
+
+    /**
+     * Writes the index of mapping to index, through a temp file renamed into
+     * place. Only the class names are held in memory meanwhile.
+     */
+    static void build(File mapping, File index) throws IOException {
+        File dir = index.getAbsoluteFile().getParentFile();
+        File temp = File.createTempFile(index.getName(), ".tmp", dir);
+        try {
+            // (offset, obfuscated name) of every class record
+            List<String[]> classes = new ArrayList<String[]>();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            try {
+                out.write(new byte[HEADER_SIZE]);
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(new FileInputStream(mapping), "UTF-8"));
+                try {
+                    String[] currentClass = null;
+                    List<String[]> fields = new ArrayList<String[]>();
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (line.length() == 0 || line.trim().startsWith("#")) {
+                            continue;
+                        }
+                        int arrow = line.indexOf(ARROW);
+                        if (arrow < 0) {
+                            continue;
+                        }
+                        if (!Character.isWhitespace(line.charAt(0))) {
+                            // "com.example.Config -> a.b.c:"
+                            if (currentClass != null) {
+                                classes.add(new String[] {String.valueOf(out.size()), currentClass[1]});
+                                writeClass(out, currentClass, fields);
+                            }
+                            String obfuscated = line.substring(arrow + ARROW.length()).trim();
+                            if (obfuscated.endsWith(":")) {
+                                obfuscated = obfuscated.substring(0, obfuscated.length() - 1);
+                            }
+                            currentClass = new String[] {line.substring(0, arrow).trim(), obfuscated};
+                            fields.clear();
+                        } else if (currentClass != null && line.lastIndexOf('(', arrow) < 0) {
+                            // "    boolean LOG -> a"; methods have a parameter list
+                            String original = line.substring(0, arrow).trim();
+                            fields.add(new String[] {original.substring(original.lastIndexOf(' ') + 1),
+                                    line.substring(arrow + ARROW.length()).trim()});
+                        }
+                    }
+                    if (currentClass != null) {
+                        classes.add(new String[] {String.valueOf(out.size()), currentClass[1]});
+                        writeClass(out, currentClass, fields);
+                    }
+                } finally {
+                    reader.close();
+                }
+                Collections.sort(classes, BY_OBFUSCATED_NAME);
+                int tableOffset = out.size();
+                for (String[] record : classes) {
+                    out.writeInt(Integer.parseInt(record[0]));
+                }
+                // size() sticks at Integer.MAX_VALUE once the int offsets overflow
+                if (out.size() == Integer.MAX_VALUE) {
+                    throw new IOException("Mapping '" + mapping + "' is too large to index");
+                }
+                out.close();
+
+                RandomAccessFile header = new RandomAccessFile(temp, "rw");
+                try {
+                    header.writeInt(MAGIC);
+                    header.writeInt(FORMAT_VERSION);
+                    header.writeLong(mapping.length());
+                    header.writeLong(mapping.lastModified());
+                    header.writeInt(classes.size());
+                    header.writeInt(tableOffset);
+                } finally {
+                    header.close();
+                }
+            } finally {
+                out.close();
+            }
+            if (!temp.renameTo(index)) {
+                // another process may have written it first; replace it, ours matches the mapping
+                if (!index.delete() || !temp.renameTo(index)) {
+                    throw new IOException("Unable to write mapping index '" + index + "'");
+                }
+            }
+        } finally {
+            if (temp.exists()) {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * @param names original and obfuscated class name
+     * @param fields original and obfuscated name of every field
+     */
+    private static void writeClass(DataOutputStream out, String[] names, List<String[]> fields) throws IOException {
+        Collections.sort(fields, BY_OBFUSCATED_NAME);
+        AnnotatedFieldCodec.writeString(out, names[1]);
+        AnnotatedFieldCodec.writeString(out, names[0]);
+        out.writeInt(fields.size());
+        for (String[] field : fields) {
+            AnnotatedFieldCodec.writeString(out, field[1]);
+            AnnotatedFieldCodec.writeString(out, field[0]);
+        }
+    }
+
+    /**
+     * @return the original names of the fields' classes and fields; names
+     * the mapping does not know are kept
+     */
+    List<AnnotatedField> deobfuscate(List<AnnotatedField> fields) throws IOException {
+        List<AnnotatedField> deobfuscated = new ArrayList<AnnotatedField>(fields.size());
+        String className = null;
+        int record = -1;
+        for (AnnotatedField field : fields) {
+            // an engine returns the fields of a class next to each other
+            if (!field.getClassName().equals(className)) {
+                className = field.getClassName();
+                record = findClass(className);
+            }
+            if (record < 0) {
+                deobfuscated.add(field);
+                continue;
+            }
+            deobfuscated.add(new AnnotatedField(readString(skipString(record)),
+                    findField(record, field.getFieldName()), field.getRealValue(), field.getEnforceValues()));
+        }
+        return deobfuscated;
+    }
+
+    /**
+     * The reverse of {@link #deobfuscate}, for an index written before the classes were renamed. The
+     * records are sorted by obfuscated name, so the original name of every class is read once.
+     *
+     * @return index under the obfuscated names of its classes and fields; names the mapping does not
+     * know are kept
+     */
+    AnnotationIndex obfuscate(AnnotationIndex index) throws IOException {
+        Set<String> classNames = new HashSet<String>();
+        for (String descriptor : index.getClassDescriptors()) {
+            classNames.add(DexScanner.toClassName(descriptor));
+        }
+        Map<String, Integer> records = new HashMap<String, Integer>();
+        for (int i = 0; i < count; i++) {
+            int record = buffer.getInt(table + 4 * i);
+            String original = readString(skipString(record));
+            if (classNames.contains(original)) {
+                records.put(original, record);
+            }
+        }
+        AnnotationIndex obfuscated = new AnnotationIndex();
+        for (String descriptor : index.getClassDescriptors()) {
+            Integer record = records.get(DexScanner.toClassName(descriptor));
+            String obfuscatedDescriptor = record == null ? descriptor
+                    : "L" + readString(record).replace('.', '/') + ";";
+            for (Map.Entry<String, List<EnforceValueHolder>> field : index.getFields(descriptor).entrySet()) {
+                String fieldName = record == null ? field.getKey() : findObfuscatedField(record, field.getKey());
+                for (EnforceValueHolder enforceValue : field.getValue()) {
+                    obfuscated.add(obfuscatedDescriptor, fieldName, enforceValue);
+                }
+            }
+        }
+        return obfuscated;
+    }
+
+    /**
+     * @return the offset of the class' record, or -1 if the mapping does not list it
+     */
+    private int findClass(String obfuscated) throws IOException {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int record = buffer.getInt(table + 4 * mid);
+            int order = readString(record).compareTo(obfuscated);
+            if (order < 0) {
+                low = mid + 1;
+            } else if (order > 0) {
+                high = mid - 1;
+            } else {
+                return record;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Fields are few per class, so they are searched in order.
+     *
+     * @return the original name of the field, or obfuscated if the class has no such field
+     */
+    private String findField(int record, String obfuscated) throws IOException {
+        int offset = skipString(skipString(record));
+        int fieldCount = buffer.getInt(offset);
+        offset += 4;
+        for (int i = 0; i < fieldCount; i++) {
+            if (readString(offset).equals(obfuscated)) {
+                return readString(skipString(offset));
+            }
+            offset = skipString(skipString(offset));
+        }
+        return obfuscated;
+    }
+
+    /**
+     * @return the obfuscated name of the field, or original if the class has no such field
+     */
+    private String findObfuscatedField(int record, String original) throws IOException {
+        int offset = skipString(skipString(record));
+        int fieldCount = buffer.getInt(offset);
+        offset += 4;
+        for (int i = 0; i < fieldCount; i++) {
+            if (readString(skipString(offset)).equals(original)) {
+                return readString(offset);
+            }
+            offset = skipString(skipString(offset));
+        }
+        return original;
+    }
+
+    private String readString(int offset) throws IOException {
+        byte[] bytes = new byte[buffer.getInt(offset)];
+        ByteBuffer string = buffer.duplicate();
+        string.position(offset + 4);
+        string.get(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private int skipString(int offset) {
+        return offset + 4 + buffer.getInt(offset);
+    }
+}
@@ -0,0 +1,200 @@
+package com.github.promeg.configchecker;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Where the time of one input's check went: wall and CPU time per phase,
+ * counters, per dex statistics and the peak heap of the process.
+ *
+ * Phases may run on several threads at once, e.g. the dex engine's load and
+ * scan, so their summed times can be larger than the check's wall time.
+ *
+ * The peak heap is the most heap the process used at any sample taken while
+ * the check ran, every {@value #HEAP_SAMPLE_MILLIS} ms. It includes inputs
+ * checked at the same time; the peaks of the heap pools are left alone, as
+ * they belong to the whole process and to whoever else watches them.
+ */
+final class Metrics {
+    static final String PHASE_OPEN = "open";
+    static final String PHASE_EXTRACT = "extract";
+    static final String PHASE_PREFILTER = "prefilter";
+    static final String PHASE_LOAD = "load";
+    static final String PHASE_SCAN = "scan";
+    static final String PHASE_SOOT_LOAD = "soot.loadNecessaryClasses";
+    static final String PHASE_SOOT_RESOLVE_SIGNATURES = "soot.resolveSignatures";
+    static final String PHASE_CHECK = "check";
+
+    static final String COUNTER_BYTES_READ = "bytesRead";
+    static final String COUNTER_CLASSES_LOADED = "classesLoaded";
+    static final String COUNTER_CLASSES_SCANNED = "classesScanned";
+    static final String COUNTER_ANNOTATED_FIELDS = "annotatedFields";
+    static final String COUNTER_CACHED_DEX_FILES = "cachedDexFiles";
+    static final String COUNTER_CLINITS_EVALUATED = "clinitsEvaluated";
+    static final String COUNTER_HEAP_BUDGET_EXCEEDED = "heapBudgetExceeded";
+
+    static final long HEAP_SAMPLE_MILLIS = 10;
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    /** The metrics of the checks in progress, which the heap sampler updates. */
+    private static final Set<Metrics> SAMPLED = new HashSet<Metrics>();
+    /** Runs while SAMPLED is not empty; guarded by SAMPLED. */
+    private static ScheduledExecutorService heapSampler;
+
+    private final Map<String, Phase> phases = new LinkedHashMap<String, Phase>();
+    private final Map<String, Long> counters = new LinkedHashMap<String, Long>();
+    private final List<Dex> dexes = new ArrayList<Dex>();
+    private long peakHeapBytes;
+
+    /**
+     * Starts timing a phase on the current thread; stop the timer on the same thread.
+     */
+    Timer start(String phase) {
+        return new Timer(phase);
+    }
+
+    synchronized void count(String counter, long delta) {
+        Long value = counters.get(counter);
+        counters.put(counter, (value == null ? 0 : value) + delta);
+    }
+
+    /**
+     * @param annotatedFields -1 if the engine cannot tell which dex a field came from
+     */
+    synchronized void addDex(String name, int classesLoaded, int classesScanned, int annotatedFields,
+                             long bytesRead) {
+        dexes.add(new Dex(name, classesLoaded, classesScanned, annotatedFields, bytesRead));
+    }
+
+    /**
+     * Starts sampling the heap use of the process into the peak heap, until {@link #stopHeapSampling()}.
+     */
+    void startHeapSampling() {
+        recordHeap(MEMORY.getHeapMemoryUsage().getUsed());
+        synchronized (SAMPLED) {
+            SAMPLED.add(this);
+            if (heapSampler == null) {
+                heapSampler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "heap-sampler");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+                heapSampler.scheduleAtFixedRate(new Runnable() {
+                    public void run() {
+                        sampleHeap();
+                    }
+                }, HEAP_SAMPLE_MILLIS, HEAP_SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    void stopHeapSampling() {
+        recordHeap(MEMORY.getHeapMemoryUsage().getUsed());
+        synchronized (SAMPLED) {
+            SAMPLED.remove(this);
+            if (SAMPLED.isEmpty() && heapSampler != null) {
+                heapSampler.shutdownNow();
+                heapSampler = null;
+            }
+        }
+    }
+
+    private static void sampleHeap() {
+        long used = MEMORY.getHeapMemoryUsage().getUsed();
+        synchronized (SAMPLED) {
+            for (Metrics metrics : SAMPLED) {
+                metrics.recordHeap(used);
+            }
+        }
+    }
+
+    private synchronized void recordHeap(long used) {
+        peakHeapBytes = Math.max(peakHeapBytes, used);
+    }
+
+    synchronized Map<String, Phase> getPhases() {
+        return Collections.unmodifiableMap(new LinkedHashMap<String, Phase>(phases));
+    }
+
+    synchronized Map<String, Long> getCounters() {
+        return Collections.unmodifiableMap(new LinkedHashMap<String, Long>(counters));
+    }
+
+    synchronized List<Dex> getDexes() {
+        return Collections.unmodifiableList(new ArrayList<Dex>(dexes));
+    }
+
+    synchronized long getPeakHeapBytes() {
+        return peakHeapBytes;
+    }
+
+    private synchronized void add(String name, long wallNanos, long cpuNanos) {
+        Phase phase = phases.get(name);
+        phases.put(name, new Phase(phase == null ? 1 : phase.count + 1,
+                (phase == null ? 0 : phase.wallNanos) + wallNanos, (phase == null ? 0 : phase.cpuNanos) + cpuNanos));
+    }
+
+    private static long cpuTime() {
+        return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : 0;
+    }
+
+    final class Timer {
+        private final String phase;
+        private final long wallStart = System.nanoTime();
+        private final long cpuStart = cpuTime();
+
+        private Timer(String phase) {
+            this.phase = phase;
+        }
+
+        void stop() {
+            add(phase, System.nanoTime() - wallStart, cpuTime() - cpuStart);
+        }
+    }
+
+    static final class Phase {
+        /** How many times the phase ran, e.g. once per dex file. */
+        final int count;
+        final long wallNanos;
+        /** 0 where the JVM cannot measure thread CPU time. */
+        final long cpuNanos;
+
+        Phase(int count, long wallNanos, long cpuNanos) {
+            this.count = count;
+            this.wallNanos = wallNanos;
+            this.cpuNanos = cpuNanos;
+        }
+    }
+
+    static final class Dex {
+        final String name;
+        final int classesLoaded;
+        final int classesScanned;
+        final int annotatedFields;
+        final long bytesRead;
+
+        Dex(String name, int classesLoaded, int classesScanned, int annotatedFields, long bytesRead) {
+            this.name = name;
+            this.classesLoaded = classesLoaded;
+            this.classesScanned = classesScanned;
+            this.annotatedFields = annotatedFields;
+            this.bytesRead = bytesRead;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.github.promeg.configchecker;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * A stripped copy of a platform android.jar for the soot engine. Every class
+ * keeps its name, access flags, superclass and interfaces, but no field,
+ * method or attribute: that is all soot needs of the platform, since the
+ * checker only reads fields of application classes. The index of a 25-40 MB
+ * android.jar takes a few hundred KB.
+ *
+ * Indexes are built once per platform and kept in
+ * ~/.apk-config-checker/platform, named after the platform dir
+ * (android-28) and the size and modification time of its android.jar.
+ * Like {@link ResultCache} entries they are written to a temp file and
+ * renamed into place.
+ */
+final class PlatformIndex {
+    /** Bump whenever the index could keep something different from the same jar. */
+    static final int FORMAT_VERSION = 1;
+
+    private static final int CLASS_MAGIC = 0xcafebabe;
+    private static final Pattern PLATFORM_DIR = Pattern.compile("android-.+");
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    private PlatformIndex() {
+    }
+
+    static File defaultDir() {
+        return new File(new File(System.getProperty("user.home"), ".apk-config-checker"), "platform");
+    }
+
+    /**
+     * @return the index of the android.jar in dir, built first if there is none yet
+     */
+    static File forAndroidJar(File androidJar, File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("Unable to create platform index dir '" + dir + "'");
+        }
+        File index = new File(dir, keyOf(androidJar) + ".jar");
+        if (!index.isFile()) {
+            build(androidJar, index);
+        }
+        return index;
+    }
+
+    /**
+     * @return android-28-{size}-{modification time}-v1, or the jar's name
+     * instead of android-28 if it is not in a platform dir
+     */
+    static String keyOf(File androidJar) {
+        File parent = androidJar.getAbsoluteFile().getParentFile();
+        String platform;
+        if (parent != null && PLATFORM_DIR.matcher(parent.getName()).matches()) {
+            platform = parent.getName();
+        } else {
+            platform = androidJar.getName().replaceFirst("\\.jar$", "");
+        }
+        // a platform update can keep the jar's size, but not its modification time
+        return platform + "-" + androidJar.length() + "-" + Long.toHexString(androidJar.lastModified())
+                + "-v" + Main.VERSION + "." + FORMAT_VERSION;
+    }
+
+    /**
+     * Writes the index of androidJar to index, keeping an existing one if
+     * another process wrote it first.
+     */
+    static void build(File androidJar, File index) throws IOException {
+        File dir = index.getAbsoluteFile().getParentFile();
+        File temp = File.createTempFile(index.getName(), ".tmp", dir);
+        try {
+            ZipFile jar = new ZipFile(androidJar);
+            try {
+                ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+                try {
+                    Enumeration<? extends ZipEntry> entries = jar.entries();
+                    while (entries.hasMoreElements()) {
+                        ZipEntry entry = entries.nextElement();
+                        if (entry.isDirectory() || !entry.getName().endsWith(".class")) {
+                            continue;
+                        }
+                        InputStream in = jar.getInputStream(entry);
+                        byte[] stripped;
+                        try {
+                            stripped = strip(IOUtils.toByteArray(in));
+                        } finally {
+                            in.close();
+                        }
+                        out.putNextEntry(new ZipEntry(entry.getName()));
+                        out.write(stripped);
+                        out.closeEntry();
+                    }
+                } finally {
+                    out.close();
+                }
+            } finally {
+                jar.close();
+            }
+            if (!temp.renameTo(index) && !index.isFile()) {
+                throw new IOException("Unable to write platform index '" + index + "'");
+            }
+        } finally {
+            if (temp.exists()) {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * @return a class file with only the version, access flags, name,
+     * superclass and interfaces of classFile
+     */
+    static byte[] strip(byte[] classFile) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(classFile));
+        if (in.readInt() != CLASS_MAGIC) {
+            throw new IOException("Not a class file");
+        }
+        int minorVersion = in.readUnsignedShort();
+        int majorVersion = in.readUnsignedShort();
+        int constantPoolCount = in.readUnsignedShort();
+        String[] utf8s = new String[constantPoolCount];
+        int[] classNameIndexes = new int[constantPoolCount];
+        for (int i = 1; i < constantPoolCount; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case CONSTANT_UTF8:
+                    utf8s[i] = in.readUTF();
+                    break;
+                case CONSTANT_CLASS:
+                    classNameIndexes[i] = in.readUnsignedShort();
+                    break;
+                case CONSTANT_STRING:
+                case CONSTANT_METHOD_TYPE:
+                case CONSTANT_MODULE:
+                case CONSTANT_PACKAGE:
+                    in.skipBytes(2);
+                    break;
+                case CONSTANT_METHOD_HANDLE:
+                    in.skipBytes(3);
+                    break;
+                case CONSTANT_INTEGER:
+                case CONSTANT_FLOAT:
+                case CONSTANT_FIELDREF:
+                case CONSTANT_METHODREF:
+                case CONSTANT_INTERFACE_METHODREF:
+                case CONSTANT_NAME_AND_TYPE:
+                case CONSTANT_DYNAMIC:
+                case CONSTANT_INVOKE_DYNAMIC:
+                    in.skipBytes(4);
+                    break;
+                case CONSTANT_LONG:
+                case CONSTANT_DOUBLE:
+                    in.skipBytes(8);
+                    // takes two entries
+                    i++;
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+        int accessFlags = in.readUnsignedShort();
+        String thisClass = utf8s[classNameIndexes[in.readUnsignedShort()]];
+        int superIndex = in.readUnsignedShort();
+        String superClass = superIndex == 0 ? null : utf8s[classNameIndexes[superIndex]];
+        String[] interfaces = new String[in.readUnsignedShort()];
+        for (int i = 0; i < interfaces.length; i++) {
+            interfaces[i] = utf8s[classNameIndexes[in.readUnsignedShort()]];
+        }
+
+        // every class name is a Utf8 followed by the Class entry pointing at it
+        Map<String, Integer> classIndexes = new LinkedHashMap<String, Integer>();
+        classIndexes.put(thisClass, 2);
+        if (superClass != null && !classIndexes.containsKey(superClass)) {
+            classIndexes.put(superClass, 2 * classIndexes.size() + 2);
+        }
+        for (String iface : interfaces) {
+            if (!classIndexes.containsKey(iface)) {
+                classIndexes.put(iface, 2 * classIndexes.size() + 2);
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + 32 * classIndexes.size());
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(CLASS_MAGIC);
+        out.writeShort(minorVersion);
+        out.writeShort(majorVersion);
+        out.writeShort(2 * classIndexes.size() + 1);
+        for (Map.Entry<String, Integer> entry : classIndexes.entrySet()) {
+            out.writeByte(CONSTANT_UTF8);
+            out.writeUTF(entry.getKey());
+            out.writeByte(CONSTANT_CLASS);
+            out.writeShort(entry.getValue() - 1);
+        }
+        out.writeShort(accessFlags);
+        out.writeShort(classIndexes.get(thisClass));
+        out.writeShort(superClass == null ? 0 : classIndexes.get(superClass));
+        out.writeShort(interfaces.length);
+        for (String iface : interfaces) {
+            out.writeShort(classIndexes.get(iface));
+        }
+        // no fields, methods or attributes
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.close();
+        return bytes.toByteArray();
+    }
+}
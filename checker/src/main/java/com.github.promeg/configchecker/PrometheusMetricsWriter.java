@@ -0,0 +1,91 @@
+package com.github.promeg.configchecker;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Writes the {@link Metrics} of every check in the Prometheus text format,
+ * e.g. for the node exporter's textfile collector. Every sample is labelled
+ * with its input. The format groups samples by metric, so the samples of a
+ * report are added to their metric's section as it arrives, and the file is
+ * only written on {@link #close()}.
+ */
+final class PrometheusMetricsWriter implements ReportWriter {
+    private static final String PREFIX = "apk_config_checker_";
+
+    private final File file;
+    private final StringBuilder checkSeconds = new StringBuilder();
+    private final StringBuilder checkStatus = new StringBuilder();
+    private final StringBuilder peakHeapBytes = new StringBuilder();
+    private final StringBuilder phaseWallSeconds = new StringBuilder();
+    private final StringBuilder phaseCpuSeconds = new StringBuilder();
+    private final StringBuilder count = new StringBuilder();
+
+    PrometheusMetricsWriter(File file) {
+        this.file = file;
+        header(checkSeconds, "check_seconds", "Wall time of the whole check.");
+        header(checkStatus, "check_status", "1 for the status the check ended with.");
+        header(peakHeapBytes, "peak_heap_bytes", "Peak sampled heap use of the process during the check.");
+        header(phaseWallSeconds, "phase_wall_seconds", "Wall time per phase, summed over the threads running it.");
+        header(phaseCpuSeconds, "phase_cpu_seconds", "CPU time per phase, summed over the threads running it.");
+        header(count, "count", "Classes loaded and scanned, annotated fields found, bytes read.");
+    }
+
+    public synchronized void write(CheckReport report) {
+        Metrics metrics = report.getMetrics();
+        sample(checkSeconds, "check_seconds", labels(report, null, null), report.getMillis() / 1e3);
+        sample(checkStatus, "check_status", labels(report, "status", report.getStatus().name()), 1);
+        sample(peakHeapBytes, "peak_heap_bytes", labels(report, null, null), metrics.getPeakHeapBytes());
+        for (Map.Entry<String, Metrics.Phase> entry : metrics.getPhases().entrySet()) {
+            sample(phaseWallSeconds, "phase_wall_seconds", labels(report, "phase", entry.getKey()),
+                    entry.getValue().wallNanos / 1e9);
+            sample(phaseCpuSeconds, "phase_cpu_seconds", labels(report, "phase", entry.getKey()),
+                    entry.getValue().cpuNanos / 1e9);
+        }
+        for (Map.Entry<String, Long> entry : metrics.getCounters().entrySet()) {
+            sample(count, "count", labels(report, "counter", entry.getKey()), entry.getValue());
+        }
+    }
+
+    public synchronized void close() throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.append(checkSeconds).append(checkStatus).append(peakHeapBytes)
+                    .append(phaseWallSeconds).append(phaseCpuSeconds).append(count);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static void header(StringBuilder text, String name, String help) {
+        text.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(PREFIX).append(name).append(" gauge\n");
+    }
+
+    private static void sample(StringBuilder text, String name, String labels, double value) {
+        text.append(PREFIX).append(name).append(labels).append(' ');
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            text.append((long) value);
+        } else {
+            text.append(String.format(Locale.US, "%.6f", value));
+        }
+        text.append('\n');
+    }
+
+    private static String labels(CheckReport report, String name, String value) {
+        StringBuilder labels = new StringBuilder("{input=").append(quote(report.getInput()));
+        if (name != null) {
+            labels.append(',').append(name).append('=').append(quote(value));
+        }
+        return labels.append('}').toString();
+    }
+
+    private static String quote(String value) {
+        return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + '"';
+    }
+}
@@ -0,0 +1,39 @@
+package com.github.promeg.configchecker;
+
+/**
+ * The value a field really holds in the packaged dex.
+ */
+class RealValueHolder extends TypedValue {
+    RealValueHolder(ValueType type, long bits, String string) {
+        super(type, bits, string);
+    }
+
+    static RealValueHolder ofBoolean(boolean value) {
+        return new RealValueHolder(ValueType.BOOLEAN, bitsOf(value), null);
+    }
+
+    static RealValueHolder ofInt(int value) {
+        return new RealValueHolder(ValueType.INT, value, null);
+    }
+
+    static RealValueHolder ofLong(long value) {
+        return new RealValueHolder(ValueType.LONG, value, null);
+    }
+
+    static RealValueHolder ofFloat(float value) {
+        return new RealValueHolder(ValueType.FLOAT, bitsOf(value), null);
+    }
+
+    static RealValueHolder ofDouble(double value) {
+        return new RealValueHolder(ValueType.DOUBLE, bitsOf(value), null);
+    }
+
+    static RealValueHolder ofString(String value) {
+        return new RealValueHolder(ValueType.STRING, 0, value);
+    }
+
+    @Override
+    public String toString() {
+        return valueString();
+    }
+}
@@ -0,0 +1,13 @@
+package com.github.promeg.configchecker;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Writes {@link CheckReport}s in a machine-readable format, one section per
+ * input, in the order the inputs were given. Nothing is complete until
+ * {@link #close()} is called.
+ */
+interface ReportWriter extends Closeable {
+    void write(CheckReport report) throws IOException;
+}
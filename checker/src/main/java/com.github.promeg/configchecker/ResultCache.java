@@ -0,0 +1,179 @@
+package com.github.promeg.configchecker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * On-disk cache of dex scan results, keyed by the SHA-1 signature in the dex
+ * header and the checker version. An unchanged dex (a library-only
+ * classes2.dex, say) is answered from here without being parsed.
+ *
+ * Entries are written to a temp file and renamed into place, so readers in
+ * other processes only ever see complete entries. A hit refreshes the entry's
+ * modification time; once the cache grows past its size bound the least
+ * recently used entries are deleted, under a file lock shared by every
+ * process using the directory.
+ */
+final class ResultCache {
+    /** Bump whenever the scanner could extract something different from the same dex. */
+    static final int FORMAT_VERSION = 2;
+
+    private static final int MAGIC = 0x41434331; // "ACC1"
+    private static final int SIGNATURE_OFFSET = 12;
+    private static final int SIGNATURE_SIZE = 20;
+    static final int HEADER_SIZE = SIGNATURE_OFFSET + SIGNATURE_SIZE;
+    private static final String ENTRY_SUFFIX = ".fields";
+    private static final String LOCK_FILE = ".lock";
+
+    /** FileLock is per process; this keeps threads of one JVM from overlapping. */
+    private static final Object EVICTION_LOCK = new Object();
+
+    private final File dir;
+    private final long maxBytes;
+
+    ResultCache(File dir, long maxBytes) throws IOException {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("Unable to create cache dir '" + dir + "'");
+        }
+    }
+
+    static File defaultDir() {
+        return new File(new File(System.getProperty("user.home"), ".apk-config-checker"), "cache");
+    }
+
+    /**
+     * @param header at least the first {@link #HEADER_SIZE} bytes of a dex
+     * @return the cache key of the dex
+     */
+    static String keyOf(ByteBuffer header) {
+        StringBuilder key = new StringBuilder(SIGNATURE_SIZE * 2 + 16);
+        for (int i = 0; i < SIGNATURE_SIZE; i++) {
+            int b = header.get(SIGNATURE_OFFSET + i) & 0xff;
+            key.append(Character.forDigit(b >> 4, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return key.append("-v").append(Main.VERSION).append('.').append(FORMAT_VERSION).toString();
+    }
+
+    /**
+     * @return the cached fields, or null on a miss or an unreadable entry
+     */
+    List<AnnotatedField> get(String key) {
+        File entry = new File(dir, key + ENTRY_SUFFIX);
+        if (!entry.isFile()) {
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(entry)));
+            try {
+                if (in.readInt() != MAGIC || !key.equals(AnnotatedFieldCodec.readString(in))) {
+                    return null;
+                }
+                List<AnnotatedField> fields = AnnotatedFieldCodec.read(in);
+                entry.setLastModified(System.currentTimeMillis());
+                return fields;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // truncated or corrupt, or evicted while reading: rescan and overwrite
+            return null;
+        }
+    }
+
+    void put(String key, List<AnnotatedField> fields) throws IOException {
+        File temp = File.createTempFile(key, ".tmp", dir);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            try {
+                out.writeInt(MAGIC);
+                AnnotatedFieldCodec.writeString(out, key);
+                AnnotatedFieldCodec.write(out, fields);
+            } finally {
+                out.close();
+            }
+            File entry = new File(dir, key + ENTRY_SUFFIX);
+            if (!temp.renameTo(entry)) {
+                // another process may have won the race, its entry is just as good
+                if (!entry.isFile()) {
+                    throw new IOException("Unable to write cache entry '" + entry + "'");
+                }
+            }
+        } finally {
+            if (temp.exists()) {
+                temp.delete();
+            }
+        }
+        evictIfNeeded();
+    }
+
+    /**
+     * Deletes least recently used entries until the cache fits in its bound.
+     */
+    private void evictIfNeeded() throws IOException {
+        synchronized (EVICTION_LOCK) {
+            RandomAccessFile lockFile = new RandomAccessFile(new File(dir, LOCK_FILE), "rw");
+            try {
+                FileChannel channel = lockFile.getChannel();
+                FileLock lock = channel.lock();
+                try {
+                    evict();
+                } finally {
+                    lock.release();
+                }
+            } finally {
+                lockFile.close();
+            }
+        }
+    }
+
+    private void evict() {
+        File[] entries = dir.listFiles();
+        if (entries == null) {
+            return;
+        }
+        long total = 0;
+        int count = 0;
+        final long[] lastModified = new long[entries.length];
+        Integer[] order = new Integer[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            if (entries[i].getName().endsWith(ENTRY_SUFFIX)) {
+                total += entries[i].length();
+                lastModified[count] = entries[i].lastModified();
+                entries[count] = entries[i];
+                order[count] = count;
+                count++;
+            }
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+        Arrays.sort(order, 0, count, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                long diff = lastModified[a] - lastModified[b];
+                return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+            }
+        });
+        for (int i = 0; i < count && total > maxBytes; i++) {
+            File entry = entries[order[i]];
+            long length = entry.length();
+            if (entry.delete()) {
+                total -= length;
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.github.promeg.configchecker;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * The --diff command: compares two {@link ConfigSnapshot}s in one
+ * merge-join pass over their sorted fields and prints every field that was
+ * added, removed or changed. Only changed fields are decoded, the others
+ * are compared by their bytes.
+ * <pre>
+ * + com.example.Config.NEW_FLAG = true  [production:release=false]
+ * - com.example.Config.OLD_URL = "http://..."  [...]
+ * ~ com.example.Config.LOG = false -> true  [production:release=false]
+ * </pre>
+ */
+final class SnapshotDiff {
+    private final PrintStream out;
+    private int added;
+    private int removed;
+    private int changed;
+    private int unchanged;
+
+    SnapshotDiff(PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * @param args the old and the new snapshot
+     * @return the exit code, 0 whether or not anything changed
+     */
+    static int run(String[] args, PrintStream out, PrintStream err) {
+        if (args.length != 2) {
+            err.println("Usage: java -jar checker.jar --diff {old.snapshot} {new.snapshot}");
+            return Main.EXIT_USAGE;
+        }
+        try {
+            new SnapshotDiff(out).diff(ConfigSnapshot.open(new File(args[0])),
+                    ConfigSnapshot.open(new File(args[1])));
+            return BatchChecker.EXIT_OK;
+        } catch (IOException e) {
+            err.println("Failed: " + e);
+            return BatchChecker.EXIT_ERROR;
+        }
+    }
+
+    void diff(ConfigSnapshot older, ConfigSnapshot newer) throws IOException {
+        out.println("--- " + older.getFile());
+        out.println("+++ " + newer.getFile());
+        int i = 0;
+        int j = 0;
+        while (i < older.size() && j < newer.size()) {
+            int order = older.compareNames(i, newer, j);
+            if (order < 0) {
+                print('-', older.get(i++));
+                removed++;
+            } else if (order > 0) {
+                print('+', newer.get(j++));
+                added++;
+            } else {
+                if (older.sameValues(i, newer, j)) {
+                    unchanged++;
+                } else {
+                    printChange(older.get(i), newer.get(j));
+                    changed++;
+                }
+                i++;
+                j++;
+            }
+        }
+        for (; i < older.size(); i++) {
+            print('-', older.get(i));
+            removed++;
+        }
+        for (; j < newer.size(); j++) {
+            print('+', newer.get(j));
+            added++;
+        }
+        out.println(added + " added, " + removed + " removed, " + changed + " changed, "
+                + unchanged + " unchanged");
+    }
+
+    private void print(char mark, AnnotatedField field) {
+        out.println(mark + " " + field.getName() + " = " + valueOf(field.getRealValue()) + "  "
+                + constraintsOf(field.getEnforceValues()));
+    }
+
+    private void printChange(AnnotatedField older, AnnotatedField newer) {
+        String olderConstraints = constraintsOf(older.getEnforceValues());
+        String newerConstraints = constraintsOf(newer.getEnforceValues());
+        StringBuilder line = new StringBuilder("~ ").append(newer.getName()).append(" = ");
+        String olderValue = valueOf(older.getRealValue());
+        String newerValue = valueOf(newer.getRealValue());
+        line.append(olderValue.equals(newerValue) ? newerValue : olderValue + " -> " + newerValue);
+        line.append("  ");
+        line.append(olderConstraints.equals(newerConstraints)
+                ? newerConstraints : olderConstraints + " -> " + newerConstraints);
+        out.println(line);
+    }
+
+    private static String valueOf(RealValueHolder value) {
+        if (value == null) {
+            return "(no static value)";
+        }
+        return value.getType() == ValueType.STRING ? "\"" + value + "\"" : value.toString();
+    }
+
+    /**
+     * @return [flavor:buildType=value, ...]
+     */
+    private static String constraintsOf(List<EnforceValueHolder> enforceValues) {
+        StringBuilder constraints = new StringBuilder("[");
+        for (EnforceValueHolder enforceValue : enforceValues) {
+            if (constraints.length() > 1) {
+                constraints.append(", ");
+            }
+            constraints.append(enforceValue.getFlavor()).append(':').append(enforceValue.getBuildType())
+                    .append('=').append(enforceValue.valueString());
+        }
+        return constraints.append(']').toString();
+    }
+}
@@ -0,0 +1,58 @@
+package com.github.promeg.configchecker;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a {@link ConfigSnapshot} per input into a directory, named after
+ * the input: App-7.4.0.apk gives App-7.4.0.snapshot, the base module of
+ * app.aab app-base.snapshot. Inputs that could not be scanned get none.
+ */
+final class SnapshotWriter implements ReportWriter {
+    private final File dir;
+
+    /**
+     * @param inputs every input of the run, none of which may overwrite the snapshot of another
+     */
+    SnapshotWriter(File dir, List<String> inputs) throws IOException {
+        Map<String, String> inputsByName = new HashMap<String, String>();
+        for (String input : inputs) {
+            String other = inputsByName.put(nameOf(input), input);
+            if (other != null) {
+                throw new IOException("'" + other + "' and '" + input + "' would both be written to '"
+                        + new File(dir, nameOf(input) + ConfigSnapshot.SUFFIX) + "'");
+            }
+        }
+        this.dir = dir;
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("Unable to create snapshot dir '" + dir + "'");
+        }
+    }
+
+    public void write(CheckReport report) throws IOException {
+        if (report.getFields() == null) {
+            return;
+        }
+        ConfigSnapshot.write(new File(dir, nameOf(report.getInput()) + ConfigSnapshot.SUFFIX), report.getFields());
+    }
+
+    /**
+     * @return the input's file name without extension, followed by "-{module}" for a module of a bundle
+     */
+    static String nameOf(String input) {
+        String module = AppBundle.moduleOf(input);
+        String file = module != null ? AppBundle.bundleOf(input) : input;
+        String name = new File(file).getName();
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) {
+            name = name.substring(0, dot);
+        }
+        return module != null ? name + "-" + module : name;
+    }
+
+    public void close() {
+    }
+}
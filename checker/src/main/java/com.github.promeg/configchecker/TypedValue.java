@@ -0,0 +1,138 @@
+package com.github.promeg.configchecker;
+
+import java.io.PrintStream;
+
+/**
+ * A constant of one {@link ValueType}, held in primitive slots so values can
+ * be compared without boxing.
+ *
+ * Booleans (as 0 or 1), ints and longs live in {@link #bits}, floats and
+ * doubles as their canonical bit patterns, so comparing bits has the
+ * semantics of {@link Float#equals} and {@link Double#equals}. Strings live
+ * in {@link #string}.
+ */
+abstract class TypedValue {
+    final ValueType type;
+    final long bits;
+    final String string;
+
+    TypedValue(ValueType type, long bits, String string) {
+        if (type == null || (type == ValueType.STRING) != (string != null)) {
+            throw new IllegalArgumentException("Bad " + type + " value");
+        }
+        this.type = type;
+        this.bits = bits;
+        this.string = string;
+    }
+
+    static long bitsOf(boolean value) {
+        return value ? 1 : 0;
+    }
+
+    static long bitsOf(float value) {
+        return Float.floatToIntBits(value);
+    }
+
+    static long bitsOf(double value) {
+        return Double.doubleToLongBits(value);
+    }
+
+    ValueType getType() {
+        return type;
+    }
+
+    boolean sameValue(TypedValue other) {
+        return type == other.type && bits == other.bits && (string == null || string.equals(other.string));
+    }
+
+    boolean getBoolean() {
+        return bits != 0;
+    }
+
+    int getInt() {
+        return (int) bits;
+    }
+
+    long getLong() {
+        return bits;
+    }
+
+    float getFloat() {
+        return Float.intBitsToFloat((int) bits);
+    }
+
+    double getDouble() {
+        return Double.longBitsToDouble(bits);
+    }
+
+    String getString() {
+        return string;
+    }
+
+    /**
+     * Boxes the value, for writing reports.
+     */
+    public Object getValue() {
+        switch (type) {
+            case BOOLEAN:
+                return Boolean.valueOf(getBoolean());
+            case INT:
+                return Integer.valueOf(getInt());
+            case LONG:
+                return Long.valueOf(getLong());
+            case FLOAT:
+                return Float.valueOf(getFloat());
+            case DOUBLE:
+                return Double.valueOf(getDouble());
+            default:
+                return string;
+        }
+    }
+
+    /**
+     * Prints the value the way its boxed form's toString() would.
+     */
+    void printValue(PrintStream out) {
+        switch (type) {
+            case BOOLEAN:
+                out.print(getBoolean());
+                break;
+            case INT:
+                out.print(getInt());
+                break;
+            case LONG:
+                out.print(getLong());
+                break;
+            case FLOAT:
+                out.print(getFloat());
+                break;
+            case DOUBLE:
+                out.print(getDouble());
+                break;
+            default:
+                out.print(string);
+                break;
+        }
+    }
+
+    String valueString() {
+        switch (type) {
+            case BOOLEAN:
+                return String.valueOf(getBoolean());
+            case INT:
+                return String.valueOf(getInt());
+            case LONG:
+                return String.valueOf(getLong());
+            case FLOAT:
+                return String.valueOf(getFloat());
+            case DOUBLE:
+                return String.valueOf(getDouble());
+            default:
+                return string;
+        }
+    }
+
+    public ValueType getValueType() {
+        return type;
+    }
+}
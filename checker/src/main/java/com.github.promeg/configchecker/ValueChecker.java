@@ -0,0 +1,102 @@
+package com.github.promeg.configchecker;
+
+import java.io.PrintStream;
+
+/**
+ * Compares a field's real value with one Enforce*Value annotation, for the
+ * flavor and build type being checked. Shared by every scan engine.
+ */
+class ValueChecker {
+    /**
+     * What comparing one field with one annotation came to.
+     */
+    enum Outcome {
+        /** The annotation is for another flavor or build type. */
+        NOT_APPLICABLE,
+        /** The field has no constant value to compare. */
+        NO_VALUE,
+        PASS,
+        FAIL,
+        TYPE_MISMATCH,
+        /** The annotation index lists the field, but no dex file has it. */
+        MISSING
+    }
+
+    private final String targetFlavor;
+    private final String targetBuildType;
+
+    ValueChecker(String targetFlavor, String targetBuildType) {
+        this.targetFlavor = targetFlavor;
+        this.targetBuildType = targetBuildType;
+    }
+
+    Outcome evaluate(RealValueHolder realValueHolder, EnforceValueHolder enforceValueHolder) {
+        if (realValueHolder == null || enforceValueHolder == null) {
+            return Outcome.NO_VALUE;
+        }
+        if (!typesMatch(realValueHolder, enforceValueHolder)) {
+            return Outcome.TYPE_MISMATCH;
+        }
+        if (!targetFlavor.equals(enforceValueHolder.getFlavor())) {
+            // flavor doesn't match, no need to check value
+            return Outcome.NOT_APPLICABLE;
+        }
+        if (!targetBuildType.equals(enforceValueHolder.getBuildType())) {
+            // build type doesn't match, no need to check value
+            return Outcome.NOT_APPLICABLE;
+        }
+        return realValueHolder.sameValue(enforceValueHolder) ? Outcome.PASS : Outcome.FAIL;
+    }
+
+    /**
+     * @return whether the annotation is for the flavor and build type being checked
+     */
+    boolean applies(EnforceValueHolder enforceValueHolder) {
+        return targetFlavor.equals(enforceValueHolder.getFlavor())
+                && targetBuildType.equals(enforceValueHolder.getBuildType());
+    }
+
+    /**
+     * A field whose type does not match its annotation is wrong for every
+     * variant, so this is checked regardless of flavor and build type.
+     */
+    static boolean typesMatch(RealValueHolder realValueHolder, EnforceValueHolder enforceValueHolder) {
+        return realValueHolder == null || enforceValueHolder == null
+                || realValueHolder.getValueType() == enforceValueHolder.getValueType();
+    }
+
+    /**
+     * Prints the pass line piece by piece, so a passing constraint never
+     * builds a message string.
+     *
+     * @param fieldName declaring class and field name, e.g. "com.example.Config.LOG_DEBUG"
+     */
+    static void printPass(PrintStream out, String fieldName, RealValueHolder realValueHolder,
+                          EnforceValueHolder enforceValueHolder) {
+        out.print("Enforce value pass >>>>>>> Filed:  ");
+        out.print(fieldName);
+        out.print('=');
+        realValueHolder.printValue(out);
+        out.print("     ");
+        enforceValueHolder.print(out);
+        out.println();
+    }
+
+    static String failMessage(String fieldName, RealValueHolder realValueHolder,
+                              EnforceValueHolder enforceValueHolder) {
+        return "Enforce value fail <<<<<< Filed:  " + fieldName + "=" + realValueHolder + "     " + enforceValueHolder;
+    }
+
+    static String noValueMessage(String fieldName, EnforceValueHolder enforceValueHolder) {
+        return "Enforce value skipped ====== Filed:  " + fieldName + " has no known value     " + enforceValueHolder;
+    }
+
+    static String missingMessage(String fieldName, EnforceValueHolder enforceValueHolder) {
+        return "Enforce value fail <<<<<< Filed:  " + fieldName + " is missing     " + enforceValueHolder;
+    }
+
+    static String typeMismatchMessage(RealValueHolder realValueHolder, EnforceValueHolder enforceValueHolder) {
+        return String.format("Enforce value fail <<<<<< Filed type: %s does not match Annotation type: %s!",
+                realValueHolder.getValueType(), enforceValueHolder.getValueType());
+    }
+}
@@ -0,0 +1,58 @@
+package com.github.promeg.configchecker;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The type of a constant field value or of an Enforce*Value annotation's
+ * "value" element, with the annotation that enforces it.
+ */
+enum ValueType {
+    BOOLEAN(Boolean.class, EnforceBooleanValue.class),
+    INT(Integer.class, EnforceIntValue.class),
+    LONG(Long.class, EnforceLongValue.class),
+    FLOAT(Float.class, EnforceFloatValue.class),
+    DOUBLE(Double.class, EnforceDoubleValue.class),
+    STRING(String.class, EnforceStringValue.class);
+
+    /** Enforcer annotation descriptor to the type it enforces. */
+    private static final Map<String, ValueType> BY_ANNOTATION = new HashMap<String, ValueType>();
+
+    static {
+        for (ValueType type : values()) {
+            BY_ANNOTATION.put(type.annotationDescriptor, type);
+        }
+    }
+
+    private final String description;
+    private final String annotationDescriptor;
+
+    ValueType(Class<?> boxedType, Class<?> annotationClass) {
+        description = boxedType.toString();
+        annotationDescriptor = "L" + annotationClass.getName().replace('.', '/') + ";";
+    }
+
+    /**
+     * @param descriptor an annotation type descriptor, e.g.
+     *                   "Lcom/github/promeg/configchecker/EnforceIntValue;"
+     * @return the type that annotation enforces, or null if it is no enforcer annotation
+     */
+    static ValueType forAnnotation(String descriptor) {
+        return BY_ANNOTATION.get(descriptor);
+    }
+
+    /**
+     * @return the descriptor of the annotation enforcing this type
+     */
+    String getAnnotationDescriptor() {
+        return annotationDescriptor;
+    }
+
+    /**
+     * The boxed class as printed in type mismatch messages, e.g. "class java.lang.Integer".
+     */
+    @Override
+    public String toString() {
+        return description;
+    }
+}
@@ -0,0 +1,81 @@
+package com.github.promeg.configchecker;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A flavor and build type combination, as named by the Enforce*Value annotations.
+ */
+final class Variant implements Comparable<Variant> {
+    private final String flavor;
+    private final String buildType;
+
+    Variant(String flavor, String buildType) {
+        this.flavor = flavor;
+        this.buildType = buildType;
+    }
+
+    /**
+     * Parses a comma separated list of "flavor:buildType" pairs.
+     *
+     * @throws IllegalArgumentException if a pair is malformed
+     */
+    static List<Variant> parseList(String list) {
+        List<Variant> variants = new ArrayList<Variant>();
+        for (String pair : list.split(",")) {
+            int colon = pair.indexOf(':');
+            if (colon <= 0 || colon == pair.length() - 1) {
+                throw new IllegalArgumentException("Expected flavor:buildType, got '" + pair + "'");
+            }
+            Variant variant = new Variant(pair.substring(0, colon).trim(), pair.substring(colon + 1).trim());
+            if (!variants.contains(variant)) {
+                variants.add(variant);
+            }
+        }
+        return variants;
+    }
+
+    String getFlavor() {
+        return flavor;
+    }
+
+    String getBuildType() {
+        return buildType;
+    }
+
+    public int compareTo(Variant other) {
+        int result = compare(flavor, other.flavor);
+        return result != 0 ? result : compare(buildType, other.buildType);
+    }
+
+    private static int compare(String a, String b) {
+        if (a == null) {
+            return b == null ? 0 : -1;
+        }
+        return b == null ? 1 : a.compareTo(b);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Variant)) {
+            return false;
+        }
+        Variant variant = (Variant) o;
+        return (flavor != null ? flavor.equals(variant.flavor) : variant.flavor == null)
+                && (buildType != null ? buildType.equals(variant.buildType) : variant.buildType == null);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = flavor != null ? flavor.hashCode() : 0;
+        return 31 * result + (buildType != null ? buildType.hashCode() : 0);
+    }
+
+    @Override
+    public String toString() {
+        return flavor + ":" + buildType;
+    }
+}
@@ -0,0 +1,183 @@
+package com.github.promeg.configchecker;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Checks the annotated fields of an apk against one or more variants.
+ *
+ * The fields are extracted once by an engine; their constraints are then
+ * grouped by (flavor, buildType) and every group is checked in the same pass.
+ * With a single variant the output is the same as a plain flavor/build type
+ * check. With several, each variant gets its own section and a failing variant
+ * does not stop the others; all failures are reported at the end.
+ *
+ * By default a variant stops at its first failure. In keep-going mode every
+ * constraint is evaluated and every failure is printed before the check fails.
+ */
+final class VariantChecker {
+    private final List<Variant> variants;
+    private final PrintStream out;
+    private boolean keepGoing;
+    private CheckReport report;
+
+    /**
+     * @param variants the variants to check, or null for every variant some
+     *                 annotation declares
+     */
+    VariantChecker(List<Variant> variants, PrintStream out) {
+        this.variants = variants;
+        this.out = out;
+    }
+
+    void setKeepGoing(boolean keepGoing) {
+        this.keepGoing = keepGoing;
+    }
+
+    /**
+     * @param report receives the outcome of every evaluated constraint
+     */
+    void setReport(CheckReport report) {
+        this.report = report;
+    }
+
+    /**
+     * @return a description for the "prepare...." line
+     */
+    String describe() {
+        if (variants == null) {
+            return "all declared variants";
+        } else if (variants.size() == 1) {
+            Variant variant = variants.get(0);
+            return "flavor: " + variant.getFlavor() + "   build type: " + variant.getBuildType();
+        }
+        return "variants: " + variants;
+    }
+
+    void check(List<AnnotatedField> fields) {
+        check(fields, Collections.<AnnotatedField>emptyList());
+    }
+
+    /**
+     * @param missing fields the annotation index lists but no dex file has,
+     *                they fail every variant, like a type mismatch
+     */
+    void check(List<AnnotatedField> fields, List<AnnotatedField> missing) {
+        boolean single = variants != null && variants.size() == 1;
+        List<String> failures = new ArrayList<String>();
+        if (report != null) {
+            report.setFields(fields);
+        }
+
+        for (AnnotatedField field : missing) {
+            for (EnforceValueHolder enforceValue : field.getEnforceValues()) {
+                String message = ValueChecker.missingMessage(field.getName(), enforceValue);
+                record(new Variant(enforceValue.getFlavor(), enforceValue.getBuildType()), field, enforceValue,
+                        ValueChecker.Outcome.MISSING);
+                if (!keepGoing) {
+                    throw new ConfigCheckFailException(message);
+                }
+                out.println(message);
+                failures.add(message);
+            }
+        }
+
+        Map<Variant, List<Constraint>> groups = new TreeMap<Variant, List<Constraint>>();
+        for (AnnotatedField field : fields) {
+            for (EnforceValueHolder enforceValue : field.getEnforceValues()) {
+                Variant variant = new Variant(enforceValue.getFlavor(), enforceValue.getBuildType());
+                if (!ValueChecker.typesMatch(field.getRealValue(), enforceValue)) {
+                    String message = ValueChecker.typeMismatchMessage(field.getRealValue(), enforceValue);
+                    record(variant, field, enforceValue, ValueChecker.Outcome.TYPE_MISMATCH);
+                    if (!keepGoing) {
+                        throw new ConfigCheckFailException(message);
+                    }
+                    out.println(message + "  " + field.getName());
+                    failures.add(message + "  " + field.getName());
+                    continue;
+                }
+                List<Constraint> group = groups.get(variant);
+                if (group == null) {
+                    group = new ArrayList<Constraint>();
+                    groups.put(variant, group);
+                }
+                group.add(new Constraint(field, enforceValue));
+            }
+        }
+
+        List<Variant> checked = variants != null ? variants : new ArrayList<Variant>(groups.keySet());
+        int failedVariants = 0;
+        for (Variant variant : checked) {
+            if (!single) {
+                out.println("Variant " + variant + "  ================");
+            }
+            List<Constraint> group = groups.get(variant);
+            if (group == null) {
+                group = Collections.emptyList();
+            }
+            int failuresBefore = failures.size();
+            ValueChecker valueChecker = new ValueChecker(variant.getFlavor(), variant.getBuildType());
+            for (Constraint constraint : group) {
+                AnnotatedField field = constraint.field;
+                ValueChecker.Outcome outcome = valueChecker.evaluate(field.getRealValue(), constraint.enforceValue);
+                record(variant, field, constraint.enforceValue, outcome);
+                if (outcome == ValueChecker.Outcome.PASS) {
+                    ValueChecker.printPass(out, field.getName(), field.getRealValue(), constraint.enforceValue);
+                } else if (outcome == ValueChecker.Outcome.NO_VALUE && valueChecker.applies(constraint.enforceValue)) {
+                    out.println(ValueChecker.noValueMessage(field.getName(), constraint.enforceValue));
+                } else if (outcome == ValueChecker.Outcome.FAIL) {
+                    String message = ValueChecker.failMessage(field.getName(), field.getRealValue(),
+                            constraint.enforceValue);
+                    if (single && !keepGoing) {
+                        throw new ConfigCheckFailException(message);
+                    }
+                    out.println(message);
+                    failures.add(single ? message : variant + ": " + message);
+                    if (!keepGoing) {
+                        break;
+                    }
+                }
+            }
+            if (failures.size() > failuresBefore) {
+                failedVariants++;
+            }
+            if (!single) {
+                out.println("Variant " + variant + (failures.size() > failuresBefore ? " failed, " : " passed, ")
+                        + group.size() + " constraints");
+            }
+        }
+
+        if (!failures.isEmpty()) {
+            StringBuilder message = new StringBuilder("Enforce value fail, " + failures.size() + " failures");
+            if (!single) {
+                message.append(" in ").append(failedVariants).append(" of ").append(checked.size())
+                        .append(" variants");
+            }
+            for (String failure : failures) {
+                message.append("\n    ").append(failure);
+            }
+            throw new ConfigCheckFailException(message.toString());
+        }
+    }
+
+    private void record(Variant variant, AnnotatedField field, EnforceValueHolder enforceValue,
+                        ValueChecker.Outcome outcome) {
+        if (report != null) {
+            report.addResult(variant, field, enforceValue, outcome);
+        }
+    }
+
+    private static final class Constraint {
+        final AnnotatedField field;
+        final EnforceValueHolder enforceValue;
+
+        Constraint(AnnotatedField field, EnforceValueHolder enforceValue) {
+            this.field = field;
+            this.enforceValue = enforceValue;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.github.promeg.configchecker;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AnnotatedFieldCodecTest {
+
+    @Test
+    public void roundTripsEveryValueType() throws IOException {
+        List<AnnotatedField> fields = new ArrayList<AnnotatedField>();
+        fields.add(field("LOG", RealValueHolder.ofBoolean(true), EnforceValueHolder.ofBoolean(false, "p", "r")));
+        fields.add(field("LEVEL", RealValueHolder.ofInt(-3), EnforceValueHolder.ofInt(0, "p", "r")));
+        fields.add(field("SEED", RealValueHolder.ofLong(1L << 40), EnforceValueHolder.ofLong(7L, "p", "r")));
+        fields.add(field("RATIO", RealValueHolder.ofFloat(0.5f), EnforceValueHolder.ofFloat(-1f, "p", "r")));
+        fields.add(field("SCALE", RealValueHolder.ofDouble(Math.PI), EnforceValueHolder.ofDouble(2.5, "p", "r")));
+        fields.add(field("URL", RealValueHolder.ofString("https://\u00e9xample.com/"),
+                EnforceValueHolder.ofString("https://example.com/", "p", "r")));
+
+        List<AnnotatedField> read = roundTrip(fields);
+
+        assertEquals(fields.size(), read.size());
+        for (int i = 0; i < fields.size(); i++) {
+            assertSameField(fields.get(i), read.get(i));
+        }
+    }
+
+    @Test
+    public void roundTripsUnknownValueAndMissingVariant() throws IOException {
+        AnnotatedField field = new AnnotatedField("com.example.Config", "LOG", null, Arrays.asList(
+                EnforceValueHolder.ofBoolean(false, "production", "release"),
+                EnforceValueHolder.ofBoolean(true, null, null)));
+
+        AnnotatedField read = roundTrip(Collections.singletonList(field)).get(0);
+
+        assertNull(read.getRealValue());
+        assertSameField(field, read);
+        assertNull(read.getEnforceValues().get(1).getFlavor());
+        assertNull(read.getEnforceValues().get(1).getBuildType());
+    }
+
+    @Test
+    public void rejectsCorruptCount() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new DataOutputStream(bytes).writeInt(-2);
+        try {
+            AnnotatedFieldCodec.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+            fail("expected an IOException");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("-2"));
+        }
+    }
+
+    private static AnnotatedField field(String name, RealValueHolder realValue, EnforceValueHolder enforceValue) {
+        return new AnnotatedField("com.example.Config", name, realValue, Collections.singletonList(enforceValue));
+    }
+
+    private static List<AnnotatedField> roundTrip(List<AnnotatedField> fields) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        AnnotatedFieldCodec.write(new DataOutputStream(bytes), fields);
+        return AnnotatedFieldCodec.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    static void assertSameField(AnnotatedField expected, AnnotatedField actual) {
+        assertEquals(expected.getName(), actual.getName());
+        assertSameValue(expected.getRealValue(), actual.getRealValue());
+        assertEquals(expected.getEnforceValues().size(), actual.getEnforceValues().size());
+        for (int i = 0; i < expected.getEnforceValues().size(); i++) {
+            EnforceValueHolder expectedValue = expected.getEnforceValues().get(i);
+            EnforceValueHolder actualValue = actual.getEnforceValues().get(i);
+            assertSameValue(expectedValue, actualValue);
+            assertEquals(expectedValue.getFlavor(), actualValue.getFlavor());
+            assertEquals(expectedValue.getBuildType(), actualValue.getBuildType());
+        }
+    }
+
+    private static void assertSameValue(TypedValue expected, TypedValue actual) {
+        if (expected == null) {
+            assertNull(actual);
+        } else {
+            assertTrue(expected + " != " + actual, expected.sameValue(actual));
+        }
+    }
+}
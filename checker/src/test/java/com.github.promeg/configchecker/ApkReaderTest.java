@@ -0,0 +1,188 @@
+package com.github.promeg.configchecker;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ApkReaderTest {
+    private File apk;
+
+    @Before
+    public void setUp() throws IOException {
+        apk = File.createTempFile("app", ".apk");
+    }
+
+    @After
+    public void tearDown() {
+        apk.delete();
+    }
+
+    @Test
+    public void readsStoredAndDeflatedDexEntries() throws IOException {
+        // more than one inflate chunk, and deflated entries get a data descriptor
+        byte[] stored = bytes(1, 100 * 1024);
+        byte[] deflated = bytes(2, 200 * 1024);
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(apk));
+        try {
+            putStored(zip, "classes.dex", stored);
+            putDeflated(zip, "assets/classes.dex", bytes(3, 10));
+            putDeflated(zip, "classes2.dex", deflated);
+            putDeflated(zip, "resources.arsc", bytes(4, 10));
+        } finally {
+            zip.close();
+        }
+
+        ApkReader reader = ApkReader.open(apk);
+        try {
+            List<DexSource> sources = reader.getDexSources();
+            assertEquals(2, sources.size());
+            assertEquals(apk.getPath() + "!classes.dex", sources.get(0).getName());
+            assertLoads(stored, sources.get(0));
+            assertEquals(apk.getPath() + "!classes2.dex", sources.get(1).getName());
+            assertLoads(deflated, sources.get(1));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void findsCentralDirectoryBeforeComment() throws IOException {
+        byte[] dex = bytes(5, 1000);
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(apk));
+        try {
+            putDeflated(zip, "classes.dex", dex);
+            StringBuilder comment = new StringBuilder();
+            for (int i = 0; i < 1000; i++) {
+                comment.append("comment ");
+            }
+            zip.setComment(comment.toString());
+        } finally {
+            zip.close();
+        }
+
+        ApkReader reader = ApkReader.open(apk);
+        try {
+            assertLoads(dex, reader.getDexSources().get(0));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void readsZip64Archives() throws IOException {
+        byte[] dex = bytes(7, 1000);
+        writeZip64(apk, "classes.dex", dex);
+
+        ApkReader reader = ApkReader.open(apk);
+        try {
+            List<DexSource> sources = reader.getDexSources();
+            assertEquals(1, sources.size());
+            assertLoads(dex, sources.get(0));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void returnsNullForOtherFiles() throws IOException {
+        FileOutputStream out = new FileOutputStream(apk);
+        try {
+            out.write(bytes(6, 4096));
+        } finally {
+            out.close();
+        }
+
+        assertNull(ApkReader.open(apk));
+    }
+
+    private static void assertLoads(byte[] expected, DexSource source) throws IOException {
+        ByteBuffer buffer = source.load();
+        try {
+            byte[] actual = new byte[buffer.remaining()];
+            buffer.duplicate().get(actual);
+            assertArrayEquals(expected, actual);
+        } finally {
+            source.release(buffer);
+        }
+    }
+
+    private static void putStored(ZipOutputStream zip, String name, byte[] data) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(data.length);
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        entry.setCrc(crc.getValue());
+        zip.putNextEntry(entry);
+        zip.write(data);
+        zip.closeEntry();
+    }
+
+    private static void putDeflated(ZipOutputStream zip, String name, byte[] data) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(data);
+        zip.closeEntry();
+    }
+
+    /**
+     * Writes a stored entry whose sizes and offset, and the archive's entry count and central
+     * directory, are all only in the zip64 records, as for an archive past 4 GB.
+     */
+    private static void writeZip64(File file, String name, byte[] data) throws IOException {
+        byte[] nameBytes = name.getBytes("UTF-8");
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        int localSize = 30 + nameBytes.length + 20 + data.length;
+        int centralSize = 46 + nameBytes.length + 28;
+        ByteBuffer zip = ByteBuffer.allocate(localSize + centralSize + 56 + 20 + 22).order(ByteOrder.LITTLE_ENDIAN);
+        zip.putInt(0x04034b50).putShort((short) 45).putShort((short) 0).putShort((short) 0).putInt(0)
+                .putInt((int) crc.getValue()).putInt(-1).putInt(-1)
+                .putShort((short) nameBytes.length).putShort((short) 20).put(nameBytes)
+                .putShort((short) 1).putShort((short) 16).putLong(data.length).putLong(data.length)
+                .put(data);
+        zip.putInt(0x02014b50).putShort((short) 45).putShort((short) 45).putShort((short) 0).putShort((short) 0)
+                .putInt(0).putInt((int) crc.getValue()).putInt(-1).putInt(-1)
+                .putShort((short) nameBytes.length).putShort((short) 28).putShort((short) 0)
+                .putShort((short) 0).putShort((short) 0).putInt(0).putInt(-1).put(nameBytes)
+                .putShort((short) 1).putShort((short) 24).putLong(data.length).putLong(data.length).putLong(0);
+        // zip64 end of central directory record and locator
+        zip.putInt(0x06064b50).putLong(44).putShort((short) 45).putShort((short) 45).putInt(0).putInt(0)
+                .putLong(1).putLong(1).putLong(centralSize).putLong(localSize);
+        zip.putInt(0x07064b50).putInt(0).putLong(localSize + centralSize).putInt(1);
+        zip.putInt(0x06054b50).putShort((short) 0).putShort((short) 0).putShort((short) -1).putShort((short) -1)
+                .putInt(-1).putInt(-1).putShort((short) 0);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(zip.array());
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @return compressible, but not trivially so
+     */
+    private static byte[] bytes(long seed, int size) {
+        byte[] bytes = new byte[size];
+        Random random = new Random(seed);
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) ('a' + random.nextInt(8));
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,44 @@
+package com.github.promeg.configchecker;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AppBundleTest {
+
+    @Test
+    public void listsBundleModulesWithDex() {
+        assertEquals(Arrays.asList("base", "feature"), new ArrayList<String>(AppBundle.modulesOf("app.aab",
+                Arrays.asList("BundleConfig.pb", "base/manifest/AndroidManifest.xml", "base/dex/classes.dex",
+                        "base/dex/classes2.dex", "assets_only/assets/data.bin", "feature/dex/classes.dex",
+                        "feature/root/META-INF/annotations"))));
+    }
+
+    @Test
+    public void listsMasterSplitsOfApkSet() {
+        assertEquals(Arrays.asList("base", "feature"), new ArrayList<String>(AppBundle.modulesOf("app.apks",
+                Arrays.asList("toc.pb", "splits/base-master.apk", "splits/base-arm64_v8a.apk",
+                        "splits/base-xxhdpi.apk", "splits/feature-master.apk", "splits/feature-en.apk",
+                        "standalones/standalone-arm64_v8a.apk"))));
+    }
+
+    @Test
+    public void ignoresNonModuleEntries() {
+        assertTrue(AppBundle.modulesOf("app.aab", Collections.singletonList("dex/classes.dex")).isEmpty());
+        assertTrue(AppBundle.modulesOf("app.apks", Collections.singletonList("base/dex/classes.dex")).isEmpty());
+    }
+
+    @Test
+    public void splitsModuleInputs() {
+        assertEquals("out/app.aab", AppBundle.bundleOf("out/app.aab!feature"));
+        assertEquals("feature", AppBundle.moduleOf("out/app.aab!feature"));
+        assertNull(AppBundle.bundleOf("out/app.apk"));
+        assertNull(AppBundle.moduleOf("out/app.zip!feature"));
+    }
+}
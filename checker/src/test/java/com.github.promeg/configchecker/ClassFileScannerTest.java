@@ -0,0 +1,179 @@
+package com.github.promeg.configchecker;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.List;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Scans classes javac compiles from source in a temp dir.
+ */
+public class ClassFileScannerTest {
+    private static final String ENFORCE = "(value = %s, flavor = \"production\", buildType = \"release\")";
+
+    private final ClassFileScanner scanner = new ClassFileScanner();
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("classes", "");
+        dir.delete();
+        dir.mkdir();
+    }
+
+    @After
+    public void tearDown() {
+        delete(dir);
+    }
+
+    @Test
+    public void readsConstantValues() throws IOException {
+        List<AnnotatedField> fields = scan(
+                enforce("Long", "0L") + "static final long SEED = 1L << 40;",
+                enforce("Double", "0.0") + "static final double SCALE = 2.5;",
+                enforce("String", "\"\"") + "static final String URL = \"https://example.com/\";",
+                enforce("Boolean", "false") + "static final boolean LOG = true;",
+                enforce("Int", "0") + "static final int LEVEL = 100000;");
+
+        assertEquals(5, fields.size());
+        assertEquals("com.example.Config.SEED", fields.get(0).getName());
+        assertEquals(1L << 40, fields.get(0).getRealValue().getLong());
+        assertEquals(2.5, fields.get(1).getRealValue().getDouble(), 0);
+        // the entries after the two-slot long and double constants are found
+        assertEquals("https://example.com/", fields.get(2).getRealValue().getString());
+        assertTrue(fields.get(3).getRealValue().getBoolean());
+        assertEquals(100000, fields.get(4).getRealValue().getInt());
+        EnforceValueHolder enforced = fields.get(4).getEnforceValues().get(0);
+        assertEquals(0, enforced.getInt());
+        assertEquals("production", enforced.getFlavor());
+        assertEquals("release", enforced.getBuildType());
+    }
+
+    @Test
+    public void followsConstantsPutInClinit() throws IOException {
+        List<AnnotatedField> fields = scan(
+                enforce("Int", "0") + "static final int ICONST;",
+                enforce("Int", "0") + "static final int BIPUSH;",
+                enforce("Int", "0") + "static final int SIPUSH;",
+                enforce("Int", "0") + "static final int LDC;",
+                enforce("Long", "0L") + "static final long LDC2_W;",
+                enforce("Double", "0.0") + "static final double DCONST;",
+                enforce("String", "\"\"") + "static final String STRING;",
+                enforce("Boolean", "true") + "static final boolean LOG;",
+                "static { ICONST = 3; BIPUSH = 100; SIPUSH = -1000; LDC = 100000; LDC2_W = 1L << 40;"
+                        + " DCONST = 1.0; STRING = \"s\"; LOG = false; }");
+
+        assertEquals(3, fields.get(0).getRealValue().getInt());
+        assertEquals(100, fields.get(1).getRealValue().getInt());
+        assertEquals(-1000, fields.get(2).getRealValue().getInt());
+        assertEquals(100000, fields.get(3).getRealValue().getInt());
+        assertEquals(1L << 40, fields.get(4).getRealValue().getLong());
+        assertEquals(1.0, fields.get(5).getRealValue().getDouble(), 0);
+        assertEquals("s", fields.get(6).getRealValue().getString());
+        assertEquals(ValueType.BOOLEAN, fields.get(7).getRealValue().getType());
+        assertFalse(fields.get(7).getRealValue().getBoolean());
+    }
+
+    @Test
+    public void stopsAtFirstBranch() throws IOException {
+        List<AnnotatedField> fields = scan(
+                enforce("Int", "0") + "static final int LEVEL;",
+                enforce("Boolean", "false") + "static final boolean LOG;",
+                enforce("Int", "0") + "static final int COMPUTED;",
+                "static { LEVEL = 1; COMPUTED = Integer.getInteger(\"level\", 0);"
+                        + " LOG = System.currentTimeMillis() > 0; }");
+
+        assertEquals(1, fields.get(0).getRealValue().getInt());
+        assertNull(fields.get(1).getRealValue());
+        assertNull(fields.get(2).getRealValue());
+    }
+
+    @Test
+    public void followsStraightLineClinitWithCalls() throws IOException {
+        List<AnnotatedField> fields = scan(
+                enforce("Int", "0") + "static final int LEVEL;",
+                enforce("Boolean", "false") + "static boolean log;",
+                enforce("Int", "0") + "static int verbosity;",
+                enforce("Int", "0") + "static int retries;",
+                "static { LEVEL = 3; verbosity = 2; init(); retries = 5; }",
+                "static void init() { }");
+
+        assertEquals(3, fields.get(0).getRealValue().getInt());
+        // init() may assign log and verbosity, so neither is taken from before the call
+        assertNull(fields.get(1).getRealValue());
+        assertNull(fields.get(2).getRealValue());
+        assertEquals(5, fields.get(3).getRealValue().getInt());
+    }
+
+    @Test
+    public void defaultsFieldsWithoutClinit() throws IOException {
+        List<AnnotatedField> fields = scan(enforce("Int", "0") + "static int level;");
+
+        assertEquals(0, fields.get(0).getRealValue().getInt());
+    }
+
+    @Test
+    public void skipsClassesWithoutEnforcerAnnotations() throws IOException {
+        assertTrue(scan("static final int LEVEL = 3;", "@Deprecated static final boolean LOG = true;").isEmpty());
+    }
+
+    private static String enforce(String valueType, String value) {
+        return "@com.github.promeg.configchecker.Enforce" + valueType + "Value" + String.format(ENFORCE, value) + " ";
+    }
+
+    /**
+     * Compiles com.example.Config with the given members and scans it.
+     */
+    private List<AnnotatedField> scan(String... members) throws IOException {
+        File source = new File(dir, "com/example/Config.java");
+        source.getParentFile().mkdirs();
+        Writer out = new OutputStreamWriter(new FileOutputStream(source), "UTF-8");
+        try {
+            out.write("package com.example;\npublic class Config {\n");
+            for (String member : members) {
+                out.write("    " + member + "\n");
+            }
+            out.write("}\n");
+        } finally {
+            out.close();
+        }
+        JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        int result = javac.run(null, null, null, "-proc:none", "-nowarn", "-classpath",
+                System.getProperty("java.class.path"), "-d", dir.getPath(), source.getPath());
+        assertEquals("javac failed", 0, result);
+
+        RandomAccessFile classFile = new RandomAccessFile(new File(dir, "com/example/Config.class"), "r");
+        try {
+            byte[] bytes = new byte[(int) classFile.length()];
+            classFile.readFully(bytes);
+            return scanner.scan(bytes, "Config.class");
+        } finally {
+            classFile.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
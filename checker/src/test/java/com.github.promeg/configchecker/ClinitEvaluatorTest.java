@@ -0,0 +1,232 @@
+package com.github.promeg.configchecker;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import soot.Body;
+import soot.BooleanType;
+import soot.G;
+import soot.IntType;
+import soot.Local;
+import soot.Modifier;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootField;
+import soot.SootMethod;
+import soot.SootMethodRef;
+import soot.Type;
+import soot.Unit;
+import soot.Value;
+import soot.VoidType;
+import soot.jimple.IntConstant;
+import soot.jimple.Jimple;
+import soot.jimple.JimpleBody;
+import soot.jimple.Stmt;
+import soot.tagkit.IntegerConstantValueTag;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Evaluates &lt;clinit&gt; bodies built with the Jimple API, so no class files
+ * or android.jar are needed.
+ */
+public class ClinitEvaluatorTest {
+    private ClinitEvaluator evaluator;
+    private SootClass config;
+    private Body configClinit;
+
+    @Before
+    public void setUp() {
+        G.reset();
+        evaluator = new ClinitEvaluator();
+        config = newClass("com.example.Config");
+        configClinit = clinit(config);
+    }
+
+    @Test
+    public void propagatesConstants() {
+        SootField level = field(config, "LEVEL", IntType.v());
+        Local a = local(configClinit, "a", IntType.v());
+        Local b = local(configClinit, "b", IntType.v());
+        add(configClinit, Jimple.v().newAssignStmt(a, IntConstant.v(2)),
+                Jimple.v().newAssignStmt(b, Jimple.v().newMulExpr(a, IntConstant.v(3))),
+                put(level, b),
+                Jimple.v().newReturnVoidStmt());
+
+        assertEquals(6, evaluator.evaluate(level).getInt());
+    }
+
+    @Test
+    public void followsBranchOnConstant() {
+        SootClass buildConfig = newClass("com.example.BuildConfig");
+        SootField debug = field(buildConfig, "DEBUG", BooleanType.v());
+        debug.addTag(new IntegerConstantValueTag(0));
+        SootField log = field(config, "LOG", BooleanType.v());
+        Local flag = local(configClinit, "flag", BooleanType.v());
+        Stmt logOff = put(log, IntConstant.v(0));
+        Stmt ret = Jimple.v().newReturnVoidStmt();
+        add(configClinit, Jimple.v().newAssignStmt(flag, Jimple.v().newStaticFieldRef(debug.makeRef())),
+                Jimple.v().newIfStmt(Jimple.v().newEqExpr(flag, IntConstant.v(0)), logOff),
+                put(log, IntConstant.v(1)),
+                Jimple.v().newGotoStmt(ret),
+                logOff,
+                ret);
+
+        RealValueHolder value = evaluator.evaluate(log);
+
+        assertEquals(ValueType.BOOLEAN, value.getType());
+        assertFalse(value.getBoolean());
+    }
+
+    @Test
+    public void joinKeepsOnlyAgreeingValues() {
+        SootField log = field(config, "LOG", BooleanType.v());
+        SootField level = field(config, "LEVEL", IntType.v());
+        Local flag = local(configClinit, "flag", BooleanType.v());
+        Stmt logOff = put(log, IntConstant.v(0));
+        Stmt ret = Jimple.v().newReturnVoidStmt();
+        SootMethodRef check = Scene.v().makeMethodRef(config, "check", Collections.<Type>emptyList(),
+                BooleanType.v(), true);
+        add(configClinit, Jimple.v().newAssignStmt(flag, Jimple.v().newStaticInvokeExpr(check)),
+                put(level, IntConstant.v(3)),
+                Jimple.v().newIfStmt(Jimple.v().newEqExpr(flag, IntConstant.v(0)), logOff),
+                put(log, IntConstant.v(1)),
+                Jimple.v().newGotoStmt(ret),
+                logOff,
+                ret);
+
+        assertNull(evaluator.evaluate(log));
+        assertEquals(3, evaluator.evaluate(level).getInt());
+    }
+
+    @Test
+    public void readsNonFinalFieldsOfOtherClassesAsUnknown() {
+        SootClass debug = newClass("com.example.Debug");
+        SootField force = nonFinalField(debug, "FORCE", BooleanType.v());
+        add(clinit(debug), put(force, IntConstant.v(1)), Jimple.v().newReturnVoidStmt());
+        SootField log = field(config, "LOG", BooleanType.v());
+        Local flag = local(configClinit, "flag", BooleanType.v());
+        add(configClinit, Jimple.v().newAssignStmt(flag, Jimple.v().newStaticFieldRef(force.makeRef())),
+                put(log, flag),
+                Jimple.v().newReturnVoidStmt());
+
+        assertNull(evaluator.evaluate(log));
+    }
+
+    @Test
+    public void callIntoAnyClassDropsNonFinalFields() {
+        SootClass other = newClass("com.example.Other");
+        SootMethodRef init = Scene.v().makeMethodRef(other, "init", Collections.<Type>emptyList(),
+                VoidType.v(), true);
+        SootField level = nonFinalField(config, "level", IntType.v());
+        SootField a = field(config, "A", IntType.v());
+        SootField b = field(config, "B", IntType.v());
+        Local before = local(configClinit, "before", IntType.v());
+        Local after = local(configClinit, "after", IntType.v());
+        add(configClinit, put(level, IntConstant.v(3)),
+                Jimple.v().newAssignStmt(before, Jimple.v().newStaticFieldRef(level.makeRef())),
+                put(a, before),
+                Jimple.v().newInvokeStmt(Jimple.v().newStaticInvokeExpr(init)),
+                Jimple.v().newAssignStmt(after, Jimple.v().newStaticFieldRef(level.makeRef())),
+                put(b, after),
+                Jimple.v().newReturnVoidStmt());
+
+        assertEquals(3, evaluator.evaluate(a).getInt());
+        assertNull(evaluator.evaluate(b));
+    }
+
+    @Test
+    public void evaluatesEveryClassOnce() {
+        SootClass other = newClass("com.example.Other");
+        SootField seed = field(other, "SEED", IntType.v());
+        add(clinit(other), put(seed, IntConstant.v(5)), Jimple.v().newReturnVoidStmt());
+        SootField a = field(config, "A", IntType.v());
+        SootField b = field(config, "B", IntType.v());
+        Local local = local(configClinit, "seed", IntType.v());
+        Local sum = local(configClinit, "sum", IntType.v());
+        add(configClinit, Jimple.v().newAssignStmt(local, Jimple.v().newStaticFieldRef(seed.makeRef())),
+                put(a, local),
+                Jimple.v().newAssignStmt(sum, Jimple.v().newAddExpr(local, IntConstant.v(1))),
+                put(b, sum),
+                Jimple.v().newReturnVoidStmt());
+
+        assertEquals(5, evaluator.evaluate(a).getInt());
+        assertEquals(6, evaluator.evaluate(b).getInt());
+        assertEquals(5, evaluator.evaluate(seed).getInt());
+        assertEquals(2, evaluator.getClinitsEvaluated());
+    }
+
+    @Test
+    public void cycleLeavesValuesUnknown() {
+        SootClass other = newClass("com.example.Other");
+        SootField x = field(other, "X", IntType.v());
+        SootField a = field(config, "A", IntType.v());
+        SootField b = field(config, "B", IntType.v());
+        // Other.X = Config.B, Config.B = 1, Config.A = Other.X + 1
+        Body otherClinit = clinit(other);
+        Local fromConfig = local(otherClinit, "b", IntType.v());
+        add(otherClinit, Jimple.v().newAssignStmt(fromConfig, Jimple.v().newStaticFieldRef(b.makeRef())),
+                put(x, fromConfig),
+                Jimple.v().newReturnVoidStmt());
+        Local fromOther = local(configClinit, "x", IntType.v());
+        Local sum = local(configClinit, "sum", IntType.v());
+        add(configClinit, put(b, IntConstant.v(1)),
+                Jimple.v().newAssignStmt(fromOther, Jimple.v().newStaticFieldRef(x.makeRef())),
+                Jimple.v().newAssignStmt(sum, Jimple.v().newAddExpr(fromOther, IntConstant.v(1))),
+                put(a, sum),
+                Jimple.v().newReturnVoidStmt());
+
+        assertNull(evaluator.evaluate(a));
+        assertEquals(1, evaluator.evaluate(b).getInt());
+        assertTrue(evaluator.getClinitsEvaluated() <= 2);
+    }
+
+    private static SootClass newClass(String name) {
+        SootClass sootClass = new SootClass(name, Modifier.PUBLIC);
+        Scene.v().addClass(sootClass);
+        sootClass.setApplicationClass();
+        sootClass.setResolvingLevel(SootClass.BODIES);
+        return sootClass;
+    }
+
+    private static SootField field(SootClass sootClass, String name, Type type) {
+        SootField field = new SootField(name, type, Modifier.PUBLIC | Modifier.STATIC | Modifier.FINAL);
+        sootClass.addField(field);
+        return field;
+    }
+
+    private static SootField nonFinalField(SootClass sootClass, String name, Type type) {
+        SootField field = field(sootClass, name, type);
+        field.setModifiers(Modifier.PUBLIC | Modifier.STATIC);
+        return field;
+    }
+
+    private static Body clinit(SootClass sootClass) {
+        SootMethod clinit = new SootMethod("<clinit>", Collections.<Type>emptyList(), VoidType.v(), Modifier.STATIC);
+        sootClass.addMethod(clinit);
+        JimpleBody body = Jimple.v().newBody(clinit);
+        clinit.setActiveBody(body);
+        return body;
+    }
+
+    private static Local local(Body body, String name, Type type) {
+        Local local = Jimple.v().newLocal(name, type);
+        body.getLocals().add(local);
+        return local;
+    }
+
+    private static Stmt put(SootField field, Value value) {
+        return Jimple.v().newAssignStmt(Jimple.v().newStaticFieldRef(field.makeRef()), value);
+    }
+
+    private static void add(Body body, Unit... units) {
+        for (Unit unit : units) {
+            body.getUnits().add(unit);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.github.promeg.configchecker;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ConfigSnapshotTest {
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("config", ConfigSnapshot.SUFFIX);
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void sortsFieldsAndConstraints() throws IOException {
+        AnnotatedField url = new AnnotatedField("com.example.Config", "URL", RealValueHolder.ofString("u"),
+                Arrays.asList(EnforceValueHolder.ofString("u", "production", "release"),
+                        EnforceValueHolder.ofString("u", "beta", "release")));
+        AnnotatedField log = new AnnotatedField("com.example.Config", "LOG", null,
+                Arrays.asList(EnforceValueHolder.ofBoolean(false, "production", "release")));
+        AnnotatedField level = new AnnotatedField("com.example.A", "LEVEL", RealValueHolder.ofInt(3),
+                Arrays.asList(EnforceValueHolder.ofInt(0, "production", "release")));
+        ConfigSnapshot.write(file, Arrays.asList(url, log, level));
+
+        ConfigSnapshot snapshot = ConfigSnapshot.open(file);
+
+        assertEquals(3, snapshot.size());
+        AnnotatedFieldCodecTest.assertSameField(level, snapshot.get(0));
+        AnnotatedFieldCodecTest.assertSameField(log, snapshot.get(1));
+        AnnotatedField read = snapshot.get(2);
+        assertEquals("com.example.Config.URL", read.getName());
+        assertEquals("beta", read.getEnforceValues().get(0).getFlavor());
+        assertEquals("production", read.getEnforceValues().get(1).getFlavor());
+    }
+
+    @Test
+    public void comparesFieldsWithoutDecoding() throws IOException {
+        List<AnnotatedField> fields = Arrays.asList(
+                new AnnotatedField("com.example.Config", "LOG", RealValueHolder.ofBoolean(true),
+                        Arrays.asList(EnforceValueHolder.ofBoolean(false, "production", "release"))),
+                new AnnotatedField("com.example.Config", "LEVEL", RealValueHolder.ofInt(3),
+                        Arrays.asList(EnforceValueHolder.ofInt(0, "production", "release"))));
+        ConfigSnapshot.write(file, fields);
+        ConfigSnapshot snapshot = ConfigSnapshot.open(file);
+
+        assertTrue(snapshot.compareNames(0, snapshot, 1) < 0);
+        assertEquals(0, snapshot.compareNames(1, snapshot, 1));
+        assertTrue(snapshot.sameValues(0, snapshot, 0));
+        assertFalse(snapshot.sameValues(0, snapshot, 1));
+    }
+
+    @Test
+    public void rejectsOtherFiles() throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write("not a snapshot".getBytes("US-ASCII"));
+        } finally {
+            out.close();
+        }
+        try {
+            ConfigSnapshot.open(file);
+            fail("expected an IOException");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("Not a config snapshot"));
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.github.promeg.configchecker;
+
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class DaemonClientTest {
+
+    @Test
+    public void resolvesInputs() {
+        assertArrayEquals(new String[] {"--flavor=production", abs("app.apk"), abs("--lib.apk")},
+                DaemonClient.absolutePaths(new String[] {"--flavor=production", "app.apk", "--lib.apk"}));
+    }
+
+    @Test
+    public void resolvesInputsAfterDoubleDash() {
+        assertArrayEquals(new String[] {"--", abs("--app.apk")},
+                DaemonClient.absolutePaths(new String[] {"--", "--app.apk"}));
+    }
+
+    @Test
+    public void resolvesPathOptions() {
+        String[] options = {"--androidjar=", "--manifest=", "--cache-dir=", "--snapshot-dir=", "--mapping=",
+                "--platform-index="};
+        for (String option : options) {
+            assertEquals(option + abs("rel"), DaemonClient.absolutePaths(new String[] {option + "rel"})[0]);
+        }
+    }
+
+    @Test
+    public void resolvesReportFiles() {
+        assertArrayEquals(new String[] {"--report=json:" + abs("out/report.json"), "--report=text"},
+                DaemonClient.absolutePaths(new String[] {"--report=json:out/report.json", "--report=text"}));
+        assertArrayEquals(new String[] {"--metrics=prometheus:" + abs("metrics.prom")},
+                DaemonClient.absolutePaths(new String[] {"--metrics=prometheus:metrics.prom"}));
+    }
+
+    private static String abs(String path) {
+        return new File(path).getAbsolutePath();
+    }
+}
@@ -0,0 +1,96 @@
+package com.github.promeg.configchecker;
+
+import org.apache.commons.io.IOUtils;
+import org.jf.dexlib2.immutable.value.ImmutableBooleanEncodedValue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Collections;
+
+import static com.github.promeg.configchecker.DexFixtures.classDef;
+import static com.github.promeg.configchecker.DexFixtures.enforce;
+import static com.github.promeg.configchecker.DexFixtures.field;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DexFilesCheckerTest {
+    private static final String CONFIG = "Lcom/example/Config;";
+
+    private File dir;
+    private File dex;
+    private File report;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("dex-files", "");
+        dir.delete();
+        dir.mkdir();
+        dex = new File(dir, "classes.dex");
+        // the report dir is created by the check
+        report = new File(dir, "reports/production-release.json");
+    }
+
+    @After
+    public void tearDown() {
+        report.delete();
+        report.getParentFile().delete();
+        dex.delete();
+        dir.delete();
+    }
+
+    @Test
+    public void writesTheReportOfAPassingCheck() throws IOException {
+        writeConfig(ImmutableBooleanEncodedValue.FALSE_VALUE);
+
+        newChecker().run();
+
+        assertTrue(read(report).contains("\"status\": \"PASS\""));
+    }
+
+    @Test
+    public void failsAndStillWritesTheReport() throws IOException {
+        writeConfig(ImmutableBooleanEncodedValue.TRUE_VALUE);
+
+        try {
+            newChecker().run();
+            fail("expected a ConfigCheckFailException");
+        } catch (ConfigCheckFailException e) {
+            assertTrue(e.getMessage().contains("com.example.Config.LOG"));
+        }
+        assertTrue(read(report).contains("\"status\": \"FAIL\""));
+    }
+
+    private DexFilesChecker newChecker() {
+        DexFilesChecker checker = new DexFilesChecker(Collections.singletonList(dex), DexFixtures.FLAVOR,
+                DexFixtures.BUILD_TYPE, report);
+        checker.setEngine(DexFilesChecker.ENGINE_DEX);
+        checker.setOut(new PrintStream(new ByteArrayOutputStream()));
+        return checker;
+    }
+
+    private void writeConfig(ImmutableBooleanEncodedValue log) throws IOException {
+        FileOutputStream out = new FileOutputStream(dex);
+        try {
+            out.write(DexFixtures.bytes(classDef(CONFIG, Collections.singletonList(
+                    field(CONFIG, "LOG", "Z", log, enforce("Boolean", ImmutableBooleanEncodedValue.FALSE_VALUE))))));
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String read(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            return IOUtils.toString(in, "UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.github.promeg.configchecker;
+
+import org.jf.dexlib2.AccessFlags;
+import org.jf.dexlib2.AnnotationVisibility;
+import org.jf.dexlib2.Opcode;
+import org.jf.dexlib2.Opcodes;
+import org.jf.dexlib2.iface.Annotation;
+import org.jf.dexlib2.iface.ClassDef;
+import org.jf.dexlib2.iface.Field;
+import org.jf.dexlib2.iface.Method;
+import org.jf.dexlib2.iface.MethodParameter;
+import org.jf.dexlib2.iface.instruction.Instruction;
+import org.jf.dexlib2.iface.value.EncodedValue;
+import org.jf.dexlib2.immutable.ImmutableAnnotation;
+import org.jf.dexlib2.immutable.ImmutableAnnotationElement;
+import org.jf.dexlib2.immutable.ImmutableClassDef;
+import org.jf.dexlib2.immutable.ImmutableField;
+import org.jf.dexlib2.immutable.ImmutableMethod;
+import org.jf.dexlib2.immutable.ImmutableMethodImplementation;
+import org.jf.dexlib2.immutable.instruction.ImmutableInstruction10x;
+import org.jf.dexlib2.immutable.instruction.ImmutableInstruction11n;
+import org.jf.dexlib2.immutable.instruction.ImmutableInstruction21c;
+import org.jf.dexlib2.immutable.instruction.ImmutableInstruction35c;
+import org.jf.dexlib2.immutable.reference.ImmutableFieldReference;
+import org.jf.dexlib2.immutable.reference.ImmutableMethodReference;
+import org.jf.dexlib2.immutable.value.ImmutableStringEncodedValue;
+import org.jf.dexlib2.writer.io.MemoryDataStore;
+import org.jf.dexlib2.writer.pool.DexPool;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Writes the dex files of the tests with dexlib2. Every enforcer annotation
+ * is for {@link #FLAVOR}:{@link #BUILD_TYPE}.
+ */
+final class DexFixtures {
+    static final String FLAVOR = "production";
+    static final String BUILD_TYPE = "release";
+
+    private static final int STATIC_FINAL = AccessFlags.PUBLIC.getValue() | AccessFlags.STATIC.getValue()
+            | AccessFlags.FINAL.getValue();
+    private static final List<MethodParameter> NO_PARAMETERS = Collections.emptyList();
+    private static final List<String> NO_TYPES = Collections.emptyList();
+
+    private DexFixtures() {
+    }
+
+    static DexFile write(ClassDef... classes) throws IOException {
+        return new DexFile("test.dex", ByteBuffer.wrap(bytes(classes)));
+    }
+
+    static byte[] bytes(ClassDef... classes) throws IOException {
+        DexPool pool = new DexPool(Opcodes.getDefault());
+        for (ClassDef classDef : classes) {
+            pool.internClass(classDef);
+        }
+        MemoryDataStore store = new MemoryDataStore();
+        pool.writeTo(store);
+        return store.getData();
+    }
+
+    static ClassDef classDef(String type, List<? extends Field> fields, Method... methods) {
+        return new ImmutableClassDef(type, AccessFlags.PUBLIC.getValue(), "Ljava/lang/Object;", null, null, null,
+                fields, Arrays.asList(methods));
+    }
+
+    /**
+     * A public static final field.
+     *
+     * @param value its static value, or null for none
+     */
+    static Field field(String type, String name, String descriptor, EncodedValue value, Annotation... annotations) {
+        return new ImmutableField(type, name, descriptor, STATIC_FINAL, value,
+                new HashSet<Annotation>(Arrays.asList(annotations)));
+    }
+
+    /**
+     * @param valueType Boolean, Int, Long, Float, Double or String
+     */
+    static Annotation enforce(String valueType, EncodedValue value) {
+        List<ImmutableAnnotationElement> elements = new ArrayList<ImmutableAnnotationElement>(3);
+        elements.add(new ImmutableAnnotationElement("buildType", new ImmutableStringEncodedValue(BUILD_TYPE)));
+        elements.add(new ImmutableAnnotationElement("flavor", new ImmutableStringEncodedValue(FLAVOR)));
+        elements.add(new ImmutableAnnotationElement("value", value));
+        return new ImmutableAnnotation(AnnotationVisibility.BUILD,
+                "Lcom/github/promeg/configchecker/Enforce" + valueType + "Value;", elements);
+    }
+
+    /**
+     * A &lt;clinit&gt; running instructions, then return-void.
+     */
+    static Method clinit(String type, Instruction... instructions) {
+        List<Instruction> body = new ArrayList<Instruction>(Arrays.asList(instructions));
+        body.add(new ImmutableInstruction10x(Opcode.RETURN_VOID));
+        return new ImmutableMethod(type, "<clinit>", NO_PARAMETERS, "V",
+                AccessFlags.STATIC.getValue() | AccessFlags.CONSTRUCTOR.getValue(), null,
+                new ImmutableMethodImplementation(1, body, null, null));
+    }
+
+    /**
+     * const/4 v0, #value
+     */
+    static Instruction const4(int value) {
+        return new ImmutableInstruction11n(Opcode.CONST_4, 0, value);
+    }
+
+    /**
+     * sput v0, or sput-boolean for a boolean field
+     */
+    static Instruction sput(String type, String name, String descriptor) {
+        return new ImmutableInstruction21c("Z".equals(descriptor) ? Opcode.SPUT_BOOLEAN : Opcode.SPUT, 0,
+                new ImmutableFieldReference(type, name, descriptor));
+    }
+
+    /**
+     * invoke-static {}, a static void method without parameters
+     */
+    static Instruction invokeStatic(String type, String name) {
+        return new ImmutableInstruction35c(Opcode.INVOKE_STATIC, 0, 0, 0, 0, 0, 0,
+                new ImmutableMethodReference(type, name, NO_TYPES, "V"));
+    }
+}
@@ -0,0 +1,147 @@
+package com.github.promeg.configchecker;
+
+import org.jf.dexlib2.iface.Field;
+import org.jf.dexlib2.immutable.value.ImmutableBooleanEncodedValue;
+import org.jf.dexlib2.immutable.value.ImmutableDoubleEncodedValue;
+import org.jf.dexlib2.immutable.value.ImmutableIntEncodedValue;
+import org.jf.dexlib2.immutable.value.ImmutableLongEncodedValue;
+import org.jf.dexlib2.immutable.value.ImmutableStringEncodedValue;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import static com.github.promeg.configchecker.DexFixtures.classDef;
+import static com.github.promeg.configchecker.DexFixtures.clinit;
+import static com.github.promeg.configchecker.DexFixtures.const4;
+import static com.github.promeg.configchecker.DexFixtures.enforce;
+import static com.github.promeg.configchecker.DexFixtures.field;
+import static com.github.promeg.configchecker.DexFixtures.invokeStatic;
+import static com.github.promeg.configchecker.DexFixtures.sput;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DexScannerTest {
+    private static final String CONFIG = "Lcom/example/Config;";
+    private static final ImmutableBooleanEncodedValue FALSE = ImmutableBooleanEncodedValue.FALSE_VALUE;
+    private static final ImmutableBooleanEncodedValue TRUE = ImmutableBooleanEncodedValue.TRUE_VALUE;
+
+    private final DexScanner scanner = new DexScanner();
+
+    @Test
+    public void readsStaticValues() throws IOException {
+        List<AnnotatedField> fields = scanner.scan(DexFixtures.write(classDef(CONFIG, Arrays.asList(
+                field(CONFIG, "LOG", "Z", TRUE, enforce("Boolean", FALSE)),
+                field(CONFIG, "LEVEL", "I", new ImmutableIntEncodedValue(3),
+                        enforce("Int", new ImmutableIntEncodedValue(0))),
+                field(CONFIG, "SEED", "J", new ImmutableLongEncodedValue(1L << 40),
+                        enforce("Long", new ImmutableLongEncodedValue(7L))),
+                field(CONFIG, "SCALE", "D", new ImmutableDoubleEncodedValue(2.5),
+                        enforce("Double", new ImmutableDoubleEncodedValue(2.5))),
+                field(CONFIG, "URL", "Ljava/lang/String;", new ImmutableStringEncodedValue("https://example.com/"),
+                        enforce("String", new ImmutableStringEncodedValue("https://example.com/")))))));
+
+        assertEquals(5, fields.size());
+        // in field_idx order: LEVEL, LOG, SCALE, SEED, URL
+        AnnotatedField level = fields.get(0);
+        assertEquals("com.example.Config.LEVEL", level.getName());
+        assertEquals(ValueType.INT, level.getRealValue().getType());
+        assertEquals(3, level.getRealValue().getInt());
+        EnforceValueHolder enforced = level.getEnforceValues().get(0);
+        assertEquals(0, enforced.getInt());
+        assertEquals(DexFixtures.FLAVOR, enforced.getFlavor());
+        assertEquals(DexFixtures.BUILD_TYPE, enforced.getBuildType());
+        assertTrue(fields.get(1).getRealValue().getBoolean());
+        assertEquals(2.5, fields.get(2).getRealValue().getDouble(), 0);
+        assertEquals(1L << 40, fields.get(3).getRealValue().getLong());
+        assertEquals("https://example.com/", fields.get(4).getRealValue().getString());
+    }
+
+    @Test
+    public void defaultsFieldsWithoutStaticValue() throws IOException {
+        List<AnnotatedField> fields = scanner.scan(DexFixtures.write(classDef(CONFIG, Arrays.asList(
+                field(CONFIG, "A_SET", "I", new ImmutableIntEncodedValue(7)),
+                field(CONFIG, "LEVEL", "I", null, enforce("Int", new ImmutableIntEncodedValue(0))),
+                field(CONFIG, "LOG", "Z", null, enforce("Boolean", TRUE))))));
+
+        assertEquals(2, fields.size());
+        assertEquals(0, fields.get(0).getRealValue().getInt());
+        assertEquals(ValueType.BOOLEAN, fields.get(1).getRealValue().getType());
+        assertFalse(fields.get(1).getRealValue().getBoolean());
+    }
+
+    @Test
+    public void fieldAssignedInClinitHasNoValue() throws IOException {
+        List<AnnotatedField> fields = scanner.scan(DexFixtures.write(classDef(CONFIG, Arrays.asList(
+                field(CONFIG, "LOG", "Z", null, enforce("Boolean", FALSE)),
+                field(CONFIG, "OTHER", "Z", null, enforce("Boolean", FALSE))),
+                clinit(CONFIG, const4(1), sput(CONFIG, "LOG", "Z")))));
+
+        assertEquals(2, fields.size());
+        assertNull(fields.get(0).getRealValue());
+        // <clinit> leaves OTHER alone, so it keeps its default
+        assertFalse(fields.get(1).getRealValue().getBoolean());
+    }
+
+    @Test
+    public void clinitAssignmentOverridesStaticValue() throws IOException {
+        List<AnnotatedField> fields = scanner.scan(DexFixtures.write(classDef(CONFIG, Collections.singletonList(
+                field(CONFIG, "LEVEL", "I", new ImmutableIntEncodedValue(3),
+                        enforce("Int", new ImmutableIntEncodedValue(0)))),
+                clinit(CONFIG, const4(1), sput(CONFIG, "LEVEL", "I")))));
+
+        assertNull(fields.get(0).getRealValue());
+    }
+
+    @Test
+    public void callingClinitLeavesOnlyStaticValues() throws IOException {
+        List<AnnotatedField> fields = scanner.scan(DexFixtures.write(classDef(CONFIG, Arrays.asList(
+                field(CONFIG, "LEVEL", "I", new ImmutableIntEncodedValue(3),
+                        enforce("Int", new ImmutableIntEncodedValue(3))),
+                field(CONFIG, "LOG", "Z", null, enforce("Boolean", FALSE))),
+                clinit(CONFIG, invokeStatic(CONFIG, "init")))));
+
+        assertEquals(3, fields.get(0).getRealValue().getInt());
+        // the call may assign LOG, so it is not taken as false
+        assertNull(fields.get(1).getRealValue());
+    }
+
+    @Test
+    public void scansEveryClass() throws IOException {
+        String other = "Lcom/example/Other;";
+        List<AnnotatedField> fields = scanner.scan(DexFixtures.write(
+                classDef(CONFIG, Collections.singletonList(field(CONFIG, "LOG", "Z", TRUE, enforce("Boolean", TRUE)))),
+                classDef(other, Collections.singletonList(field(other, "LOG", "Z", FALSE, enforce("Boolean", TRUE))))));
+
+        assertEquals(2, fields.size());
+        assertEquals("com.example.Config.LOG", fields.get(0).getName());
+        assertEquals("com.example.Other.LOG", fields.get(1).getName());
+    }
+
+    @Test
+    public void findsOnlyAnnotatedClasses() throws IOException {
+        String other = "Lcom/example/Other;";
+        DexFile dex = DexFixtures.write(
+                classDef(CONFIG, Collections.singletonList(field(CONFIG, "LOG", "Z", TRUE, enforce("Boolean", TRUE)))),
+                classDef(other, Collections.singletonList(field(other, "LOG", "Z", FALSE))));
+
+        BitSet annotatedClasses = scanner.findAnnotatedClasses(dex);
+
+        assertEquals(1, annotatedClasses.cardinality());
+        assertEquals(CONFIG, dex.getTypeDescriptor(dex.getClassDefClassIdx(annotatedClasses.nextSetBit(0))));
+    }
+
+    @Test
+    public void skipsDexWithoutEnforcerAnnotations() throws IOException {
+        List<Field> fields = Collections.singletonList(field(CONFIG, "LOG", "Z", TRUE));
+        DexFile dex = DexFixtures.write(classDef(CONFIG, fields));
+
+        assertTrue(scanner.findAnnotatedClasses(dex).isEmpty());
+        assertTrue(scanner.scan(dex).isEmpty());
+    }
+}
@@ -0,0 +1,154 @@
+package com.github.promeg.configchecker;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class InputCollectorTest {
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("inputs", "");
+        dir.delete();
+        for (String name : new String[] {"out/app-release.apk", "out/app-debug.apk", "out/notes.txt",
+                "out/lib/lib-release.apk", "out/lib/deep/classes.dex", "out/b1.apk", "out/b2.apk", "out/bx.apk"}) {
+            File file = new File(dir, name);
+            file.getParentFile().mkdirs();
+            file.createNewFile();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        delete(dir);
+    }
+
+    @Test
+    public void expandsDirectoriesSortedByPath() throws IOException {
+        InputCollector collector = new InputCollector();
+        collector.add(path("out"));
+
+        assertEquals(paths("out/app-debug.apk", "out/app-release.apk", "out/b1.apk", "out/b2.apk", "out/bx.apk",
+                "out/lib/deep/classes.dex", "out/lib/lib-release.apk"), collector.getFileNames());
+    }
+
+    @Test
+    public void matchesStarWithinOneDirectory() throws IOException {
+        InputCollector collector = new InputCollector();
+        collector.add(path("out/*-release.apk"));
+
+        assertEquals(paths("out/app-release.apk"), collector.getFileNames());
+    }
+
+    @Test
+    public void matchesDoubleStarAcrossDirectories() throws IOException {
+        InputCollector collector = new InputCollector();
+        collector.add(path("out/**/*-release.apk"));
+        collector.add(path("**/*.dex"));
+
+        assertEquals(paths("out/app-release.apk", "out/lib/lib-release.apk", "out/lib/deep/classes.dex"),
+                collector.getFileNames());
+    }
+
+    @Test
+    public void matchesQuestionMarkAndCharacterClasses() throws IOException {
+        InputCollector collector = new InputCollector();
+        collector.add(path("out/b?.apk"));
+        assertEquals(paths("out/b1.apk", "out/b2.apk", "out/bx.apk"), collector.getFileNames());
+
+        collector = new InputCollector();
+        collector.add(path("out/b[0-9].apk"));
+        assertEquals(paths("out/b1.apk", "out/b2.apk"), collector.getFileNames());
+
+        collector = new InputCollector();
+        collector.add(path("out/b[!0-9].apk"));
+        assertEquals(paths("out/bx.apk"), collector.getFileNames());
+    }
+
+    @Test
+    public void characterClassesDoNotMatchSlash() {
+        assertTrue(InputCollector.toPattern("a[/x]b").matcher("axb").matches());
+        assertFalse(InputCollector.toPattern("a[/x]b").matcher("a/b").matches());
+        assertFalse(InputCollector.toPattern("a[!x]b").matcher("a/b").matches());
+        assertTrue(InputCollector.toPattern("a[]]b").matcher("a]b").matches());
+        assertTrue(InputCollector.toPattern("a[^&]b").matcher("a-b").matches());
+    }
+
+    @Test
+    public void descendsOnlyAsDeepAsThePattern() {
+        assertEquals(0, InputCollector.directoryDepth("*.apk"));
+        assertEquals(1, InputCollector.directoryDepth("*/*.apk"));
+        assertEquals(Integer.MAX_VALUE, InputCollector.directoryDepth("**/*.apk"));
+    }
+
+    @Test
+    public void escapesRegexCharacters() {
+        assertTrue(InputCollector.toPattern("app+1.(x).apk").matcher("app+1.(x).apk").matches());
+        assertFalse(InputCollector.toPattern("app.apk").matcher("appxapk").matches());
+        assertFalse(InputCollector.toPattern("*.apk").matcher("out/app.apk").matches());
+    }
+
+    @Test
+    public void failsWhenNothingMatches() throws IOException {
+        try {
+            new InputCollector().add(path("out/*.aab"));
+            fail("expected a FileNotFoundException");
+        } catch (FileNotFoundException e) {
+            assertTrue(e.getMessage().contains("*.aab"));
+        }
+    }
+
+    @Test
+    public void readsManifestRelativeToItsDirectory() throws IOException {
+        File manifest = new File(dir, "out/inputs.txt");
+        Writer out = new OutputStreamWriter(new FileOutputStream(manifest), "UTF-8");
+        try {
+            out.write("# release builds\n\n  app-release.apk  \nlib/*.apk\n" + path("out/app-release.apk") + "\n");
+        } finally {
+            out.close();
+        }
+
+        InputCollector collector = new InputCollector();
+        collector.addManifest(manifest.getPath());
+
+        assertEquals(paths("out/app-release.apk", "out/lib/lib-release.apk"), collector.getFileNames());
+    }
+
+    private String path(String relative) {
+        return new File(dir, relative).getPath();
+    }
+
+    private List<String> paths(String... relative) {
+        List<String> paths = new ArrayList<String>();
+        for (String path : Arrays.asList(relative)) {
+            paths.add(path(path));
+        }
+        return paths;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,121 @@
+package com.github.promeg.configchecker;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MappingIndexTest {
+    private File dir;
+    private File mapping;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("mapping", "");
+        dir.delete();
+        dir.mkdir();
+        mapping = new File(dir, "mapping.txt");
+        Writer out = new OutputStreamWriter(new FileOutputStream(mapping), "UTF-8");
+        try {
+            out.write("# compiler: R8\n"
+                    + "com.example.Config -> a.b:\n"
+                    + "    # {\"id\":\"sourceFile\",\"fileName\":\"Config.java\"}\n"
+                    + "    boolean LOG -> a\n"
+                    + "    int LEVEL -> b\n"
+                    + "    1:1:void log(java.lang.String) -> c\n"
+                    + "com.example.Other -> a.a:\n"
+                    + "    java.lang.String URL -> a\n");
+        } finally {
+            out.close();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void deobfuscatesClassesAndFields() throws IOException {
+        List<AnnotatedField> fields = MappingIndex.forMapping(mapping).deobfuscate(Arrays.asList(
+                field("a.b", "a"), field("a.b", "b"), field("a.a", "a")));
+
+        assertEquals("com.example.Config.LOG", fields.get(0).getName());
+        assertEquals("com.example.Config.LEVEL", fields.get(1).getName());
+        assertEquals("com.example.Other.URL", fields.get(2).getName());
+        assertTrue(new File(dir, "mapping.txt" + MappingIndex.SUFFIX).isFile());
+    }
+
+    @Test
+    public void ignoresMethodsAndComments() throws IOException {
+        List<AnnotatedField> fields = MappingIndex.forMapping(mapping).deobfuscate(Arrays.asList(
+                field("a.b", "c"), field("a.b", "#")));
+
+        // c only names a method, so the class is renamed but the field is not
+        assertEquals("com.example.Config.c", fields.get(0).getName());
+        assertEquals("com.example.Config.#", fields.get(1).getName());
+    }
+
+    @Test
+    public void keepsUnknownNames() throws IOException {
+        AnnotatedField unknown = field("z.z", "a");
+
+        List<AnnotatedField> fields = MappingIndex.forMapping(mapping).deobfuscate(Collections.singletonList(unknown));
+
+        assertEquals("z.z.a", fields.get(0).getName());
+    }
+
+    @Test
+    public void obfuscatesAnAnnotationIndex() throws IOException {
+        AnnotationIndex index = new AnnotationIndex();
+        EnforceValueHolder enforceValue = EnforceValueHolder.ofBoolean(false, "production", "release");
+        index.add("Lcom/example/Config;", "LOG", enforceValue);
+        index.add("Lcom/example/Config;", "DEBUG", enforceValue);
+        index.add("Lcom/example/Kept;", "LOG", enforceValue);
+
+        AnnotationIndex obfuscated = MappingIndex.forMapping(mapping).obfuscate(index);
+
+        assertEquals(Arrays.asList("La/b;", "Lcom/example/Kept;"),
+                new ArrayList<String>(obfuscated.getClassDescriptors()));
+        assertEquals(Arrays.asList("a", "DEBUG"), new ArrayList<String>(obfuscated.getFields("La/b;").keySet()));
+        assertEquals(Collections.singletonList(enforceValue), obfuscated.getFields("La/b;").get("a"));
+        assertEquals(Collections.singleton("LOG"), obfuscated.getFields("Lcom/example/Kept;").keySet());
+    }
+
+    @Test
+    public void reusesTheIndexUntilTheMappingChanges() throws IOException {
+        MappingIndex.forMapping(mapping);
+        File index = new File(dir, "mapping.txt" + MappingIndex.SUFFIX);
+        long built = index.lastModified();
+        index.setLastModified(built - 10000);
+        MappingIndex.forMapping(mapping);
+        assertEquals(built - 10000, index.lastModified());
+
+        mapping.setLastModified(mapping.lastModified() - 10000);
+        List<AnnotatedField> fields = MappingIndex.forMapping(mapping).deobfuscate(
+                Collections.singletonList(field("a.b", "a")));
+
+        assertTrue(index.lastModified() != built - 10000);
+        assertEquals("com.example.Config.LOG", fields.get(0).getName());
+    }
+
+    private static AnnotatedField field(String className, String fieldName) {
+        return new AnnotatedField(className, fieldName, RealValueHolder.ofBoolean(true),
+                Collections.singletonList(EnforceValueHolder.ofBoolean(false, "production", "release")));
+    }
+}
@@ -0,0 +1,75 @@
+package com.github.promeg.configchecker;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class SnapshotDiffTest {
+    private File older;
+    private File newer;
+
+    @Before
+    public void setUp() throws IOException {
+        older = File.createTempFile("older", ConfigSnapshot.SUFFIX);
+        newer = File.createTempFile("newer", ConfigSnapshot.SUFFIX);
+    }
+
+    @After
+    public void tearDown() {
+        older.delete();
+        newer.delete();
+    }
+
+    @Test
+    public void printsAddedRemovedAndChangedFields() throws IOException {
+        ConfigSnapshot.write(older, Arrays.asList(
+                field("LEVEL", RealValueHolder.ofInt(3), EnforceValueHolder.ofInt(0, "production", "release")),
+                field("LOG", RealValueHolder.ofBoolean(true), EnforceValueHolder.ofBoolean(false, "p", "r")),
+                field("OLD", RealValueHolder.ofInt(1), EnforceValueHolder.ofInt(1, "p", "r"))));
+        ConfigSnapshot.write(newer, Arrays.asList(
+                field("LEVEL", RealValueHolder.ofInt(0), EnforceValueHolder.ofInt(0, "production", "release")),
+                field("LOG", RealValueHolder.ofBoolean(true), EnforceValueHolder.ofBoolean(false, "p", "r")),
+                field("URL", null, EnforceValueHolder.ofString("https://example.com/", "p", "r"))));
+
+        String[] lines = diff().split("\n");
+
+        assertEquals(6, lines.length);
+        assertEquals("--- " + older, lines[0]);
+        assertEquals("+++ " + newer, lines[1]);
+        assertEquals("~ com.example.Config.LEVEL = 3 -> 0  [production:release=0]", lines[2]);
+        assertEquals("- com.example.Config.OLD = 1  [p:r=1]", lines[3]);
+        assertEquals("+ com.example.Config.URL = (no static value)  [p:r=https://example.com/]", lines[4]);
+        assertEquals("1 added, 1 removed, 1 changed, 1 unchanged", lines[5]);
+    }
+
+    @Test
+    public void printsConstraintChanges() throws IOException {
+        ConfigSnapshot.write(older, Arrays.asList(
+                field("LOG", RealValueHolder.ofBoolean(false), EnforceValueHolder.ofBoolean(false, "p", "r"))));
+        ConfigSnapshot.write(newer, Arrays.asList(
+                field("LOG", RealValueHolder.ofBoolean(false), EnforceValueHolder.ofBoolean(true, "p", "r"))));
+
+        String[] lines = diff().split("\n");
+
+        assertEquals("~ com.example.Config.LOG = false  [p:r=false] -> [p:r=true]", lines[2]);
+        assertEquals("0 added, 0 removed, 1 changed, 0 unchanged", lines[3]);
+    }
+
+    private String diff() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new SnapshotDiff(new PrintStream(bytes, true)).diff(ConfigSnapshot.open(older), ConfigSnapshot.open(newer));
+        return bytes.toString("UTF-8").replace("\r\n", "\n");
+    }
+
+    private static AnnotatedField field(String name, RealValueHolder realValue, EnforceValueHolder enforceValue) {
+        return new AnnotatedField("com.example.Config", name, realValue, Arrays.asList(enforceValue));
+    }
+}
@@ -0,0 +1,64 @@
+package com.github.promeg.configchecker.gradle;
+
+import com.github.promeg.configchecker.ConfigCheckFailException;
+import com.github.promeg.configchecker.DexFilesChecker;
+import org.gradle.api.GradleException;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Runs one {@link ConfigCheckTask} inside a Gradle worker, through the
+ * checker's {@link DexFilesChecker}.
+ */
+public class ConfigCheckAction implements Runnable {
+    private final List<File> dexFiles;
+    private final String flavor;
+    private final String buildType;
+    private final String engine;
+    private final boolean lazySoot;
+    private final boolean keepGoing;
+    private final int threads;
+    private final String androidJar;
+    private final String mappingFile;
+    private final File reportFile;
+
+    /**
+     * @param androidJar path of the android.jar, or "" for the dex engine or no platform classes
+     * @param mappingFile path of the R8/ProGuard mapping.txt, or "" if the variant is not minified
+     */
+    @Inject
+    public ConfigCheckAction(List<File> dexFiles, String flavor, String buildType, String engine,
+                             Boolean lazySoot, Boolean keepGoing, Integer threads, String androidJar,
+                             String mappingFile, File reportFile) {
+        this.dexFiles = dexFiles;
+        this.flavor = flavor;
+        this.buildType = buildType;
+        this.engine = engine;
+        this.lazySoot = lazySoot;
+        this.keepGoing = keepGoing;
+        this.threads = threads;
+        this.androidJar = androidJar;
+        this.mappingFile = mappingFile;
+        this.reportFile = reportFile;
+    }
+
+    public void run() {
+        DexFilesChecker checker = new DexFilesChecker(dexFiles, flavor, buildType, reportFile);
+        checker.setEngine(engine);
+        checker.setLazySoot(lazySoot);
+        checker.setKeepGoing(keepGoing);
+        checker.setThreads(threads);
+        checker.setAndroidJar(androidJar.length() > 0 ? new File(androidJar) : null);
+        checker.setMappingFile(mappingFile.length() > 0 ? new File(mappingFile) : null);
+        try {
+            checker.run();
+        } catch (ConfigCheckFailException e) {
+            throw new GradleException("Config check failed: " + e.getMessage(), e);
+        } catch (IOException e) {
+            throw new GradleException("Config check failed: " + e, e);
+        }
+    }
+}
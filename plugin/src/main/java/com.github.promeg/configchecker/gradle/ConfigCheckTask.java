@@ -0,0 +1,175 @@
+package com.github.promeg.configchecker.gradle;
+
+import org.gradle.api.Action;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.workers.IsolationMode;
+import org.gradle.workers.WorkerConfiguration;
+import org.gradle.workers.WorkerExecutor;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+
+/**
+ * Checks the dex files of one Android variant. The check runs in a worker
+ * with its own class loader, so soot's singletons never leak into the
+ * Gradle daemon. The dex files, and the mapping of a minified variant, are
+ * the file inputs; the task is up to date, or taken from the build cache,
+ * as long as they do not change.
+ */
+@CacheableTask
+public class ConfigCheckTask extends DefaultTask {
+    private final WorkerExecutor workerExecutor;
+
+    private FileCollection dexFiles;
+    private String flavor;
+    private String buildType;
+    private String engine;
+    private boolean lazySoot;
+    private boolean keepGoing;
+    private int threads;
+    private File androidJar;
+    private File mappingFile;
+    private File reportFile;
+
+    @Inject
+    public ConfigCheckTask(WorkerExecutor workerExecutor) {
+        this.workerExecutor = workerExecutor;
+    }
+
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public FileCollection getDexFiles() {
+        return dexFiles;
+    }
+
+    public void setDexFiles(FileCollection dexFiles) {
+        this.dexFiles = dexFiles;
+    }
+
+    @Input
+    public String getFlavor() {
+        return flavor;
+    }
+
+    public void setFlavor(String flavor) {
+        this.flavor = flavor;
+    }
+
+    @Input
+    public String getBuildType() {
+        return buildType;
+    }
+
+    public void setBuildType(String buildType) {
+        this.buildType = buildType;
+    }
+
+    @Input
+    public String getEngine() {
+        return engine;
+    }
+
+    public void setEngine(String engine) {
+        this.engine = engine;
+    }
+
+    @Input
+    public boolean isLazySoot() {
+        return lazySoot;
+    }
+
+    public void setLazySoot(boolean lazySoot) {
+        this.lazySoot = lazySoot;
+    }
+
+    @Input
+    public boolean isKeepGoing() {
+        return keepGoing;
+    }
+
+    public void setKeepGoing(boolean keepGoing) {
+        this.keepGoing = keepGoing;
+    }
+
+    /**
+     * Only changes how fast the check runs, not its result.
+     */
+    @Internal
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * The platform's android.jar, only used by the soot engine.
+     */
+    @Optional
+    @InputFile
+    @PathSensitive(PathSensitivity.NONE)
+    public File getAndroidJar() {
+        return androidJar;
+    }
+
+    public void setAndroidJar(File androidJar) {
+        this.androidJar = androidJar;
+    }
+
+    /**
+     * The R8/ProGuard mapping of a minified variant, to report original names.
+     */
+    @Optional
+    @InputFile
+    @PathSensitive(PathSensitivity.NONE)
+    public File getMappingFile() {
+        return mappingFile;
+    }
+
+    public void setMappingFile(File mappingFile) {
+        this.mappingFile = mappingFile;
+    }
+
+    /**
+     * The JSON report of every checked constraint, see --report.
+     */
+    @OutputFile
+    public File getReportFile() {
+        return reportFile;
+    }
+
+    public void setReportFile(File reportFile) {
+        this.reportFile = reportFile;
+    }
+
+    @TaskAction
+    public void check() {
+        final ArrayList<File> files = new ArrayList<File>(dexFiles.getFiles());
+        // classes.dex before classes2.dex, the same on every run
+        Collections.sort(files);
+        workerExecutor.submit(ConfigCheckAction.class, new Action<WorkerConfiguration>() {
+            public void execute(WorkerConfiguration config) {
+                config.setIsolationMode(IsolationMode.CLASSLOADER);
+                config.setDisplayName("Check config of " + getName());
+                // worker params must not be null
+                config.setParams(files, flavor, buildType, engine, lazySoot, keepGoing, threads,
+                        androidJar == null ? "" : androidJar.getPath(),
+                        mappingFile == null ? "" : mappingFile.getPath(), reportFile);
+            }
+        });
+    }
+}
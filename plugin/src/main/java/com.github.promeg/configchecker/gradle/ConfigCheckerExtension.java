@@ -0,0 +1,55 @@
+package com.github.promeg.configchecker.gradle;
+
+import com.github.promeg.configchecker.DexFilesChecker;
+
+/**
+ * The {@code configChecker { }} block: how the check tasks run the checker.
+ * The flavor, build type and dex files come from each Android variant.
+ */
+public class ConfigCheckerExtension {
+    private String engine = DexFilesChecker.ENGINE_SOOT;
+    private boolean lazySoot;
+    private boolean keepGoing;
+    private int threads = DexFilesChecker.defaultThreads();
+
+    /**
+     * "soot" (default) or "dex", as --engine.
+     */
+    public String getEngine() {
+        return engine;
+    }
+
+    public void setEngine(String engine) {
+        if (!DexFilesChecker.ENGINE_SOOT.equals(engine) && !DexFilesChecker.ENGINE_DEX.equals(engine)) {
+            throw new IllegalArgumentException("Unknown engine '" + engine + "'");
+        }
+        this.engine = engine;
+    }
+
+    public boolean isLazySoot() {
+        return lazySoot;
+    }
+
+    public void setLazySoot(boolean lazySoot) {
+        this.lazySoot = lazySoot;
+    }
+
+    public boolean isKeepGoing() {
+        return keepGoing;
+    }
+
+    public void setKeepGoing(boolean keepGoing) {
+        this.keepGoing = keepGoing;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Invalid thread count " + threads);
+        }
+        this.threads = threads;
+    }
+}
@@ -0,0 +1,86 @@
+package com.github.promeg.configchecker.gradle;
+
+import com.android.build.gradle.AppExtension;
+import com.android.build.gradle.api.ApplicationVariant;
+import com.android.build.gradle.tasks.PackageAndroidArtifact;
+import com.github.promeg.configchecker.DexFilesChecker;
+import org.gradle.api.Action;
+import org.gradle.api.Plugin;
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.plugins.AppliedPlugin;
+import org.gradle.api.tasks.util.PatternSet;
+
+import java.io.File;
+
+/**
+ * Adds a check{Variant}Config task for every variant of an Android app,
+ * checking the dex files the variant packages against its flavor and build
+ * type. The check task depends on all of them.
+ */
+public class ConfigCheckerPlugin implements Plugin<Project> {
+    static final String EXTENSION_NAME = "configChecker";
+    static final String REPORT_DIR = "reports/configChecker";
+
+    public void apply(final Project project) {
+        final ConfigCheckerExtension extension = project.getExtensions().create(EXTENSION_NAME,
+                ConfigCheckerExtension.class);
+        project.getPluginManager().withPlugin("com.android.application", new Action<AppliedPlugin>() {
+            public void execute(AppliedPlugin plugin) {
+                final AppExtension android = project.getExtensions().getByType(AppExtension.class);
+                // variants are only created once the project is evaluated, so the extension is set by then
+                android.getApplicationVariants().all(new Action<ApplicationVariant>() {
+                    public void execute(ApplicationVariant variant) {
+                        addCheckTask(project, android, extension, variant);
+                    }
+                });
+            }
+        });
+    }
+
+    private void addCheckTask(Project project, AppExtension android, ConfigCheckerExtension extension,
+                              ApplicationVariant variant) {
+        String name = variant.getName();
+        ConfigCheckTask task = project.getTasks().create("check" + capitalize(name) + "Config",
+                ConfigCheckTask.class);
+        task.setGroup("verification");
+        task.setDescription("Checks the Enforce*Value constraints of the " + name + " dex files.");
+
+        PackageAndroidArtifact packageTask = variant.getPackageApplication();
+        // the dex folders carry the tasks producing them
+        task.setDexFiles(packageTask.getDexFolders().getAsFileTree().matching(new PatternSet().include("**/*.dex")));
+        task.setFlavor(variant.getFlavorName());
+        task.setBuildType(variant.getBuildType().getName());
+        task.setEngine(extension.getEngine());
+        task.setLazySoot(extension.isLazySoot());
+        task.setKeepGoing(extension.isKeepGoing());
+        task.setThreads(extension.getThreads());
+        if (DexFilesChecker.ENGINE_SOOT.equals(extension.getEngine())) {
+            task.setAndroidJar(findAndroidJar(android));
+        }
+        if (variant.getBuildType().isMinifyEnabled()) {
+            // written by the minify task the dex files already depend on
+            task.setMappingFile(variant.getMappingFile());
+        }
+        task.setReportFile(new File(project.getBuildDir(), REPORT_DIR + "/" + name + ".json"));
+
+        Task check = project.getTasks().findByName("check");
+        if (check != null) {
+            check.dependsOn(task);
+        }
+    }
+
+    private static File findAndroidJar(AppExtension android) {
+        for (File file : android.getBootClasspath()) {
+            if (file.getName().equals("android.jar")) {
+                return file;
+            }
+        }
+        throw new IllegalStateException("No android.jar on the boot classpath of compileSdkVersion "
+                + android.getCompileSdkVersion());
+    }
+
+    private static String capitalize(String name) {
+        return name.isEmpty() ? name : Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+}
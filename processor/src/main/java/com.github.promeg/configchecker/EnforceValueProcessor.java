@@ -0,0 +1,230 @@
+package com.github.promeg.configchecker;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Records every Enforce*Value annotated static field at compile time in an
+ * index resource, META-INF/apk-config-checker/{hash}.index, which is
+ * packaged into the apk with the other java resources. The checker still
+ * scans every annotation, but also checks the listed fields whose
+ * annotations were stripped, and can tell when a field was removed by
+ * shrinking. It is a separate artifact, so only apps that add it to their
+ * annotation processor path carry an index.
+ *
+ * <p>Each compilation writes one index, named after the hash of its content
+ * so the indexes of several modules do not collide. The format, all in
+ * {@link DataOutputStream} encoding:
+ * <pre>
+ * int magic "ACIX", short version, int count, then count times:
+ *   UTF class descriptor ("Lcom/example/Config;"), UTF field name,
+ *   byte value type ('Z', 'I', 'J', 'F', 'D' or 'L' for String),
+ *   the value, UTF flavor, UTF buildType
+ * </pre>
+ */
+public final class EnforceValueProcessor extends AbstractProcessor {
+    /** Where the indexes go, in the jar and the apk. */
+    public static final String INDEX_DIR = "META-INF/apk-config-checker/";
+    public static final String INDEX_SUFFIX = ".index";
+    public static final int MAGIC = 0x41434958;
+    public static final int VERSION = 1;
+
+    public static final byte TYPE_BOOLEAN = 'Z';
+    public static final byte TYPE_INT = 'I';
+    public static final byte TYPE_LONG = 'J';
+    public static final byte TYPE_FLOAT = 'F';
+    public static final byte TYPE_DOUBLE = 'D';
+    public static final byte TYPE_STRING = 'L';
+
+    private static final int HEADER_SIZE = 10;
+    private static final int HASH_CHARS = 16;
+    private static final int NIBBLE_BITS = 4;
+    private static final int NIBBLE_MASK = 0xf;
+    private static final int HEX = 16;
+
+    private static final String KEY_VALUE = "value";
+    private static final String KEY_FLAVOR = "flavor";
+    private static final String KEY_BUILDTYPE = "buildType";
+
+    private final ByteArrayOutputStream entries = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(entries);
+    private final List<Element> originatingElements = new ArrayList<Element>();
+    private int count;
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        Set<String> types = new HashSet<String>();
+        for (Class<?> type : Arrays.asList(EnforceBooleanValue.class, EnforceIntValue.class,
+                EnforceLongValue.class, EnforceFloatValue.class, EnforceDoubleValue.class,
+                EnforceStringValue.class)) {
+            types.add(type.getCanonicalName());
+        }
+        return types;
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        try {
+            for (TypeElement annotation : annotations) {
+                byte type = typeOf(annotation.getQualifiedName().toString());
+                for (Element field : roundEnv.getElementsAnnotatedWith(annotation)) {
+                    record(field, annotation, type);
+                }
+            }
+            if (roundEnv.processingOver() && count > 0) {
+                writeIndex();
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Unable to write the Enforce*Value index: " + e);
+        }
+        // other processors may look at the annotations too
+        return false;
+    }
+
+    private static byte typeOf(String annotation) {
+        if (annotation.equals(EnforceBooleanValue.class.getCanonicalName())) {
+            return TYPE_BOOLEAN;
+        } else if (annotation.equals(EnforceIntValue.class.getCanonicalName())) {
+            return TYPE_INT;
+        } else if (annotation.equals(EnforceLongValue.class.getCanonicalName())) {
+            return TYPE_LONG;
+        } else if (annotation.equals(EnforceFloatValue.class.getCanonicalName())) {
+            return TYPE_FLOAT;
+        } else if (annotation.equals(EnforceDoubleValue.class.getCanonicalName())) {
+            return TYPE_DOUBLE;
+        }
+        return TYPE_STRING;
+    }
+
+    /**
+     * Instance fields are left out, they never hold a constant the checker could read.
+     */
+    private void record(Element field, TypeElement annotation, byte type) throws IOException {
+        if (field.getKind() != ElementKind.FIELD || !field.getModifiers().contains(Modifier.STATIC)) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                    annotation.getSimpleName() + " is only checked on static fields", field);
+            return;
+        }
+        Object value = null;
+        String flavor = null;
+        String buildType = null;
+        for (AnnotationMirror mirror : field.getAnnotationMirrors()) {
+            if (!((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName()
+                    .contentEquals(annotation.getQualifiedName())) {
+                continue;
+            }
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> element
+                    : mirror.getElementValues().entrySet()) {
+                String name = element.getKey().getSimpleName().toString();
+                if (KEY_VALUE.equals(name)) {
+                    value = element.getValue().getValue();
+                } else if (KEY_FLAVOR.equals(name)) {
+                    flavor = (String) element.getValue().getValue();
+                } else if (KEY_BUILDTYPE.equals(name)) {
+                    buildType = (String) element.getValue().getValue();
+                }
+            }
+        }
+        if (value == null || flavor == null || buildType == null) {
+            // javac already reported the missing element
+            return;
+        }
+
+        TypeElement declaringClass = (TypeElement) field.getEnclosingElement();
+        String binaryName = processingEnv.getElementUtils().getBinaryName(declaringClass).toString();
+        out.writeUTF("L" + binaryName.replace('.', '/') + ";");
+        out.writeUTF(field.getSimpleName().toString());
+        out.writeByte(type);
+        switch (type) {
+            case TYPE_BOOLEAN:
+                out.writeBoolean((Boolean) value);
+                break;
+            case TYPE_INT:
+                out.writeInt((Integer) value);
+                break;
+            case TYPE_LONG:
+                out.writeLong((Long) value);
+                break;
+            case TYPE_FLOAT:
+                out.writeFloat((Float) value);
+                break;
+            case TYPE_DOUBLE:
+                out.writeDouble((Double) value);
+                break;
+            default:
+                out.writeUTF((String) value);
+                break;
+        }
+        out.writeUTF(flavor);
+        out.writeUTF(buildType);
+        count++;
+        originatingElements.add(field);
+    }
+
+    private void writeIndex() throws IOException {
+        out.flush();
+        ByteArrayOutputStream index = new ByteArrayOutputStream(HEADER_SIZE + entries.size());
+        DataOutputStream header = new DataOutputStream(index);
+        header.writeInt(MAGIC);
+        header.writeShort(VERSION);
+        header.writeInt(count);
+        header.flush();
+        entries.writeTo(index);
+        byte[] bytes = index.toByteArray();
+
+        FileObject resource = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+                INDEX_DIR + hashOf(bytes) + INDEX_SUFFIX,
+                originatingElements.toArray(new Element[originatingElements.size()]));
+        OutputStream stream = resource.openOutputStream();
+        try {
+            stream.write(bytes);
+        } finally {
+            stream.close();
+        }
+    }
+
+    private static String hashOf(byte[] bytes) throws IOException {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw (IOException) new IOException("No SHA-1").initCause(e);
+        }
+        StringBuilder hash = new StringBuilder(HASH_CHARS);
+        for (int i = 0; hash.length() < HASH_CHARS; i++) {
+            hash.append(Character.forDigit((digest[i] >> NIBBLE_BITS) & NIBBLE_MASK, HEX));
+            hash.append(Character.forDigit(digest[i] & NIBBLE_MASK, HEX));
+        }
+        return hash.toString();
+    }
+}